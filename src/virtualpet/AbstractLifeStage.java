@@ -1,31 +1,31 @@
 package virtualpet;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-
 /**
  * This class represents an abstract life stage of a pet. It implements the PetLifeStage interface.
  * It contains methods that increase and decrease the pet's needs according to the rates determined
  * by the life stage. It also contains a method that returns the interval of the life stage which
- * determines the frequency the pet's needs decrease.
+ * determines the frequency the pet's needs decrease. The rates are kept in arrays indexed by each
+ * need's ordinal and never change, so a single instance of each life stage can be shared by every
+ * pet; the built-in life stages can only be used through their shared instances.
  */
 public class AbstractLifeStage implements PetLifeStage {
+  private static final int NEED_COUNT = Need.values().length;
 
-  protected HashMap<Need, Integer> needIncreases;
-  protected HashMap<Need, Integer> needDecreases;
-  protected long interval;
+  private final int[] needIncreases; // indexed by Need ordinal
+  private final int[] needDecreases; // indexed by Need ordinal
+  private final long interval;
 
   /**
    * Constructs an AbstractLifeStage object with the given increase and decrease rates.
    *
-   * @param increaseRates   list of increase rates.
-   * @param decreaseRates   list of decrease rates.
+   * @param increaseRates   list of increase rates, in the order of the Need enum.
+   * @param decreaseRates   list of decrease rates, in the order of the Need enum.
+   * @throws IllegalArgumentException if either list of rates does not have a rate for every need.
    */
-  public AbstractLifeStage(int[] increaseRates, int[]  decreaseRates) {
-    ArrayList<Need> needs = initializeNeedsArray();
-    this.needIncreases = initializeNeedsMap(needs, increaseRates);
-    this.needDecreases = initializeNeedsMap(needs, decreaseRates);
+  protected AbstractLifeStage(int[] increaseRates, int[]  decreaseRates)
+      throws IllegalArgumentException {
+    this.needIncreases = initializeRates(increaseRates);
+    this.needDecreases = initializeRates(decreaseRates);
     this.interval = INTERVAL;
   }
 
@@ -35,53 +35,102 @@ public class AbstractLifeStage implements PetLifeStage {
   }
 
   @Override
-  public int increaseNeed(Need need, Integer currentLevel) throws IllegalArgumentException {
+  public int getIncreaseRate(Need need) {
+    return this.needIncreases[need.ordinal()];
+  }
+
+  @Override
+  public int getDecreaseRate(Need need) {
+    return this.needDecreases[need.ordinal()];
+  }
+
+  @Override
+  public int increaseNeed(Need need, int currentLevel) throws IllegalArgumentException {
+    return increaseNeed(need.ordinal(), currentLevel);
+  }
+
+  @Override
+  public int decreaseNeed(Need need, int currentLevel) throws IllegalArgumentException {
+    return decreaseNeed(need.ordinal(), currentLevel);
+  }
+
+  @Override
+  public int increaseNeed(int need, int currentLevel) throws IllegalArgumentException {
     if (currentLevel >= 100) {
       throw new IllegalArgumentException("Need level cannot be greater than 100.");
     }
-    int newLevel = currentLevel + this.needIncreases.get(need);
+    int newLevel = currentLevel + this.needIncreases[need];
     return Math.min(newLevel, 100); // return new level or 100, whichever is less (cannot be >100)
   }
 
   @Override
-  public int decreaseNeed(Need need, Integer currentLevel) throws IllegalArgumentException {
+  public int decreaseNeed(int need, int currentLevel) throws IllegalArgumentException {
     if (currentLevel <= 0) {
       throw new IllegalArgumentException("Need level cannot be less than 0.");
     }
-    int newLevel = currentLevel - this.needDecreases.get(need);
+    int newLevel = currentLevel - this.needDecreases[need];
     return Math.max(newLevel, 0); // return new level or 0, whichever is greater (cannot be <0)
   }
 
+  @Override
+  public void decreaseNeeds(int[] levels) throws IllegalArgumentException {
+    checkLength(levels.length);
+    for (int need = 0; need < NEED_COUNT; need++) {
+      levels[need] = Math.max(levels[need] - this.needDecreases[need], 0);
+    }
+  }
+
+  @Override
+  public void increaseNeeds(int[] levels) throws IllegalArgumentException {
+    checkLength(levels.length);
+    for (int need = 0; need < NEED_COUNT; need++) {
+      levels[need] = Math.min(levels[need] + this.needIncreases[need], 100);
+    }
+  }
+
+  @Override
+  public void decreaseNeeds(byte[][] levels, int from, int to) throws IllegalArgumentException {
+    checkLength(levels.length);
+    for (byte[] column : levels) {
+      if (from < 0 || from > to || to > column.length) {
+        throw new IllegalArgumentException("Range of pets must be within every column.");
+      }
+    }
+    for (int need = 0; need < NEED_COUNT; need++) {
+      // one simple loop over a column per need, which the JIT can unroll and vectorize
+      byte[] column = levels[need];
+      int rate = this.needDecreases[need];
+      for (int pet = from; pet < to; pet++) {
+        column[pet] = (byte) Math.max(column[pet] - rate, 0);
+      }
+    }
+  }
+
   /**
-   * Creates a HashMap with needs as keys and their corresponding rates as values.
+   * Checks that there is one need level, or one column of need levels, for each need.
    *
-   * @param needs list of needs
-   * @param rates list of rates
-   * @return a HashMap with needs as keys and their corresponding rates as values.
-   * @throws IllegalArgumentException if the list of needs and list of rates are not the same
-   *                                  length.
+   * @param length  the number of levels or columns.
+   * @throws IllegalArgumentException if the length is not the number of needs.
    */
-  protected HashMap<Need, Integer> initializeNeedsMap(ArrayList<Need> needs, int[] rates)
-      throws IllegalArgumentException {
-    HashMap<Need, Integer> needsMap = new HashMap<>();
-    if (needs.size() != rates.length) {
-      throw new IllegalArgumentException(
-          "List of needs and list of rates must be the same length.");
+  private static void checkLength(int length) throws IllegalArgumentException {
+    if (length != NEED_COUNT) {
+      throw new IllegalArgumentException("There must be one need level for every need.");
     }
-    for (int i = 0; i < needs.size(); i++) {
-      needsMap.put(needs.get(i), rates[i]);
-    }
-    return needsMap;
   }
 
   /**
-   * Creates an ArrayList of all the needs. The needs are based off the Need enum.
+   * Copies a list of rates, checking that there is one rate for each need.
    *
-   * @return an ArrayList of all the needs.
+   * @param rates list of rates, in the order of the Need enum.
+   * @return a copy of the rates, indexed by each need's ordinal.
+   * @throws IllegalArgumentException if the list of needs and list of rates are not the same
+   *                                  length.
    */
-  protected ArrayList<Need> initializeNeedsArray() {
-    ArrayList<Need> needs = new ArrayList<>();
-    Collections.addAll(needs, Need.values());
-    return needs;
+  private static int[] initializeRates(int[] rates) throws IllegalArgumentException {
+    if (rates.length != NEED_COUNT) {
+      throw new IllegalArgumentException(
+          "List of needs and list of rates must be the same length.");
+    }
+    return rates.clone();
   }
 }
@@ -6,11 +6,16 @@ package virtualpet;
  * needs decrease at smaller values than in the child life stage to represent the fact that an
  * older pet requires less attention and care than a younger pet.
  */
-public class Adult extends AbstractLifeStage {
+public final class Adult extends AbstractLifeStage {
   private static final int[] INCREASE_RATES = {8, 5, 10, 8};
   private static final int[] DECREASE_RATES = {4, 3, 5, 6};
 
-  public Adult() {
+  /**
+   * The shared adult life stage. Life stages never change, so every pet can use this one.
+   */
+  public static final Adult INSTANCE = new Adult();
+
+  private Adult() {
     super(INCREASE_RATES, DECREASE_RATES);
   }
 
@@ -6,11 +6,16 @@ package virtualpet;
  * the pet's needs decrease. As a child, the pet's needs decrease at a faster rate and at larger
  * values to represent the fact that younger pets require more attention and care than older pets.
  */
-public class Child extends AbstractLifeStage {
+public final class Child extends AbstractLifeStage {
   private static final int[] INCREASE_RATES = {10, 15, 8, 15};
   private static final int[] DECREASE_RATES = {8, 12, 5, 10};
 
-  public Child() {
+  /**
+   * The shared child life stage. Life stages never change, so every pet can use this one.
+   */
+  public static final Child INSTANCE = new Child();
+
+  private Child() {
     super(INCREASE_RATES, DECREASE_RATES);
   }
 
@@ -0,0 +1,28 @@
+package virtualpet;
+
+/**
+ * This class represents a life stage of a pet whose name and rates were loaded from a
+ * configuration file rather than written into a class. It extends the AbstractLifeStage class.
+ */
+final class ConfiguredLifeStage extends AbstractLifeStage {
+  private final String name;
+
+  /**
+   * Creates a life stage with the given name and rates.
+   *
+   * @param name           the name of the life stage.
+   * @param increaseRates  the increase rates, indexed by each need's ordinal.
+   * @param decreaseRates  the decrease rates, indexed by each need's ordinal.
+   * @throws IllegalArgumentException if either list of rates does not have a rate for every need.
+   */
+  ConfiguredLifeStage(String name, int[] increaseRates, int[] decreaseRates)
+      throws IllegalArgumentException {
+    super(increaseRates, decreaseRates);
+    this.name = name;
+  }
+
+  @Override
+  public String toString() {
+    return this.name;
+  }
+}
@@ -0,0 +1,274 @@
+package virtualpet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class publishes items to subscribers, keeping only the latest item for each key that a
+ * subscriber has not received yet. Each subscriber has its own buffer of waiting items, one per
+ * key, so a slow subscriber receives the newest state of each key instead of every state in
+ * between, and it never slows down the thread offering the items or the other subscribers. The
+ * buffer holds at most a fixed number of keys; when a new key arrives at a full buffer, the key
+ * that has waited longest is dropped. Items are delivered on an executor, as the subscribers
+ * request them.
+ *
+ * @param <K> the type of the keys, such as a pet's id.
+ * @param <T> the type of the items.
+ */
+public final class ConflatingPublisher<K, T> implements Flow.Publisher<T> {
+  private final Executor executor;
+  private final int capacity;
+  private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+  private final AtomicLong conflated = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+  private volatile boolean closed;
+
+  /**
+   * Creates a publisher.
+   *
+   * @param executor  the executor that delivers items to the subscribers.
+   * @param capacity  the number of keys each subscriber's buffer holds.
+   * @throws IllegalArgumentException if the executor is null, or the capacity is not positive.
+   */
+  public ConflatingPublisher(Executor executor, int capacity) throws IllegalArgumentException {
+    if (executor == null) {
+      throw new IllegalArgumentException("Executor cannot be null.");
+    }
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Capacity must be positive.");
+    }
+    this.executor = executor;
+    this.capacity = capacity;
+  }
+
+  @Override
+  public void subscribe(Flow.Subscriber<? super T> subscriber) {
+    if (subscriber == null) {
+      throw new NullPointerException("Subscriber cannot be null.");
+    }
+    Subscription subscription = new Subscription(subscriber);
+    subscriber.onSubscribe(subscription);
+    this.subscriptions.add(subscription);
+    if (this.closed) {
+      subscription.complete();
+    }
+  }
+
+  /**
+   * Offers an item to every subscriber, replacing the item for the same key that a subscriber has
+   * not received yet. Never blocks.
+   *
+   * @param key   the key of the item.
+   * @param item  the item.
+   * @throws IllegalArgumentException if the key or item is null.
+   * @throws IllegalStateException if the publisher is closed.
+   */
+  public void offer(K key, T item) throws IllegalArgumentException, IllegalStateException {
+    if (key == null || item == null) {
+      throw new IllegalArgumentException("Key and item cannot be null.");
+    }
+    if (this.closed) {
+      throw new IllegalStateException("Publisher is closed.");
+    }
+    for (Subscription subscription : this.subscriptions) {
+      subscription.offer(key, item);
+    }
+  }
+
+  /**
+   * Checks whether the publisher has any subscribers, so that a caller can skip building items
+   * nobody will receive.
+   *
+   * @return true if there is at least one subscriber.
+   */
+  public boolean hasSubscribers() {
+    return !this.subscriptions.isEmpty();
+  }
+
+  /**
+   * Gets the number of subscribers.
+   *
+   * @return the number of subscribers.
+   */
+  public int getSubscriberCount() {
+    return this.subscriptions.size();
+  }
+
+  /**
+   * Gets the number of items that replaced an item for the same key before it was delivered.
+   *
+   * @return the number of conflated items, over every subscriber.
+   */
+  public long getConflatedCount() {
+    return this.conflated.get();
+  }
+
+  /**
+   * Gets the number of items dropped because a subscriber's buffer was full of other keys.
+   *
+   * @return the number of dropped items, over every subscriber.
+   */
+  public long getDroppedCount() {
+    return this.dropped.get();
+  }
+
+  /**
+   * Closes the publisher. Each subscriber is completed once it has received its waiting items.
+   */
+  public void close() {
+    this.closed = true;
+    for (Subscription subscription : this.subscriptions) {
+      subscription.complete();
+    }
+  }
+
+  /**
+   * A subscriber's subscription, with its buffer of waiting items and its outstanding demand.
+   * Items are delivered by a drain task on the executor; a count of pending signals makes sure
+   * only one drain task runs at a time, so the subscriber is never called concurrently.
+   */
+  private final class Subscription implements Flow.Subscription {
+    private final Flow.Subscriber<? super T> subscriber;
+    private final LinkedHashMap<K, T> waiting = new LinkedHashMap<>(); // guarded by this
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicInteger signals = new AtomicInteger();
+    private volatile boolean completing;
+    private volatile Throwable error; // delivered by the drain task, after any onNext
+    private volatile boolean done;
+
+    Subscription(Flow.Subscriber<? super T> subscriber) {
+      this.subscriber = subscriber;
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        this.error = new IllegalArgumentException("Requests must be positive.");
+      } else {
+        long current;
+        long next;
+        do {
+          current = this.demand.get();
+          next = current + n < 0 ? Long.MAX_VALUE : current + n;
+        } while (!this.demand.compareAndSet(current, next));
+      }
+      signal();
+    }
+
+    @Override
+    public void cancel() {
+      this.done = true;
+      ConflatingPublisher.this.subscriptions.remove(this);
+      synchronized (this) {
+        this.waiting.clear();
+      }
+    }
+
+    /**
+     * Adds an item to the buffer, replacing the waiting item for its key or, if the buffer is
+     * full, dropping the item that has waited longest.
+     *
+     * @param key   the key of the item.
+     * @param item  the item.
+     */
+    void offer(K key, T item) {
+      synchronized (this) {
+        if (this.waiting.containsKey(key)) {
+          ConflatingPublisher.this.conflated.incrementAndGet();
+        } else if (this.waiting.size() >= ConflatingPublisher.this.capacity) {
+          Iterator<T> eldest = this.waiting.values().iterator();
+          eldest.next();
+          eldest.remove();
+          ConflatingPublisher.this.dropped.incrementAndGet();
+        }
+        this.waiting.put(key, item);
+      }
+      signal();
+    }
+
+    /**
+     * Completes the subscriber once its waiting items have been delivered.
+     */
+    void complete() {
+      this.completing = true;
+      signal();
+    }
+
+    /**
+     * Starts a drain task, unless one is already running, in which case it drains again.
+     */
+    private void signal() {
+      if (this.signals.getAndIncrement() == 0) {
+        try {
+          ConflatingPublisher.this.executor.execute(this::drain);
+        } catch (RuntimeException e) {
+          fail(e);
+        }
+      }
+    }
+
+    /**
+     * Delivers waiting items while there is demand, and completes the subscriber once there are
+     * none left after closing.
+     */
+    private void drain() {
+      int missed = 1;
+      do {
+        if (this.error != null) {
+          fail(this.error);
+        }
+        while (!this.done && this.demand.get() > 0) {
+          T item;
+          synchronized (this) {
+            Iterator<Map.Entry<K, T>> eldest = this.waiting.entrySet().iterator();
+            if (!eldest.hasNext()) {
+              break;
+            }
+            item = eldest.next().getValue();
+            eldest.remove();
+          }
+          this.demand.decrementAndGet();
+          try {
+            this.subscriber.onNext(item);
+          } catch (RuntimeException e) {
+            fail(e);
+          }
+        }
+        if (!this.done && this.completing && isEmpty()) {
+          cancel();
+          this.subscriber.onComplete();
+        }
+        missed = this.signals.addAndGet(-missed);
+      } while (missed != 0);
+    }
+
+    /**
+     * Checks whether there are no waiting items.
+     *
+     * @return true if there are no waiting items.
+     */
+    private synchronized boolean isEmpty() {
+      return this.waiting.isEmpty();
+    }
+
+    /**
+     * Cancels the subscription and tells the subscriber why.
+     *
+     * @param error  the reason.
+     */
+    private void fail(Throwable error) {
+      if (this.done) {
+        return;
+      }
+      cancel();
+      this.subscriber.onError(error);
+    }
+  }
+}
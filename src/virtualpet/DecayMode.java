@@ -0,0 +1,26 @@
+package virtualpet;
+
+/**
+ * Enum for the ways a virtual pet's needs can decrease over time.
+ * Options: Scheduled, Lazy, Predictive.
+ */
+public enum DecayMode {
+  /**
+   * A timer task decreases the pet's needs every interval.
+   */
+  SCHEDULED,
+
+  /**
+   * No timer task is scheduled. Instead, the decreases that are due are worked out from the
+   * elapsed time whenever the pet is read or interacted with.
+   */
+  LAZY,
+
+  /**
+   * Like the lazy mode, the decreases that are due are worked out whenever the pet is read. In
+   * addition, the pet predicts when its mood, health, or life stage will next change, and a timer
+   * task runs just once at that moment so the pet's listeners hear about the change when it
+   * happens. A pet whose state is stable does no work in between.
+   */
+  PREDICTIVE
+}
@@ -0,0 +1,23 @@
+package virtualpet;
+
+/**
+ * This interface represents a scheduler that is shared by many virtual pets. Each pet gets its own
+ * GameTimer from the scheduler, so every pet keeps track of its own age and can be stopped without
+ * affecting the others, while the threads that run the pets' tasks are shared between all of them.
+ */
+public interface GameScheduler {
+
+  /**
+   * Creates a new timer for a single pet. The timer starts keeping track of time when it is
+   * created.
+   *
+   * @return a new timer that schedules its tasks on this scheduler.
+   * @throws IllegalStateException if the scheduler has been shut down.
+   */
+  GameTimer newTimer() throws IllegalStateException;
+
+  /**
+   * Shuts down the scheduler, stopping the tasks of every timer it created.
+   */
+  void shutdown();
+}
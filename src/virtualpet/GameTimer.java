@@ -17,6 +17,34 @@ public interface GameTimer {
    */
   void scheduleTask(TimerTask task, long interval);
 
+  /**
+   * Schedule a task to perform once, after a given delay. Timers that can only perform tasks at
+   * an interval schedule the task at an interval of the delay and cancel it the first time it
+   * runs, so it runs when their first run at that interval would.
+   *
+   * @param task   the task to perform.
+   * @param delay  the delay after which to perform the task, in milliseconds.
+   */
+  default void scheduleOnce(TimerTask task, long delay) {
+    scheduleTask(new TimerTask() {
+      @Override
+      public void run() {
+        cancel();
+        task.run();
+      }
+    }, delay);
+  }
+
+  /**
+   * Cancels a task scheduled on this timer, so that it does not run again. Timers that keep their
+   * own record of the task drop it right away, rather than when it would next have run.
+   *
+   * @param task  the task to cancel.
+   */
+  default void cancel(TimerTask task) {
+    task.cancel();
+  }
+
   /**
    * Stops the timer.
    */
@@ -23,6 +23,11 @@ public class GameTimerImpl implements GameTimer {
     this.timer.schedule(task, 5000, interval);
   }
 
+  @Override
+  public void scheduleOnce(TimerTask task, long delay) {
+    this.timer.schedule(task, delay);
+  }
+
   @Override
   public void stop() {
     this.timer.cancel();
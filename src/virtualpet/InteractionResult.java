@@ -0,0 +1,29 @@
+package virtualpet;
+
+/**
+ * Enum representing the result of one interaction in a batch of interactions with a pet.
+ * Options: Applied, Need full, Pet dead, Invalid need, No such pet.
+ */
+public enum InteractionResult {
+  APPLIED("Applied"),
+  NEED_FULL("Need full"),
+  PET_DEAD("Pet dead"),
+  INVALID_NEED("Invalid need"),
+  NO_SUCH_PET("No such pet");
+
+  private final String result;
+
+  /**
+   * Provide a String representation of the result.
+   *
+   * @param result String representing the result of an interaction.
+   */
+  InteractionResult(String result) {
+    this.result = result;
+  }
+
+  @Override
+  public String toString() {
+    return this.result;
+  }
+}
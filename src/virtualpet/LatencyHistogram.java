@@ -0,0 +1,103 @@
+package virtualpet;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class counts latencies in buckets that grow with the latency, eight for every power of
+ * two, so any percentile it reports is within an eighth of the true value. Recording takes no
+ * lock and allocates nothing, so it can be called on every request.
+ */
+final class LatencyHistogram {
+  private static final int SUB_BITS = 3; // buckets for every power of two, as a power of two
+  private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+  private final AtomicLongArray counts = new AtomicLongArray((64 - SUB_BITS + 1) * SUB_BUCKETS);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * Records a latency.
+   *
+   * @param nanos  the latency, in nanoseconds.
+   */
+  void record(long nanos) {
+    nanos = Math.max(nanos, 0);
+    this.counts.incrementAndGet(bucket(nanos));
+    this.count.incrementAndGet();
+    long previous = this.max.get();
+    while (nanos > previous && !this.max.compareAndSet(previous, nanos)) {
+      previous = this.max.get();
+    }
+  }
+
+  /**
+   * Gets the number of latencies recorded.
+   *
+   * @return the number of latencies.
+   */
+  long getCount() {
+    return this.count.get();
+  }
+
+  /**
+   * Gets the largest latency recorded.
+   *
+   * @return the largest latency, in nanoseconds.
+   */
+  long getMax() {
+    return this.max.get();
+  }
+
+  /**
+   * Gets a percentile of the latencies recorded, as the upper bound of the bucket it falls in.
+   *
+   * @param percentile  the percentile, from 0 to 100.
+   * @return the latency at the percentile, in nanoseconds, or 0 if none were recorded.
+   */
+  long getPercentile(double percentile) {
+    long total = this.count.get();
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max((long) Math.ceil(total * percentile / 100), 1);
+    long seen = 0;
+    for (int bucket = 0; bucket < this.counts.length(); bucket++) {
+      seen += this.counts.get(bucket);
+      if (seen >= rank) {
+        return Math.min(upperBound(bucket), this.max.get());
+      }
+    }
+    return this.max.get();
+  }
+
+  /**
+   * Gets the bucket a latency is counted in. Latencies below SUB_BUCKETS have a bucket each, and
+   * above that each power of two is split into SUB_BUCKETS by the bits after the highest one.
+   *
+   * @param nanos  the latency, in nanoseconds.
+   * @return the index of the bucket.
+   */
+  private static int bucket(long nanos) {
+    if (nanos < SUB_BUCKETS) {
+      return (int) nanos;
+    }
+    int shift = 63 - Long.numberOfLeadingZeros(nanos) - SUB_BITS;
+    return ((shift + 1) << SUB_BITS) | (int) ((nanos >>> shift) & (SUB_BUCKETS - 1));
+  }
+
+  /**
+   * Gets the largest latency counted in a bucket.
+   *
+   * @param bucket  the index of the bucket.
+   * @return the largest latency, in nanoseconds.
+   */
+  private static long upperBound(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = (bucket >>> SUB_BITS) - 1;
+    long mantissa = (bucket & (SUB_BUCKETS - 1)) | SUB_BUCKETS;
+    return ((mantissa + 1) << shift) - 1;
+  }
+}
@@ -0,0 +1,242 @@
+package virtualpet;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * This class holds the life stages, rates, thresholds and growth ages that every virtual pet
+ * follows. They are read from a properties file (see res/lifestages.properties for the format)
+ * and compiled into flat tables once, when the file is loaded. Loading a new file replaces the
+ * tables atomically, so running pets and populations switch to the new rules at their next tick,
+ * without pausing. Until a file is loaded, the lifestages.properties resource is used if it is on
+ * the classpath, and the built-in rules otherwise.
+ */
+public final class LifeStageConfig {
+  /**
+   * The name of the resource the rules are loaded from at startup.
+   */
+  public static final String RESOURCE = "/lifestages.properties";
+
+  private static final AtomicReference<PetRules> CURRENT =
+      new AtomicReference<>(loadResource());
+
+  private LifeStageConfig() {
+  }
+
+  /**
+   * Loads new rules from a properties file, replacing the current ones.
+   *
+   * @param file  the file to load.
+   * @throws IOException if the file cannot be read.
+   * @throws IllegalArgumentException if the file is not a valid configuration, in which case the
+   *                                  current rules are kept.
+   */
+  public static void load(Path file) throws IOException, IllegalArgumentException {
+    try (InputStream in = Files.newInputStream(file)) {
+      load(in);
+    }
+  }
+
+  /**
+   * Loads new rules from a stream in the properties format, replacing the current ones.
+   *
+   * @param in  the stream to load.
+   * @throws IOException if the stream cannot be read.
+   * @throws IllegalArgumentException if the stream is not a valid configuration, in which case
+   *                                  the current rules are kept.
+   */
+  public static void load(InputStream in) throws IOException, IllegalArgumentException {
+    Properties properties = new Properties();
+    properties.load(in);
+    CURRENT.set(compile(properties));
+  }
+
+  /**
+   * Replaces the current rules with the built-in ones.
+   */
+  public static void reset() {
+    CURRENT.set(PetRules.DEFAULT);
+  }
+
+  /**
+   * Watches a properties file and loads it again every time it changes. A change that is not a
+   * valid configuration is reported on standard error and the current rules are kept.
+   *
+   * @param file  the file to watch.
+   * @return a handle that stops watching the file when closed.
+   * @throws IOException if the file's directory cannot be watched.
+   */
+  public static Closeable watch(Path file) throws IOException {
+    Path path = file.toAbsolutePath();
+    WatchService watcher = FileSystems.getDefault().newWatchService();
+    path.getParent().register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+        StandardWatchEventKinds.ENTRY_MODIFY);
+    Thread thread = new Thread(() -> {
+      try {
+        while (true) {
+          WatchKey key = watcher.take();
+          for (WatchEvent<?> event : key.pollEvents()) {
+            if (path.getFileName().equals(event.context())) {
+              reload(path);
+            }
+          }
+          key.reset();
+        }
+      } catch (InterruptedException | ClosedWatchServiceException e) {
+        // closed, stop watching
+      }
+    }, "life-stage-config-watcher");
+    thread.setDaemon(true);
+    thread.start();
+    return watcher;
+  }
+
+  /**
+   * Gets the current rules. Callers read them once per tick, so that every pet in the tick uses
+   * the same rules.
+   *
+   * @return the current rules.
+   */
+  static PetRules current() {
+    return CURRENT.get();
+  }
+
+  /**
+   * Compiles a configuration into rules.
+   *
+   * @param properties  the configuration.
+   * @return the compiled rules.
+   * @throws IllegalArgumentException if the configuration is missing a value, has a value that is
+   *                                  not valid, or names a life stage twice.
+   */
+  static PetRules compile(Properties properties) throws IllegalArgumentException {
+    String[] names = require(properties, "stages").split(",");
+    PetLifeStage[] lifeStages = new PetLifeStage[names.length];
+    long[] growthAges = new long[names.length];
+    Need[] needs = Need.values();
+    Set<String> seen = new HashSet<>();
+    for (int stage = 0; stage < names.length; stage++) {
+      String name = names[stage].trim();
+      if (!seen.add(name)) {
+        throw new IllegalArgumentException("Life stage " + name + " is named twice.");
+      }
+      int[] increaseRates = new int[needs.length];
+      int[] decreaseRates = new int[needs.length];
+      for (Need need : needs) {
+        increaseRates[need.ordinal()] =
+            requireInt(properties, name + ".increase." + need.name(), 0, 100);
+        decreaseRates[need.ordinal()] =
+            requireInt(properties, name + ".decrease." + need.name(), 0, 100);
+      }
+      lifeStages[stage] = new ConfiguredLifeStage(name, increaseRates, decreaseRates);
+      String growthAge = properties.getProperty(name + ".growthAge");
+      growthAges[stage] = growthAge == null || stage == names.length - 1
+          ? Long.MAX_VALUE : parse(name + ".growthAge", growthAge, 0, Long.MAX_VALUE);
+    }
+    return new PetRules(lifeStages, growthAges,
+        requireInt(properties, "unhappyLevel", 0, 100),
+        requireInt(properties, "sadLevel", 0, 100),
+        requireInt(properties, "sickHealth", 0, 100));
+  }
+
+  /**
+   * Loads the rules from the resource, or uses the built-in rules if it is missing or not valid.
+   *
+   * @return the rules to start with.
+   */
+  private static PetRules loadResource() {
+    try (InputStream in = LifeStageConfig.class.getResourceAsStream(RESOURCE)) {
+      if (in == null) {
+        return PetRules.DEFAULT;
+      }
+      Properties properties = new Properties();
+      properties.load(in);
+      return compile(properties);
+    } catch (IOException | IllegalArgumentException e) {
+      System.err.println("Using built-in life stages: " + e.getMessage());
+      return PetRules.DEFAULT;
+    }
+  }
+
+  /**
+   * Loads a watched file again, keeping the current rules if it cannot be loaded.
+   *
+   * @param file  the file to load.
+   */
+  private static void reload(Path file) {
+    try {
+      load(file);
+    } catch (IOException | IllegalArgumentException e) {
+      System.err.println("Could not reload " + file + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * Gets a value that must be in the configuration.
+   *
+   * @param properties  the configuration.
+   * @param key         the key of the value.
+   * @return the value.
+   * @throws IllegalArgumentException if the value is missing.
+   */
+  private static String require(Properties properties, String key)
+      throws IllegalArgumentException {
+    String value = properties.getProperty(key);
+    if (value == null || value.isBlank()) {
+      throw new IllegalArgumentException("Missing " + key + ".");
+    }
+    return value.trim();
+  }
+
+  /**
+   * Gets a whole number that must be in the configuration.
+   *
+   * @param properties  the configuration.
+   * @param key         the key of the value.
+   * @param min         the smallest value allowed.
+   * @param max         the largest value allowed.
+   * @return the value.
+   * @throws IllegalArgumentException if the value is missing, not a number, or out of range.
+   */
+  private static int requireInt(Properties properties, String key, int min, int max)
+      throws IllegalArgumentException {
+    return (int) parse(key, require(properties, key), min, max);
+  }
+
+  /**
+   * Parses a whole number from the configuration.
+   *
+   * @param key    the key of the value, for error messages.
+   * @param value  the value to parse.
+   * @param min    the smallest value allowed.
+   * @param max    the largest value allowed.
+   * @return the number.
+   * @throws IllegalArgumentException if the value is not a number or is out of range.
+   */
+  private static long parse(String key, String value, long min, long max)
+      throws IllegalArgumentException {
+    long number;
+    try {
+      number = Long.parseLong(value.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(key + " must be a whole number.");
+    }
+    if (number < min || number > max) {
+      throw new IllegalArgumentException(key + " must be between " + min + " and " + max + ".");
+    }
+    return number;
+  }
+}
@@ -0,0 +1,254 @@
+package virtualpet;
+
+import java.util.Arrays;
+
+/**
+ * This class holds the levels of a pet's needs together with the running totals that its mood
+ * and health are worked out from: the sum of the levels, the number of needs at or below the sad
+ * level, and which needs are at each level. The totals are updated every time a single level
+ * changes, so finding the pet's health, whether a need is empty, or its lowest need below the
+ * unhappy level takes the same time however many needs there are. At most 64 needs are supported.
+ */
+final class NeedLevels {
+  private static final int MAX_LEVEL = 100;
+
+  private final int[] levels; // indexed by Need ordinal
+  private final long[] needsAtLevel; // for each level, a bit for the ordinal of every need at it
+  private final long[] usedLevels; // a bit for every level that at least one need is at
+  private int sum;
+  private int sadLevel;
+  private int sadNeeds;
+
+  /**
+   * Creates the levels of a pet's needs, all starting at the same level.
+   *
+   * @param count     the number of needs.
+   * @param level     the level every need starts at.
+   * @param sadLevel  the level at or below which a need is counted as sad.
+   * @throws IllegalArgumentException if there are no needs or more than 64, or a level is not
+   *                                  between 0 and 100.
+   */
+  NeedLevels(int count, int level, int sadLevel) throws IllegalArgumentException {
+    if (count <= 0 || count > Long.SIZE) {
+      throw new IllegalArgumentException("Number of needs must be between 1 and 64.");
+    }
+    checkLevel(level);
+    checkLevel(sadLevel);
+    this.sadLevel = sadLevel;
+    this.levels = new int[count];
+    this.needsAtLevel = new long[MAX_LEVEL + 1];
+    this.usedLevels = new long[(MAX_LEVEL + Long.SIZE) / Long.SIZE];
+    Arrays.fill(this.levels, level);
+    for (int need = 0; need < count; need++) {
+      add(need, level);
+    }
+  }
+
+  /**
+   * Gets the level of a need.
+   *
+   * @param need  the ordinal of the need.
+   * @return the level of the need.
+   */
+  int get(int need) {
+    return this.levels[need];
+  }
+
+  /**
+   * Sets the level of a need, updating the running totals.
+   *
+   * @param need   the ordinal of the need.
+   * @param level  the new level of the need.
+   * @throws IllegalArgumentException if the level is not between 0 and 100.
+   */
+  void set(int need, int level) throws IllegalArgumentException {
+    checkLevel(level);
+    int previous = this.levels[need];
+    if (previous == level) {
+      return;
+    }
+    remove(need, previous);
+    this.levels[need] = level;
+    add(need, level);
+  }
+
+  /**
+   * Sets the level of every need.
+   *
+   * @param levels  the new levels, indexed by each need's ordinal.
+   * @throws IllegalArgumentException if there is not one level for each need, or a level is not
+   *                                  between 0 and 100.
+   */
+  void setAll(int[] levels) throws IllegalArgumentException {
+    if (levels.length != this.levels.length) {
+      throw new IllegalArgumentException("There must be one need level for every need.");
+    }
+    for (int need = 0; need < levels.length; need++) {
+      set(need, levels[need]);
+    }
+  }
+
+  /**
+   * Decreases every level by a life stage's decrease rates, in place, updating the running totals
+   * without copying the levels.
+   *
+   * @param stage  the life stage whose decrease rates to apply.
+   * @throws IllegalArgumentException if the life stage does not have a rate for each need.
+   */
+  void decrease(PetLifeStage stage) throws IllegalArgumentException {
+    for (int need = 0; need < this.levels.length; need++) {
+      remove(need, this.levels[need]);
+    }
+    try {
+      stage.decreaseNeeds(this.levels);
+    } finally {
+      for (int need = 0; need < this.levels.length; need++) {
+        add(need, this.levels[need]);
+      }
+    }
+  }
+
+  /**
+   * Copies the levels into a new array.
+   *
+   * @return the levels, indexed by each need's ordinal.
+   */
+  int[] toArray() {
+    return this.levels.clone();
+  }
+
+  /**
+   * Gets the number of needs.
+   *
+   * @return the number of needs.
+   */
+  int size() {
+    return this.levels.length;
+  }
+
+  /**
+   * Gets the sum of the need levels.
+   *
+   * @return the sum of the need levels.
+   */
+  int sum() {
+    return this.sum;
+  }
+
+  /**
+   * Gets the pet's health, the average of its need levels.
+   *
+   * @return the average of the need levels.
+   */
+  int health() {
+    return this.sum / this.levels.length;
+  }
+
+  /**
+   * Gets the number of needs at or below the sad level.
+   *
+   * @return the number of sad needs.
+   */
+  int sadNeeds() {
+    return this.sadNeeds;
+  }
+
+  /**
+   * Checks whether any need has hit 0.
+   *
+   * @return true if a need is at 0, false otherwise.
+   */
+  boolean anyEmpty() {
+    return this.needsAtLevel[0] != 0;
+  }
+
+  /**
+   * Changes the level at or below which a need is counted as sad, counting the sad needs again.
+   *
+   * @param sadLevel  the new sad level.
+   * @throws IllegalArgumentException if the level is not between 0 and 100.
+   */
+  void setSadLevel(int sadLevel) throws IllegalArgumentException {
+    checkLevel(sadLevel);
+    this.sadLevel = sadLevel;
+    this.sadNeeds = 0;
+    for (int level : this.levels) {
+      if (level <= sadLevel) {
+        this.sadNeeds++;
+      }
+    }
+  }
+
+  /**
+   * Gets the need with the lowest level below the given level. If several needs share the
+   * lowest level, the one that comes first in the Need enum is chosen.
+   *
+   * @param unhappyLevel  the level the need must be below.
+   * @return the ordinal of the lowest need, or -1 if no need is below the level.
+   */
+  int lowestNeedBelow(int unhappyLevel) {
+    int lowest = lowestLevel();
+    if (lowest >= unhappyLevel) {
+      return -1;
+    }
+    return Long.numberOfTrailingZeros(this.needsAtLevel[lowest]);
+  }
+
+  /**
+   * Gets the lowest level of any need.
+   *
+   * @return the lowest level.
+   */
+  private int lowestLevel() {
+    for (int word = 0; word < this.usedLevels.length; word++) {
+      if (this.usedLevels[word] != 0) {
+        return word * Long.SIZE + Long.numberOfTrailingZeros(this.usedLevels[word]);
+      }
+    }
+    throw new IllegalStateException("There are no needs.");
+  }
+
+  /**
+   * Adds a need at a level to the running totals.
+   *
+   * @param need   the ordinal of the need.
+   * @param level  the level of the need.
+   */
+  private void add(int need, int level) {
+    this.sum += level;
+    if (level <= this.sadLevel) {
+      this.sadNeeds++;
+    }
+    this.needsAtLevel[level] |= 1L << need;
+    this.usedLevels[level / Long.SIZE] |= 1L << level;
+  }
+
+  /**
+   * Removes a need at a level from the running totals.
+   *
+   * @param need   the ordinal of the need.
+   * @param level  the level of the need.
+   */
+  private void remove(int need, int level) {
+    this.sum -= level;
+    if (level <= this.sadLevel) {
+      this.sadNeeds--;
+    }
+    this.needsAtLevel[level] &= ~(1L << need);
+    if (this.needsAtLevel[level] == 0) {
+      this.usedLevels[level / Long.SIZE] &= ~(1L << level);
+    }
+  }
+
+  /**
+   * Checks that a level is between 0 and 100.
+   *
+   * @param level  the level to check.
+   * @throws IllegalArgumentException if the level is not between 0 and 100.
+   */
+  private static void checkLevel(int level) throws IllegalArgumentException {
+    if (level < 0 || level > MAX_LEVEL) {
+      throw new IllegalArgumentException("Need level must be between 0 and 100.");
+    }
+  }
+}
@@ -0,0 +1,39 @@
+package virtualpet;
+
+/**
+ * This class represents a change of one of the pets in a registry: the pet's id and its snapshot
+ * after the change.
+ */
+public final class PetChange {
+  private final int id;
+  private final PetSnapshot snapshot;
+
+  /**
+   * Creates a change of a pet.
+   *
+   * @param id        the id of the pet in its registry.
+   * @param snapshot  the pet's snapshot after the change.
+   */
+  PetChange(int id, PetSnapshot snapshot) {
+    this.id = id;
+    this.snapshot = snapshot;
+  }
+
+  /**
+   * Get the id of the pet in its registry.
+   *
+   * @return the id of the pet.
+   */
+  public int getId() {
+    return this.id;
+  }
+
+  /**
+   * Get the pet's snapshot after the change.
+   *
+   * @return the pet's snapshot.
+   */
+  public PetSnapshot getSnapshot() {
+    return this.snapshot;
+  }
+}
@@ -0,0 +1,618 @@
+package virtualpet;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class serves the pets of a registry over a compact binary protocol, for local tools that
+ * poke pets at high rates. It listens on a Unix domain socket where the running Java supports
+ * them, and on a loopback TCP port otherwise. A single thread serves every connection without
+ * blocking: it reads as many requests as have arrived, answers them all in order, and writes the
+ * answers back together, so a client can pipeline requests without waiting for each answer.
+ *
+ * <p>All numbers are big-endian, and strings are a short byte count followed by UTF-8 bytes.
+ * A request is an operation byte followed by its arguments:
+ * <ul>
+ *   <li>CREATE, name: creates a pet, answered with its int id.</li>
+ *   <li>INTERACT, int id, need ordinal byte: interacts with a pet, answered with no data.</li>
+ *   <li>SNAPSHOT, int id: reads a pet, answered with its long age, mood ordinal byte, health
+ *       ordinal byte, health byte, alive byte, a byte for each need level, life stage, and
+ *       name.</li>
+ *   <li>DELTA, int id: reads only what changed of a pet since this connection last asked for it,
+ *       answered with the pet's state delta, which is every field the first time.</li>
+ * </ul>
+ * Each answer starts with a status byte, and only an OK answer has data. A malformed request is
+ * answered with BAD_REQUEST and the connection is closed, since the requests after it cannot be
+ * found. A request that fails while it is answered is answered with FAILED and its connection is
+ * closed too, while the daemon goes on serving the other connections.
+ */
+public final class PetDaemon implements Closeable {
+  public static final byte CREATE = 1;
+  public static final byte INTERACT = 2;
+  public static final byte SNAPSHOT = 3;
+  public static final byte DELTA = 4;
+
+  public static final byte OK = 0;
+  public static final byte NO_SUCH_PET = 1;
+  public static final byte REFUSED = 2; // the need is full or the pet is dead
+  public static final byte BAD_REQUEST = 3;
+  public static final byte FAILED = 4; // the request was well formed, but answering it failed
+
+  public static final int MAX_NAME = 1024; // in bytes
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final Need[] NEEDS = Need.values();
+  private static final ProtocolFamily UNIX = unixFamily(); // null before Java 16
+
+  private final PetRegistry registry;
+  private final ServerSocketChannel server;
+  private final Path socketFile; // null if listening on TCP
+  private final Selector selector;
+  private final Thread thread;
+  private final AtomicLong requests = new AtomicLong();
+  private volatile boolean open = true;
+
+  /**
+   * Creates a daemon for the pets of a registry, listening on a Unix domain socket, and starts
+   * it.
+   *
+   * @param registry  the registry of the pets to serve.
+   * @param socket    the path of the socket, which must not exist yet.
+   * @throws IllegalArgumentException if the registry or socket is null.
+   * @throws IllegalStateException if the running Java does not support Unix domain sockets.
+   * @throws IOException if the daemon could not listen on the socket.
+   */
+  public PetDaemon(PetRegistry registry, Path socket)
+      throws IllegalArgumentException, IllegalStateException, IOException {
+    this(registry, unixAddress(socket), socket);
+  }
+
+  /**
+   * Creates a daemon for the pets of a registry, listening on a TCP address, and starts it.
+   *
+   * @param registry  the registry of the pets to serve.
+   * @param address   the address to listen on; port 0 picks a free port.
+   * @throws IllegalArgumentException if the registry or address is null.
+   * @throws IOException if the daemon could not listen on the address.
+   */
+  public PetDaemon(PetRegistry registry, InetSocketAddress address)
+      throws IllegalArgumentException, IOException {
+    this(registry, (SocketAddress) address, null);
+  }
+
+  /**
+   * Creates a daemon listening on an address, and starts it.
+   *
+   * @param registry    the registry of the pets to serve.
+   * @param address     the address to listen on.
+   * @param socketFile  the path of the Unix domain socket, or null if listening on TCP.
+   * @throws IllegalArgumentException if the registry or address is null.
+   * @throws IOException if the daemon could not listen on the address.
+   */
+  private PetDaemon(PetRegistry registry, SocketAddress address, Path socketFile)
+      throws IllegalArgumentException, IOException {
+    if (registry == null) {
+      throw new IllegalArgumentException("Registry cannot be null.");
+    }
+    this.registry = registry;
+    this.server = openServer(address);
+    this.socketFile = socketFile;
+    try {
+      this.server.bind(address, 1024);
+      this.server.configureBlocking(false);
+      this.selector = Selector.open();
+      this.server.register(this.selector, SelectionKey.OP_ACCEPT);
+    } catch (IOException e) {
+      this.server.close();
+      throw e;
+    }
+    this.thread = new Thread(this::run, "pet-daemon");
+    this.thread.start();
+  }
+
+  /**
+   * Checks whether the running Java supports Unix domain sockets, which it does from Java 16.
+   *
+   * @return true if Unix domain sockets are supported.
+   */
+  public static boolean isUnixSupported() {
+    return UNIX != null;
+  }
+
+  /**
+   * Connects to a daemon, in blocking mode.
+   *
+   * @param address  the address of the daemon, from getAddress().
+   * @return the connected channel.
+   * @throws IllegalArgumentException if the address is null.
+   * @throws IOException if the daemon could not be connected to.
+   */
+  public static SocketChannel connect(SocketAddress address)
+      throws IllegalArgumentException, IOException {
+    if (address == null) {
+      throw new IllegalArgumentException("Address cannot be null.");
+    }
+    SocketChannel channel = address instanceof InetSocketAddress ? SocketChannel.open()
+        : (SocketChannel) openUnix(SocketChannel.class);
+    try {
+      channel.connect(address);
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+    return channel;
+  }
+
+  /**
+   * Gets the address the daemon is listening on.
+   *
+   * @return the address.
+   * @throws IOException if the address could not be read.
+   */
+  public SocketAddress getAddress() throws IOException {
+    return this.server.getLocalAddress();
+  }
+
+  /**
+   * Gets the number of requests answered so far.
+   *
+   * @return the number of requests.
+   */
+  public long getRequestCount() {
+    return this.requests.get();
+  }
+
+  /**
+   * Stops the daemon, closing its connections and removing its socket file.
+   *
+   * @throws IOException if the socket file could not be removed.
+   */
+  @Override
+  public void close() throws IOException {
+    this.open = false;
+    this.selector.wakeup();
+    try {
+      this.thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (this.socketFile != null) {
+      Files.deleteIfExists(this.socketFile);
+    }
+  }
+
+  /**
+   * Serves connections until the daemon is closed.
+   */
+  private void run() {
+    try {
+      while (this.open) {
+        this.selector.select();
+        Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          if (key.isAcceptable()) {
+            accept();
+            continue;
+          }
+          Connection connection = (Connection) key.attachment();
+          try {
+            if (key.isWritable()) {
+              flush(connection);
+            }
+            if (key.isValid() && key.isReadable()) {
+              read(connection);
+            }
+          } catch (IOException e) {
+            connection.close();
+          } catch (RuntimeException e) {
+            System.err.println("Pet daemon dropped a connection: " + e);
+            connection.close();
+          }
+        }
+      }
+    } catch (IOException | ClosedSelectorException e) {
+      System.err.println("Pet daemon stopped: " + e.getMessage());
+    } finally {
+      for (SelectionKey key : this.selector.keys()) {
+        if (key.attachment() instanceof Connection) {
+          ((Connection) key.attachment()).close();
+        }
+      }
+      try {
+        this.selector.close();
+        this.server.close();
+      } catch (IOException e) {
+        System.err.println("Could not close the pet daemon: " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Accepts a waiting connection, if there is one.
+   *
+   * @throws IOException if the connection could not be accepted.
+   */
+  private void accept() throws IOException {
+    SocketChannel channel = this.server.accept();
+    if (channel == null) {
+      return;
+    }
+    channel.configureBlocking(false);
+    Connection connection = new Connection(channel);
+    connection.key = channel.register(this.selector, SelectionKey.OP_READ, connection);
+  }
+
+  /**
+   * Reads what a connection has sent, answers every whole request in it, and writes the answers.
+   * A request whose answer fails is answered with FAILED, and the connection closed once the
+   * answers have been written.
+   *
+   * @param connection  the connection.
+   * @throws IOException if the connection could not be read or written.
+   */
+  private void read(Connection connection) throws IOException {
+    if (connection.channel.read(connection.in) < 0) {
+      connection.close();
+      return;
+    }
+    connection.in.flip();
+    int answered = 0;
+    while (!connection.closing) {
+      int written = connection.out.position();
+      try {
+        if (!answer(connection)) {
+          break;
+        }
+      } catch (RuntimeException e) {
+        System.err.println("Pet daemon could not answer a request: " + e);
+        connection.out.position(written); // drop whatever part of the answer was written
+        connection.reserve(1).put(FAILED);
+        connection.closing = true;
+      }
+      answered++;
+    }
+    connection.in.compact();
+    this.requests.addAndGet(answered);
+    flush(connection);
+  }
+
+  /**
+   * Answers the next request of a connection, if the whole of it has arrived.
+   *
+   * @param connection  the connection.
+   * @return true if a request was answered.
+   */
+  private boolean answer(Connection connection) {
+    ByteBuffer in = connection.in;
+    if (!in.hasRemaining()) {
+      return false;
+    }
+    int start = in.position();
+    switch (in.get(start)) {
+      case CREATE:
+        if (in.remaining() < 3) {
+          return false;
+        }
+        int length = in.getShort(start + 1) & 0xFFFF;
+        if (length > MAX_NAME) {
+          return refuse(connection);
+        }
+        if (in.remaining() < 3 + length) {
+          return false;
+        }
+        byte[] name = new byte[length];
+        in.position(start + 3);
+        in.get(name);
+        int id = this.registry.add(new String(name, StandardCharsets.UTF_8));
+        connection.reserve(5).put(OK).putInt(id);
+        return true;
+      case INTERACT:
+        if (in.remaining() < 6) {
+          return false;
+        }
+        in.position(start + 6);
+        int need = in.get(start + 5);
+        if (need < 0 || need >= NEEDS.length) {
+          return refuse(connection);
+        }
+        connection.reserve(1).put(interact(in.getInt(start + 1), NEEDS[need]));
+        return true;
+      case SNAPSHOT:
+        if (in.remaining() < 5) {
+          return false;
+        }
+        in.position(start + 5);
+        snapshot(connection, in.getInt(start + 1));
+        return true;
+      case DELTA:
+        if (in.remaining() < 5) {
+          return false;
+        }
+        in.position(start + 5);
+        delta(connection, in.getInt(start + 1));
+        return true;
+      default:
+        return refuse(connection);
+    }
+  }
+
+  /**
+   * Interacts with a pet.
+   *
+   * @param id    the id of the pet.
+   * @param need  the need to interact with.
+   * @return the status of the answer.
+   */
+  private byte interact(int id, Need need) {
+    VirtualPet pet;
+    try {
+      pet = this.registry.get(id);
+    } catch (IllegalArgumentException e) {
+      return NO_SUCH_PET;
+    }
+    try {
+      pet.interact(need);
+      return OK;
+    } catch (IllegalArgumentException | IllegalStateException e) {
+      return REFUSED;
+    }
+  }
+
+  /**
+   * Answers with a pet's snapshot.
+   *
+   * @param connection  the connection to answer.
+   * @param id          the id of the pet.
+   */
+  private void snapshot(Connection connection, int id) {
+    VirtualPet pet;
+    try {
+      pet = this.registry.get(id);
+    } catch (IllegalArgumentException e) {
+      connection.reserve(1).put(NO_SUCH_PET);
+      return;
+    }
+    PetSnapshot snapshot = pet.getSnapshot();
+    byte[] stage = snapshot.getLifeStage().toString().getBytes(StandardCharsets.UTF_8);
+    byte[] name = snapshot.getName().getBytes(StandardCharsets.UTF_8);
+    int nameLength = Math.min(name.length, MAX_NAME);
+    while (nameLength < name.length && (name[nameLength] & 0xC0) == 0x80) {
+      nameLength--; // cut between characters, not inside one
+    }
+    ByteBuffer out = connection.reserve(13 + NEEDS.length + 4 + stage.length + nameLength);
+    out.put(OK).putLong(pet.getAge())
+        .put((byte) snapshot.getMoodState().ordinal())
+        .put((byte) snapshot.getHealthState().ordinal())
+        .put((byte) snapshot.getHealth())
+        .put((byte) (snapshot.isAlive() ? 1 : 0));
+    for (Need need : NEEDS) {
+      out.put((byte) snapshot.getNeedLevel(need));
+    }
+    out.putShort((short) stage.length).put(stage);
+    out.putShort((short) nameLength).put(name, 0, nameLength);
+  }
+
+  /**
+   * Answers with the changes of a pet since the connection last asked for them.
+   *
+   * @param connection  the connection to answer.
+   * @param id          the id of the pet.
+   */
+  private void delta(Connection connection, int id) {
+    VirtualPet pet;
+    try {
+      pet = this.registry.get(id);
+    } catch (IllegalArgumentException e) {
+      connection.reserve(1).put(NO_SUCH_PET);
+      return;
+    }
+    PetStateDelta last = connection.sent.get(id);
+    PetSnapshot snapshot = pet.getSnapshot();
+    long age = pet.getAge();
+    PetStateDelta delta = last == null ? PetStateDelta.between(null, 0, snapshot, age)
+        : PetStateDelta.between(last.getSnapshot(), last.getAge(), snapshot, age);
+    connection.sent.put(id, delta);
+    ByteBuffer out = connection.reserve(1 + delta.getEncodedSize());
+    out.put(OK);
+    delta.writeTo(out);
+  }
+
+  /**
+   * Answers a malformed request and closes the connection once the answers have been written.
+   *
+   * @param connection  the connection.
+   * @return true, as the request was answered.
+   */
+  private static boolean refuse(Connection connection) {
+    connection.reserve(1).put(BAD_REQUEST);
+    connection.closing = true;
+    return true;
+  }
+
+  /**
+   * Writes a connection's waiting answers. While some are still waiting, the connection is only
+   * watched for writing, so that a client that does not read its answers stops being read.
+   *
+   * @param connection  the connection.
+   * @throws IOException if the connection could not be written.
+   */
+  private static void flush(Connection connection) throws IOException {
+    connection.out.flip();
+    connection.channel.write(connection.out);
+    connection.out.compact();
+    if (connection.out.position() > 0) {
+      connection.key.interestOps(SelectionKey.OP_WRITE);
+    } else if (connection.closing) {
+      connection.close();
+    } else {
+      connection.key.interestOps(SelectionKey.OP_READ);
+    }
+  }
+
+  /**
+   * Gets the address of a Unix domain socket.
+   *
+   * @param socket  the path of the socket.
+   * @return the address.
+   * @throws IllegalArgumentException if the path is null.
+   * @throws IllegalStateException if the running Java does not support Unix domain sockets.
+   */
+  private static SocketAddress unixAddress(Path socket)
+      throws IllegalArgumentException, IllegalStateException {
+    if (socket == null) {
+      throw new IllegalArgumentException("Socket cannot be null.");
+    }
+    if (UNIX == null) {
+      throw new IllegalStateException("Unix domain sockets need Java 16 or later.");
+    }
+    try {
+      return (SocketAddress) Class.forName("java.net.UnixDomainSocketAddress")
+          .getMethod("of", Path.class).invoke(null, socket);
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Unix domain sockets are not available.", e);
+    }
+  }
+
+  /**
+   * Opens a server channel for an address.
+   *
+   * @param address  the address.
+   * @return the server channel, not yet bound.
+   * @throws IllegalArgumentException if the address is null.
+   * @throws IOException if the channel could not be opened.
+   */
+  private static ServerSocketChannel openServer(SocketAddress address)
+      throws IllegalArgumentException, IOException {
+    if (address == null) {
+      throw new IllegalArgumentException("Address cannot be null.");
+    }
+    return address instanceof InetSocketAddress ? ServerSocketChannel.open()
+        : (ServerSocketChannel) openUnix(ServerSocketChannel.class);
+  }
+
+  /**
+   * Opens a Unix domain channel with the open(ProtocolFamily) method added in Java 16, which this
+   * class cannot call directly as it is built for Java 11.
+   *
+   * @param type  the type of channel.
+   * @return the channel.
+   * @throws IOException if the channel could not be opened.
+   */
+  private static Object openUnix(Class<?> type) throws IOException {
+    if (UNIX == null) {
+      throw new IllegalStateException("Unix domain sockets need Java 16 or later.");
+    }
+    try {
+      return type.getMethod("open", ProtocolFamily.class).invoke(null, UNIX);
+    } catch (InvocationTargetException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IllegalStateException("Could not open a Unix domain socket.", e.getCause());
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException("Unix domain sockets are not available.", e);
+    }
+  }
+
+  /**
+   * Gets the protocol family of Unix domain sockets.
+   *
+   * @return the protocol family, or null if the running Java does not support them.
+   */
+  private static ProtocolFamily unixFamily() {
+    try {
+      return StandardProtocolFamily.valueOf("UNIX");
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Runs a pet daemon until the process is stopped.
+   *
+   * @param args  command-line arguments: the path of the socket (pets.sock by default), and the
+   *              population file to serve the pets of, if any. Without Unix domain sockets the
+   *              daemon listens on a free loopback port instead, and prints it.
+   * @throws IOException if the daemon could not start or the population file could not be
+   *                     opened.
+   */
+  public static void main(String[] args) throws IOException {
+    Path socket = Paths.get(args.length > 0 ? args[0] : "pets.sock");
+    Path path = args.length > 1 ? Paths.get(args[1]) : null;
+    PopulationFile snapshot = path != null && Files.exists(path) ? new PopulationFile(path) : null;
+    GameScheduler[] shards = new GameScheduler[Runtime.getRuntime().availableProcessors()];
+    for (int i = 0; i < shards.length; i++) {
+      shards[i] = new TimingWheelScheduler();
+    }
+    PetRegistry registry = new PetRegistry(snapshot, shards, DecayMode.LAZY);
+    PetDaemon daemon = isUnixSupported() ? new PetDaemon(registry, socket)
+        : new PetDaemon(registry, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    System.out.println("Serving " + registry.size() + " pets on " + daemon.getAddress());
+  }
+
+  /**
+   * A client's connection, with the requests read but not yet answered and the answers not yet
+   * written.
+   */
+  private static final class Connection {
+    private final SocketChannel channel;
+    private final ByteBuffer in = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final Map<Integer, PetStateDelta> sent = new HashMap<>(); // the last delta of each pet
+    private ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private SelectionKey key;
+    private boolean closing; // a malformed request was read
+
+    Connection(SocketChannel channel) {
+      this.channel = channel;
+    }
+
+    /**
+     * Makes room for an answer, growing the answers buffer if needed.
+     *
+     * @param bytes  the size of the answer.
+     * @return the answers buffer.
+     */
+    ByteBuffer reserve(int bytes) {
+      if (this.out.remaining() < bytes) {
+        ByteBuffer larger = ByteBuffer.allocateDirect(
+            Math.max(this.out.capacity() * 2, this.out.position() + bytes));
+        this.out.flip();
+        larger.put(this.out);
+        this.out = larger;
+      }
+      return this.out;
+    }
+
+    /**
+     * Closes the connection.
+     */
+    void close() {
+      try {
+        this.channel.close();
+      } catch (IOException e) {
+        // nothing more can be done with a connection that cannot be closed
+      }
+    }
+  }
+}
@@ -0,0 +1,94 @@
+package virtualpet;
+
+/**
+ * This class represents a prediction of when a virtual pet's state will next change if it is left
+ * alone. Each prediction is a number of intervals of decrease from the pet's current state, or
+ * Long.MAX_VALUE if the change will not happen. Predictions only hold until the pet is interacted
+ * with or grows into a new life stage, since both change how its needs decrease.
+ */
+public final class PetForecast {
+  private final long moodChange;
+  private final long sick;
+  private final long death;
+  private final long growth;
+
+  /**
+   * Creates a forecast.
+   *
+   * @param moodChange  the intervals until the pet's mood changes.
+   * @param sick        the intervals until the pet is sick, 0 if it already is.
+   * @param death       the intervals until the pet dies.
+   * @param growth      the intervals until the pet grows into its next life stage.
+   */
+  PetForecast(long moodChange, long sick, long death, long growth) {
+    this.moodChange = moodChange;
+    this.sick = sick;
+    this.death = death;
+    this.growth = growth;
+  }
+
+  /**
+   * Get the number of intervals until the pet's mood changes.
+   *
+   * @return the intervals until the mood changes, or Long.MAX_VALUE if it will not.
+   */
+  public long getIntervalsUntilMoodChange() {
+    return this.moodChange;
+  }
+
+  /**
+   * Get the number of intervals until the pet is sick.
+   *
+   * @return the intervals until the pet is sick, 0 if it already is, or Long.MAX_VALUE if it dies
+   *         first.
+   */
+  public long getIntervalsUntilSick() {
+    return this.sick;
+  }
+
+  /**
+   * Get the number of intervals until the pet dies.
+   *
+   * @return the intervals until the pet dies, or Long.MAX_VALUE if it will not.
+   */
+  public long getIntervalsUntilDeath() {
+    return this.death;
+  }
+
+  /**
+   * Get the number of intervals until the pet grows into its next life stage.
+   *
+   * @return the intervals until the pet grows, or Long.MAX_VALUE if it will not.
+   */
+  public long getIntervalsUntilGrowth() {
+    return this.growth;
+  }
+
+  /**
+   * Get the number of intervals until the next of the predicted changes.
+   *
+   * @return the intervals until the next change, or Long.MAX_VALUE if nothing will change.
+   */
+  public long getIntervalsUntilNextChange() {
+    long next = Math.min(Math.min(this.moodChange, this.death), this.growth);
+    return this.sick > 0 ? Math.min(next, this.sick) : next;
+  }
+
+  @Override
+  public String toString() {
+    return "Mood change: " + format(this.moodChange) + "\n"
+        + "Sick: " + format(this.sick) + "\n"
+        + "Death: " + format(this.death) + "\n"
+        + "Growth: " + format(this.growth) + "\n";
+  }
+
+  /**
+   * Formats a number of intervals for toString().
+   *
+   * @param intervals  the number of intervals.
+   * @return the number, or "never" for Long.MAX_VALUE.
+   */
+  private static String format(long intervals) {
+    return intervals == Long.MAX_VALUE ? "never" : intervals + " intervals";
+  }
+}
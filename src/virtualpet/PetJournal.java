@@ -0,0 +1,593 @@
+package virtualpet;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.zip.CRC32C;
+
+/**
+ * This class represents an append-only journal of the events of a population of pets: pets being
+ * named, interactions, ticks, pauses, life stage changes and deaths. Entries are appended to a
+ * buffer in memory, and a committer thread writes them to the file. Every entry that arrives while
+ * the committer is forcing one batch to the disk goes into the next batch, which is written with a
+ * single write and a single force, so many interactions share the cost of one fsync (group commit).
+ *
+ * <p>Each entry is written as its length and a checksum followed by its sequence number, type,
+ * slot, time and argument, and a name for entries that name a pet. An entry that was only partly
+ * written when the process stopped fails its checksum and is dropped, along with anything after
+ * it, the next time the journal is opened.
+ *
+ * <p>The journal is kept in segments. New entries go to the file the journal was opened with.
+ * Once a checkpoint of the population has been saved, the committer renames that file after the
+ * sequence number of its last entry, starts a new one, and deletes the segments that hold nothing
+ * after the checkpoint. Each new file starts with a ROLL entry, so the sequence numbers carry on
+ * even when every older segment is gone. Opening the journal reads only the newest segment.
+ *
+ * <p>After a restart, recover() loads the last snapshot of the population and replays the entries
+ * that came after it, reading only the segments that hold such entries. The pets are split into
+ * partitions by slot that are replayed in parallel, each partition applying the ticks to its own
+ * pets and only the entries for its own pets.
+ */
+public final class PetJournal implements Closeable {
+  // types of entries
+  static final byte NAME = 1; // the slot is given a name, which adds a pet to a new slot
+  static final byte INTERACT = 2; // the argument is the ordinal of the need
+  static final byte TICK = 3; // the whole population ticks
+  static final byte PAUSE = 4; // the pet is paused or resumed
+  static final byte STAGE = 5; // the argument is the index of the new life stage
+  static final byte DEATH = 6;
+  static final byte ROLL = 7; // starts a segment, with the last sequence of the segment before
+
+  private static final int ENTRY_HEADER = 8; // length and checksum
+  private static final int ENTRY_BODY = 8 + 1 + 4 + 8 + 4; // sequence, type, slot, time, argument
+  private static final int MAX_ENTRY = 1 << 20;
+  private static final int INITIAL_BUFFER = 1 << 16;
+
+  private final Path file;
+  private FileChannel channel; // replaced by the committer when it starts a new segment
+  private final Thread committer;
+  private ByteBuffer pending; // entries appended since the last batch was taken
+  private ByteBuffer committing; // the batch being written, swapped with pending
+  private long lastSequence;
+  private long durableSequence;
+  private long commits;
+  private long compactTo; // segments ending at or before it are no longer needed
+  private long compacted;
+  private long segmentStart; // the sequence the file's entries follow; used by the committer
+  private boolean closed;
+  private boolean stopped; // the committer has finished
+  private IOException failure;
+
+  /**
+   * Opens a journal, creating an empty one if it does not exist. New entries are appended after
+   * the last complete entry in the file.
+   *
+   * @param file  the file of the journal.
+   * @throws IOException if the file cannot be opened or read.
+   */
+  public PetJournal(Path file) throws IOException {
+    this.file = file;
+    this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    Entries entries = new Entries();
+    try {
+      long end = read(this.channel, Long.MAX_VALUE, entries);
+      this.channel.truncate(end);
+      this.channel.position(end);
+      if (end == 0) {
+        // the process may have stopped just after starting this segment, so the sequence
+        // carries on from the last older segment
+        Long[] segments = segments(file).keySet().toArray(new Long[0]);
+        entries.lastSequence = segments.length == 0 ? 0 : segments[segments.length - 1];
+        if (entries.lastSequence > 0) {
+          writeRoll(entries.lastSequence);
+        }
+      }
+    } catch (IOException e) {
+      this.channel.close();
+      throw e;
+    }
+    this.lastSequence = entries.lastSequence;
+    this.durableSequence = entries.lastSequence;
+    this.segmentStart = entries.started ? entries.base : entries.lastSequence;
+    this.pending = ByteBuffer.allocate(INITIAL_BUFFER);
+    this.committing = ByteBuffer.allocate(INITIAL_BUFFER);
+    this.committer = new Thread(this::commit, "pet-journal-committer");
+    this.committer.setDaemon(true);
+    this.committer.start();
+  }
+
+  /**
+   * Gets the sequence number of the last entry appended to the journal.
+   *
+   * @return the last sequence number, or 0 if the journal is empty.
+   */
+  public synchronized long getLastSequence() {
+    return this.lastSequence;
+  }
+
+  /**
+   * Gets the sequence number of the last entry that has been forced to the disk.
+   *
+   * @return the last durable sequence number.
+   */
+  public synchronized long getDurableSequence() {
+    return this.durableSequence;
+  }
+
+  /**
+   * Gets the number of batches written so far. Each batch costs one write and one force, however
+   * many entries it holds.
+   *
+   * @return the number of batches written.
+   */
+  public synchronized long getCommitCount() {
+    return this.commits;
+  }
+
+  /**
+   * Waits until every entry appended so far has been forced to the disk.
+   *
+   * @throws IllegalStateException if the journal could not be written.
+   */
+  public void flush() throws IllegalStateException {
+    await(getLastSequence());
+  }
+
+  /**
+   * Writes the remaining entries and closes the journal.
+   *
+   * @throws IOException if the journal could not be written.
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (this) {
+      if (this.closed) {
+        return;
+      }
+      this.closed = true;
+      notifyAll();
+    }
+    try {
+      this.committer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    this.channel.close();
+    synchronized (this) {
+      if (this.failure != null) {
+        throw this.failure;
+      }
+    }
+  }
+
+  /**
+   * Recovers a population after a restart: loads the population saved in a snapshot, or creates
+   * an empty one if nothing was saved or the last save did not finish, and replays the journal
+   * entries that came after the snapshot. Only the segments holding such entries are read. Pets
+   * keep their age: the time between the last entry and the restart does not count.
+   *
+   * @param snapshot     the last snapshot of the population.
+   * @param journal      the file of the journal.
+   * @param timer        the timer of the recovered population.
+   * @param capacity     the capacity of the population if nothing was saved in the snapshot.
+   * @param parallelism  the number of threads used to replay and tick the population.
+   * @return the recovered population.
+   * @throws IOException if the journal cannot be read, or no longer holds every entry after the
+   *                     snapshot.
+   * @throws IllegalArgumentException if the timer is null, the capacity or parallelism is less
+   *                                  than 1, or the journal has a pet outside the population.
+   */
+  public static PetPopulation recover(PopulationFile snapshot, Path journal, GameTimer timer,
+      int capacity, int parallelism) throws IOException, IllegalArgumentException {
+    if (timer == null) {
+      throw new IllegalArgumentException("Timer cannot be null.");
+    }
+    long after = Math.max(snapshot.getJournalSequence(), 0);
+    List<Path> files = new ArrayList<>(segments(journal).tailMap(after, false).values());
+    if (Files.exists(journal)) {
+      files.add(journal);
+    }
+    Entries entries = new Entries();
+    for (Path segment : files) {
+      try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+        if (read(channel, after, entries) < channel.size()) {
+          break; // an entry was only partly written, so nothing after it can be trusted
+        }
+      }
+    }
+    if (entries.base > after) {
+      throw new IOException("The journal no longer has the entries after the snapshot.");
+    }
+    PetPopulation population;
+    long stoppedAt;
+    if (snapshot.getCapacity() > 0 && snapshot.getJournalSequence() != PopulationFile.INCOMPLETE) {
+      stoppedAt = Math.max(snapshot.getSavedAt(), entries.lastTime);
+      population = snapshot.load(timer, parallelism, stoppedAt);
+    } else {
+      // nothing was saved, or the last save was cut short, so replay the whole journal
+      stoppedAt = entries.lastTime;
+      population = new PetPopulation(
+          snapshot.getCapacity() > 0 ? snapshot.getCapacity() : capacity, timer, parallelism);
+    }
+    population.replay(entries, timer.getElapsedTime() - stoppedAt);
+    return population;
+  }
+
+  /**
+   * Appends an entry to the journal. The entry is written by the next batch; use await() to wait
+   * until it is on the disk. Called by the population while holding its lock, so entries are in
+   * the same order as the changes they describe.
+   *
+   * @param type      the type of the entry.
+   * @param slot      the slot of the pet, or -1 for a tick.
+   * @param time      the elapsed time of the population's timer, in seconds.
+   * @param argument  the need or life stage of the entry, or 0.
+   * @param name      the name of the pet for a NAME entry, or null.
+   * @return the sequence number of the entry.
+   * @throws IllegalArgumentException if the name is too long to journal.
+   * @throws IllegalStateException if the journal is closed or could not be written.
+   */
+  synchronized long append(byte type, int slot, long time, int argument, String name)
+      throws IllegalArgumentException, IllegalStateException {
+    checkOpen();
+    byte[] nameBytes = name == null ? null : name.getBytes(StandardCharsets.UTF_8);
+    int length = ENTRY_BODY + (name == null ? 0 : 4 + nameBytes.length);
+    if (length > MAX_ENTRY) {
+      throw new IllegalArgumentException("Name is too long to journal.");
+    }
+    if (this.pending.remaining() < ENTRY_HEADER + length) {
+      int size = Math.max(this.pending.capacity() * 2, this.pending.position() + ENTRY_HEADER
+          + length);
+      this.pending = ByteBuffer.allocate(size).put(this.pending.flip());
+    }
+    long sequence = ++this.lastSequence;
+    put(this.pending, sequence, type, slot, time, argument, nameBytes);
+    notifyAll();
+    return sequence;
+  }
+
+  /**
+   * Lets the committer drop the entries included in a saved checkpoint of the population. The
+   * committer starts a new segment and deletes every segment whose entries all come at or before
+   * the checkpoint.
+   *
+   * @param sequence  the journal sequence of the checkpoint.
+   */
+  synchronized void compact(long sequence) {
+    if (sequence > this.compactTo) {
+      this.compactTo = sequence;
+      notifyAll();
+    }
+  }
+
+  /**
+   * Waits until an entry has been forced to the disk.
+   *
+   * @param sequence  the sequence number of the entry.
+   * @throws IllegalStateException if the journal is closed before the entry is written, or could
+   *                               not be written.
+   */
+  synchronized void await(long sequence) throws IllegalStateException {
+    boolean interrupted = false;
+    while (this.durableSequence < sequence && !this.stopped) {
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    if (this.durableSequence < sequence) {
+      checkOpen();
+      throw new IllegalStateException("Journal was closed.");
+    }
+  }
+
+  /**
+   * Checks that entries can still be appended.
+   *
+   * @throws IllegalStateException if the journal is closed or could not be written.
+   */
+  private void checkOpen() throws IllegalStateException {
+    if (this.failure != null) {
+      throw new IllegalStateException("Journal could not be written.", this.failure);
+    }
+    if (this.closed) {
+      throw new IllegalStateException("Journal is closed.");
+    }
+  }
+
+  /**
+   * Runs on the committer thread, writing batches of entries until the journal is closed and
+   * every entry has been written.
+   */
+  private void commit() {
+    try {
+      commitBatches();
+    } finally {
+      synchronized (this) {
+        this.stopped = true;
+        notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Writes batches of entries until the journal is closed and every entry has been written, or a
+   * batch cannot be written. Compacts the journal between batches when asked to.
+   */
+  private void commitBatches() {
+    while (true) {
+      ByteBuffer batch = null;
+      long sequence;
+      long compactTo;
+      boolean compact;
+      synchronized (this) {
+        while (this.pending.position() == 0 && this.compactTo == this.compacted
+            && !this.closed) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            return;
+          }
+        }
+        if (this.pending.position() > 0) {
+          batch = this.pending;
+          this.pending = this.committing;
+          this.committing = batch;
+        } else if (this.compactTo == this.compacted) {
+          return;
+        }
+        sequence = this.lastSequence;
+        compactTo = this.compactTo;
+        compact = compactTo > this.compacted;
+      }
+      try {
+        if (batch != null) {
+          batch.flip();
+          while (batch.hasRemaining()) {
+            this.channel.write(batch);
+          }
+          this.channel.force(false);
+          batch.clear();
+        }
+        if (compact) {
+          roll(sequence, compactTo);
+        }
+      } catch (IOException e) {
+        synchronized (this) {
+          this.failure = e;
+        }
+        return;
+      }
+      synchronized (this) {
+        if (batch != null) {
+          this.durableSequence = sequence;
+          this.commits++;
+        }
+        this.compacted = compactTo;
+        notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Starts a new segment and deletes the segments that are no longer needed. Runs on the
+   * committer thread once every entry up to the last one has been written.
+   *
+   * @param last       the sequence number of the last entry written.
+   * @param compactTo  the journal sequence of the last saved checkpoint.
+   * @throws IOException if the segments cannot be renamed, created or deleted.
+   */
+  private void roll(long last, long compactTo) throws IOException {
+    if (last > this.segmentStart) {
+      Files.move(this.file, segment(this.file, last), StandardCopyOption.ATOMIC_MOVE);
+      this.channel.close();
+      this.channel = FileChannel.open(this.file, StandardOpenOption.CREATE_NEW,
+          StandardOpenOption.READ, StandardOpenOption.WRITE);
+      writeRoll(last);
+      this.segmentStart = last;
+    }
+    for (Path segment : segments(this.file).headMap(compactTo, true).values()) {
+      Files.delete(segment);
+    }
+  }
+
+  /**
+   * Writes the ROLL entry that starts a segment and forces it to the disk.
+   *
+   * @param last  the sequence number of the last entry of the segment before.
+   * @throws IOException if the entry cannot be written.
+   */
+  private void writeRoll(long last) throws IOException {
+    ByteBuffer entry = ByteBuffer.allocate(ENTRY_HEADER + ENTRY_BODY);
+    put(entry, last, ROLL, -1, 0, 0, null);
+    entry.flip();
+    while (entry.hasRemaining()) {
+      this.channel.write(entry);
+    }
+    this.channel.force(false);
+  }
+
+  /**
+   * Puts an entry into a buffer: its length, its checksum and its body.
+   *
+   * @param buffer    the buffer, which must have room for the entry.
+   * @param sequence  the sequence number of the entry.
+   * @param type      the type of the entry.
+   * @param slot      the slot of the pet, or -1.
+   * @param time      the elapsed time of the population's timer, in seconds.
+   * @param argument  the need or life stage of the entry, or 0.
+   * @param name      the name of the pet in UTF-8, or null.
+   */
+  private static void put(ByteBuffer buffer, long sequence, byte type, int slot, long time,
+      int argument, byte[] name) {
+    int length = ENTRY_BODY + (name == null ? 0 : 4 + name.length);
+    int start = buffer.position();
+    buffer.putInt(length).putInt(0).putLong(sequence).put(type).putInt(slot).putLong(time)
+        .putInt(argument);
+    if (name != null) {
+      buffer.putInt(name.length).put(name);
+    }
+    CRC32C checksum = new CRC32C();
+    checksum.update(buffer.array(), start + ENTRY_HEADER, length);
+    buffer.putInt(start + 4, (int) checksum.getValue());
+  }
+
+  /**
+   * Gets the path of the segment that ends with an entry.
+   *
+   * @param file  the file of the journal.
+   * @param last  the sequence number of the segment's last entry.
+   * @return the path of the segment.
+   */
+  private static Path segment(Path file, long last) {
+    return file.resolveSibling(file.getFileName() + "." + last);
+  }
+
+  /**
+   * Finds the older segments of a journal.
+   *
+   * @param file  the file of the journal.
+   * @return the segments, by the sequence number of their last entry.
+   * @throws IOException if the folder of the journal cannot be read.
+   */
+  private static TreeMap<Long, Path> segments(Path file) throws IOException {
+    TreeMap<Long, Path> segments = new TreeMap<>();
+    Path folder = file.toAbsolutePath().getParent();
+    String prefix = file.getFileName() + ".";
+    if (!Files.isDirectory(folder)) {
+      return segments;
+    }
+    try (DirectoryStream<Path> paths = Files.newDirectoryStream(folder, prefix + "*")) {
+      for (Path path : paths) {
+        String suffix = path.getFileName().toString().substring(prefix.length());
+        if (!suffix.isEmpty() && suffix.chars().allMatch(Character::isDigit)) {
+          segments.put(Long.parseLong(suffix), path);
+        }
+      }
+    }
+    return segments;
+  }
+
+  /**
+   * Reads the complete entries of a journal, stopping at the first entry that was only partly
+   * written.
+   *
+   * @param channel  the journal's file.
+   * @param after    only entries with a larger sequence number are kept.
+   * @param entries  the entries to add to.
+   * @return the position just after the last complete entry.
+   * @throws IOException if the journal cannot be read.
+   */
+  private static long read(FileChannel channel, long after, Entries entries) throws IOException {
+    long end = 0;
+    DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Channels.newInputStream(channel.position(0)), 1 << 16));
+    byte[] body = new byte[ENTRY_BODY];
+    CRC32C checksum = new CRC32C();
+    while (true) {
+      int length;
+      int expected;
+      try {
+        length = in.readInt();
+        expected = in.readInt();
+        if (length < ENTRY_BODY || length > MAX_ENTRY) {
+          return end;
+        }
+        if (body.length < length) {
+          body = new byte[length];
+        }
+        in.readFully(body, 0, length);
+      } catch (EOFException e) {
+        return end;
+      }
+      checksum.reset();
+      checksum.update(body, 0, length);
+      if ((int) checksum.getValue() != expected) {
+        return end;
+      }
+      end += ENTRY_HEADER + length;
+      ByteBuffer entry = ByteBuffer.wrap(body, 0, length);
+      long sequence = entry.getLong();
+      byte type = entry.get();
+      int slot = entry.getInt();
+      long time = entry.getLong();
+      int argument = entry.getInt();
+      String name = null;
+      if (entry.remaining() >= 4) {
+        int nameLength = entry.getInt();
+        name = new String(body, entry.position(), nameLength, StandardCharsets.UTF_8);
+      }
+      if (!entries.started) {
+        entries.started = true;
+        entries.base = type == ROLL ? sequence : 0;
+      }
+      entries.lastSequence = sequence;
+      entries.lastTime = Math.max(entries.lastTime, time);
+      if (sequence > after && type != ROLL) {
+        entries.add(type, slot, time, argument, name);
+      }
+    }
+  }
+
+  /**
+   * The entries read from a journal, kept column by column.
+   */
+  static final class Entries {
+    int count;
+    byte[] types = new byte[16];
+    int[] slots = new int[16];
+    long[] times = new long[16];
+    int[] arguments = new int[16];
+    String[] names = new String[16];
+    long lastSequence; // of every complete entry, including the ones that were skipped
+    long lastTime;
+    boolean started; // whether any entry has been read
+    long base; // the sequence the first entry read follows, when it starts a segment
+
+    /**
+     * Adds an entry.
+     *
+     * @param type      the type of the entry.
+     * @param slot      the slot of the pet.
+     * @param time      the elapsed time of the population's timer, in seconds.
+     * @param argument  the need or life stage of the entry.
+     * @param name      the name of the pet, or null.
+     */
+    void add(byte type, int slot, long time, int argument, String name) {
+      if (this.count == this.types.length) {
+        int size = this.count * 2;
+        this.types = Arrays.copyOf(this.types, size);
+        this.slots = Arrays.copyOf(this.slots, size);
+        this.times = Arrays.copyOf(this.times, size);
+        this.arguments = Arrays.copyOf(this.arguments, size);
+        this.names = Arrays.copyOf(this.names, size);
+      }
+      this.types[this.count] = type;
+      this.slots[this.count] = slot;
+      this.times[this.count] = time;
+      this.arguments[this.count] = argument;
+      this.names[this.count] = name;
+      this.count++;
+    }
+  }
+}
@@ -21,7 +21,7 @@ public interface PetLifeStage {
    * @return the new need level.
    * @throws IllegalArgumentException if the current level is greater than 100.
    */
-  int increaseNeed(Need need, Integer currentLevel) throws IllegalArgumentException;
+  int increaseNeed(Need need, int currentLevel) throws IllegalArgumentException;
 
   /**
    * Decreases the pet's need level of the given need. Throws an exception if the current level
@@ -32,7 +32,78 @@ public interface PetLifeStage {
    * @return the new need level.
    * @throws IllegalArgumentException if the current level is less than 0.
    */
-  int decreaseNeed(Need need, Integer currentLevel) throws IllegalArgumentException;
+  int decreaseNeed(Need need, int currentLevel) throws IllegalArgumentException;
+
+  /**
+   * Increases the pet's need level of the need with the given ordinal. This is the same as
+   * increaseNeed(Need, int), without looking up the need, for callers that keep need levels in
+   * arrays indexed by ordinal.
+   *
+   * @param need  the ordinal of the need to increase.
+   * @param currentLevel  the current level of the need.
+   * @return the new need level.
+   * @throws IllegalArgumentException if the current level is greater than 100.
+   */
+  int increaseNeed(int need, int currentLevel) throws IllegalArgumentException;
+
+  /**
+   * Decreases the pet's need level of the need with the given ordinal. This is the same as
+   * decreaseNeed(Need, int), without looking up the need, for callers that keep need levels in
+   * arrays indexed by ordinal.
+   *
+   * @param need  the ordinal of the need to decrease.
+   * @param currentLevel  the current level of the need.
+   * @return the new need level.
+   * @throws IllegalArgumentException if the current level is less than 0.
+   */
+  int decreaseNeed(int need, int currentLevel) throws IllegalArgumentException;
+
+  /**
+   * Decreases every one of the pet's need levels by this life stage's rate for that need, as
+   * happens once every interval. Unlike decreaseNeed, levels that are already 0 are left at 0.
+   *
+   * @param levels  the pet's need levels, indexed by each need's ordinal, updated in place.
+   * @throws IllegalArgumentException if the array does not have exactly one level for each need.
+   */
+  void decreaseNeeds(int[] levels) throws IllegalArgumentException;
+
+  /**
+   * Increases every one of the pet's need levels by this life stage's rate for that need, as if
+   * the pet were interacted with for each need at once. Unlike increaseNeed, levels that are
+   * already 100 are left at 100.
+   *
+   * @param levels  the pet's need levels, indexed by each need's ordinal, updated in place.
+   * @throws IllegalArgumentException if the array does not have exactly one level for each need.
+   */
+  void increaseNeeds(int[] levels) throws IllegalArgumentException;
+
+  /**
+   * Decreases the need levels of a range of pets by this life stage's rates, for populations that
+   * keep each need's levels in a column indexed by pet. Levels that are already 0 are left at 0.
+   *
+   * @param levels  the need levels of every pet, indexed by need ordinal and then by pet.
+   * @param from    the first pet to decrease the needs of.
+   * @param to      one past the last pet to decrease the needs of.
+   * @throws IllegalArgumentException if there is not one column for each need, or the range of
+   *                                  pets is not within every column.
+   */
+  void decreaseNeeds(byte[][] levels, int from, int to) throws IllegalArgumentException;
+
+  /**
+   * Gets the amount the given need increases by when the pet is interacted with.
+   *
+   * @param need  the need to get the rate of.
+   * @return the amount the need increases by.
+   */
+  int getIncreaseRate(Need need);
+
+  /**
+   * Gets the amount the given need decreases by every interval.
+   *
+   * @param need  the need to get the rate of.
+   * @return the amount the need decreases by.
+   */
+  int getDecreaseRate(Need need);
 
   /**
    * Gets the interval at which the pet's needs are decreasing.
@@ -0,0 +1,1080 @@
+package virtualpet;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TimerTask;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class represents a population of virtual pets that are simulated together. Instead of every
+ * pet being its own object with its own need levels and its own timer task, the state of all the
+ * pets is stored column by column in primitive arrays with one entry per pet, and a single timer
+ * task decreases the needs of the whole population every interval in one pass over the arrays.
+ * Each pet is identified by its slot in the population, and get() provides a VirtualPet for a slot
+ * so code written for single pets can use pets in a population. Pets in a population follow the
+ * same rules for mood, health, and growth as VirtualPetImpl, and switch to new rules loaded by
+ * LifeStageConfig at their next tick. Large populations are ticked in parallel, split into chunks
+ * of pets that are updated on a ForkJoinPool.
+ */
+public class PetPopulation {
+  private static final Need[] NEEDS = Need.values();
+  private static final Mood[] MOODS = Mood.values();
+  private static final Health[] HEALTH_STATES = Health.values();
+  private static final byte DEAD = (byte) Health.DEAD.ordinal();
+
+  // flags kept for each pet; PAUSED is also saved in population files
+  static final byte PAUSED = 1;
+  private static final byte OBSERVED = 2;
+
+  /**
+   * The number of pets updated by a single task when ticking in parallel.
+   */
+  static final int TICK_CHUNK = 1 << 16;
+
+  // events that can happen to a pet when it is updated
+  private static final int CHANGED = 1;
+  private static final int GREW = 2;
+  private static final int DIED = 4;
+
+  private final GameTimer timer;
+  private final byte[][] needLevels; // [need ordinal][slot]
+  private final byte[] lifeStages; // index of the life stage in the rules
+  private final byte[] moods; // Mood ordinal
+  private final byte[] healthStates; // Health ordinal
+  private final byte[] healths;
+  private final byte[] flags;
+  private final int[] births; // elapsed time of the timer when the pet was added, in seconds
+  private final String[] names;
+  private final long[] dirty; // a bit for every pet that changed since the last checkpoint
+  private PetRules rules; // replaced by the current rules at the next tick or interaction
+  private PetJournal journal; // null when the population is not journaled
+  private final Map<Integer, Observers> observers;
+  private final ForkJoinPool pool; // null when ticking on a single thread
+  private int size;
+  private long lastTickDuration;
+  private long overruns;
+
+  /**
+   * Creates a new, empty population of pets that is ticked using every available processor.
+   *
+   * @param capacity  the maximum number of pets in the population.
+   * @param timer     the timer used to keep track of time and schedule the decrease of needs.
+   * @throws IllegalArgumentException if the capacity is less than 1 or the timer is null.
+   */
+  public PetPopulation(int capacity, GameTimer timer) throws IllegalArgumentException {
+    this(capacity, timer, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Creates a new, empty population of pets that is ticked by the given number of threads.
+   *
+   * @param capacity     the maximum number of pets in the population.
+   * @param timer        the timer used to keep track of time and schedule the decrease of needs.
+   * @param parallelism  the number of threads used to tick the population, 1 to tick on the
+   *                     timer's thread only.
+   * @throws IllegalArgumentException if the capacity or parallelism is less than 1 or the timer
+   *                                  is null.
+   */
+  public PetPopulation(int capacity, GameTimer timer, int parallelism)
+      throws IllegalArgumentException {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Capacity must be at least 1.");
+    }
+    if (timer == null) {
+      throw new IllegalArgumentException("Timer cannot be null.");
+    }
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Parallelism must be at least 1.");
+    }
+    this.timer = timer;
+    this.needLevels = new byte[NEEDS.length][capacity];
+    this.lifeStages = new byte[capacity];
+    this.moods = new byte[capacity];
+    this.healthStates = new byte[capacity];
+    this.healths = new byte[capacity];
+    this.flags = new byte[capacity];
+    this.births = new int[capacity];
+    this.names = new String[capacity];
+    this.dirty = new long[(capacity + Long.SIZE - 1) / Long.SIZE];
+    this.rules = LifeStageConfig.current();
+    this.observers = new HashMap<>();
+    this.pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+    this.size = 0;
+    this.lastTickDuration = 0;
+    this.overruns = 0;
+  }
+
+  /**
+   * Adds a new pet to the population. The pet starts as a happy, healthy child with all of its
+   * needs full.
+   *
+   * @param name  the name of the pet.
+   * @return the slot of the new pet.
+   * @throws IllegalArgumentException if the name is null.
+   * @throws IllegalStateException if the population is full.
+   */
+  public synchronized int add(String name) throws IllegalArgumentException, IllegalStateException {
+    if (name == null) {
+      throw new IllegalArgumentException("Name cannot be null.");
+    }
+    if (this.size == this.names.length) {
+      throw new IllegalStateException("Population is full.");
+    }
+    int slot = this.size++;
+    long now = this.timer.getElapsedTime();
+    initialize(slot, name, now);
+    journal(PetJournal.NAME, slot, now, 0, name);
+    return slot;
+  }
+
+  /**
+   * Starts writing the population's events to a journal, so that the population can be recovered
+   * after a restart. From then on, interact() returns only once its entry is on the disk. Ticks
+   * and the other events do not wait, as they are written with the next batch anyway.
+   *
+   * @param journal  the journal to write to, or null to stop journaling.
+   */
+  public synchronized void setJournal(PetJournal journal) {
+    this.journal = journal;
+  }
+
+  /**
+   * Adds a pet that was saved to a population file, with the state it was saved with. The pet's
+   * health is worked out again from its need levels, and its life stage is kept within the
+   * current rules.
+   *
+   * @param name        the name of the pet.
+   * @param needLevels  the pet's need levels, indexed by need ordinal.
+   * @param mood        the ordinal of the pet's mood.
+   * @param health      the ordinal of the pet's health state.
+   * @param stage       the index of the pet's life stage.
+   * @param flags       the pet's saved flags.
+   * @param birth       the elapsed time of the timer when the pet was born, in seconds.
+   * @throws IllegalArgumentException if a level or ordinal is out of range.
+   * @throws IllegalStateException if the population is full.
+   */
+  synchronized void restore(String name, byte[] needLevels, byte mood, byte health, byte stage,
+      byte flags, long birth) throws IllegalArgumentException, IllegalStateException {
+    if (mood < 0 || mood >= MOODS.length || health < 0 || health >= HEALTH_STATES.length
+        || stage < 0) {
+      throw new IllegalArgumentException("Invalid saved pet.");
+    }
+    int total = 0;
+    for (byte level : needLevels) {
+      if (level < 0 || level > 100) {
+        throw new IllegalArgumentException("Need level must be between 0 and 100.");
+      }
+      total += level;
+    }
+    int slot = add(name);
+    for (int need = 0; need < NEEDS.length; need++) {
+      this.needLevels[need][slot] = needLevels[need];
+    }
+    this.lifeStages[slot] = (byte) Math.min(stage, this.rules.lifeStageCount() - 1);
+    this.moods[slot] = mood;
+    this.healthStates[slot] = health;
+    this.healths[slot] = (byte) (health == DEAD ? 0 : total / NEEDS.length);
+    this.flags[slot] = (byte) (flags & PAUSED);
+    this.births[slot] = (int) birth;
+    // the pet is the same as in the file it was loaded from
+    this.dirty[slot / Long.SIZE] &= ~(1L << slot);
+  }
+
+  /**
+   * Copies the pets that changed since the last checkpoint into a batch, and marks every pet as
+   * unchanged.
+   *
+   * @param batch  the batch to copy the pets into.
+   * @param all    whether to copy every pet, whether it changed or not.
+   */
+  synchronized void captureDirty(PopulationCheckpointer.Batch batch, boolean all) {
+    batch.begin(this.names.length, this.size, this.timer.getElapsedTime(), journalSequence(),
+        this.journal);
+    if (all) {
+      markDirty(0, this.size);
+    }
+    for (int word = 0; word < this.dirty.length; word++) {
+      long bits = this.dirty[word];
+      this.dirty[word] = 0;
+      while (bits != 0) {
+        int slot = word * Long.SIZE + Long.numberOfTrailingZeros(bits);
+        bits &= bits - 1;
+        batch.add(slot, this.names[slot], this.needLevels, this.moods[slot],
+            this.healthStates[slot], this.lifeStages[slot], (byte) (this.flags[slot] & PAUSED),
+            this.births[slot]);
+      }
+    }
+  }
+
+  /**
+   * Marks the pets of a batch that could not be written as changed again, so that a later
+   * checkpoint writes them.
+   *
+   * @param batch  the batch that was not written.
+   */
+  synchronized void markDirty(PopulationCheckpointer.Batch batch) {
+    for (int index = 0; index < batch.count; index++) {
+      markDirty(batch.slots[index], batch.slots[index] + 1);
+    }
+  }
+
+  /**
+   * Gets the sequence number of the last entry in the population's journal.
+   *
+   * @return the last sequence number, or 0 if the population has no journal.
+   */
+  private long journalSequence() {
+    return this.journal == null ? 0 : this.journal.getLastSequence();
+  }
+
+  /**
+   * Marks a range of pets as changed since the last checkpoint. Ranges that are ticked in
+   * parallel start at a multiple of 64, so they never share a word of the bitset.
+   *
+   * @param from  the first slot of the range.
+   * @param to    the slot after the last slot of the range.
+   */
+  private void markDirty(int from, int to) {
+    if (from >= to) {
+      return;
+    }
+    int first = from / Long.SIZE;
+    int last = (to - 1) / Long.SIZE;
+    long firstMask = -1L << from; // shifts are taken modulo 64
+    long lastMask = -1L >>> -to;
+    if (first == last) {
+      this.dirty[first] |= firstMask & lastMask;
+      return;
+    }
+    this.dirty[first] |= firstMask;
+    for (int word = first + 1; word < last; word++) {
+      this.dirty[word] = -1L;
+    }
+    this.dirty[last] |= lastMask;
+  }
+
+  /**
+   * Gets the number of pets in the population.
+   *
+   * @return the number of pets in the population.
+   */
+  public synchronized int size() {
+    return this.size;
+  }
+
+  /**
+   * Gets the maximum number of pets in the population.
+   *
+   * @return the maximum number of pets in the population.
+   */
+  public int getCapacity() {
+    return this.names.length;
+  }
+
+  /**
+   * Gets a VirtualPet for the pet in the given slot. The VirtualPet reads and changes the pet's
+   * state in the population.
+   *
+   * @param slot  the slot of the pet.
+   * @return the pet in the given slot.
+   * @throws IllegalArgumentException if there is no pet in the slot.
+   */
+  public VirtualPet get(int slot) throws IllegalArgumentException {
+    checkSlot(slot);
+    return new SlotPet(slot);
+  }
+
+  /**
+   * Gets how long the last tick of the population took.
+   *
+   * @return the duration of the last tick, in nanoseconds.
+   */
+  public synchronized long getLastTickDuration() {
+    return this.lastTickDuration;
+  }
+
+  /**
+   * Gets the number of ticks that took longer than PetLifeStage.INTERVAL. Ticks never overlap,
+   * so a tick that overruns delays the next one rather than running alongside it.
+   *
+   * @return the number of ticks that took longer than the interval.
+   */
+  public synchronized long getOverruns() {
+    return this.overruns;
+  }
+
+  /**
+   * Schedules the needs of every pet in the population to decrease over time. Each tick finishes
+   * before the timer schedules the next one.
+   */
+  public void start() {
+    this.timer.scheduleTask(new TimerTask() {
+      @Override
+      public void run() {
+        tick();
+      }
+    }, PetLifeStage.INTERVAL);
+  }
+
+  /**
+   * Stops decreasing the needs of the pets in the population.
+   */
+  public void stop() {
+    this.timer.stop();
+  }
+
+  /**
+   * Decreases the needs of every living pet in the population that is not paused by the rates of
+   * its life stage, and then updates its mood, health, and life stage. If the population was
+   * created with more than one thread, the pets are split into chunks that are updated in
+   * parallel, and this method returns once every chunk is done.
+   */
+  public void tick() {
+    Queue<long[]> events = new ConcurrentLinkedQueue<>();
+    synchronized (this) {
+      long start = System.nanoTime();
+      long now = this.timer.getElapsedTime();
+      refreshRules();
+      journal(PetJournal.TICK, -1, now, 0, null);
+      if (this.pool == null || this.size <= TICK_CHUNK) {
+        tickRange(0, this.size, now, events);
+      } else {
+        this.pool.invoke(new TickTask(0, this.size, now, events));
+      }
+      this.lastTickDuration = System.nanoTime() - start;
+      if (this.lastTickDuration > TimeUnit.MILLISECONDS.toNanos(PetLifeStage.INTERVAL)) {
+        this.overruns++;
+      }
+    }
+    for (long[] event : events) {
+      notifyObservers((int) event[0], (int) event[1]);
+    }
+  }
+
+  /**
+   * Interacts with the pet in the given slot, increasing the level of the given need by the rate
+   * of the pet's life stage and then updating its mood, health, and life stage.
+   *
+   * @param slot  the slot of the pet.
+   * @param need  the need corresponding with the desired interaction.
+   * @throws IllegalArgumentException if there is no pet in the slot, or the need is invalid or
+   *                                  already full.
+   * @throws IllegalStateException if the pet is dead.
+   */
+  public void interact(int slot, Need need) throws IllegalArgumentException,
+      IllegalStateException {
+    int happened;
+    long sequence;
+    PetJournal journaled;
+    synchronized (this) {
+      checkSlot(slot);
+      refreshRules();
+      long now = this.timer.getElapsedTime();
+      InteractionResult result = apply(slot, need, now);
+      if (result == InteractionResult.PET_DEAD) {
+        throw new IllegalStateException("The pet is dead.");
+      } else if (result == InteractionResult.INVALID_NEED) {
+        throw new IllegalArgumentException("Invalid need.");
+      } else if (result == InteractionResult.NEED_FULL) {
+        throw new IllegalArgumentException("Need level is already full.");
+      }
+      sequence = journalSequence();
+      journaled = this.journal;
+      happened = recompute(slot, now);
+      markDirty(slot, slot + 1);
+    }
+    if (journaled != null) {
+      journaled.await(sequence);
+    }
+    notifyObservers(slot, happened);
+  }
+
+  /**
+   * Interacts with the pet in the given slot several times at once, applying the needs in order
+   * and then updating its mood, health, and life stage and notifying the observers only once. An
+   * interaction that is not possible is skipped, and its result says why.
+   *
+   * @param slot   the slot of the pet.
+   * @param needs  the needs corresponding with the desired interactions.
+   * @return the result of each interaction, in the same order as the needs.
+   * @throws IllegalArgumentException if there is no pet in the slot, or the array of needs is
+   *                                  null.
+   */
+  public InteractionResult[] interactAll(int slot, Need... needs)
+      throws IllegalArgumentException {
+    if (needs == null) {
+      throw new IllegalArgumentException("Needs cannot be null.");
+    }
+    InteractionResult[] results = new InteractionResult[needs.length];
+    int happened;
+    long sequence;
+    PetJournal journaled;
+    synchronized (this) {
+      checkSlot(slot);
+      refreshRules();
+      long now = this.timer.getElapsedTime();
+      for (int i = 0; i < needs.length; i++) {
+        results[i] = apply(slot, needs[i], now);
+      }
+      sequence = journalSequence();
+      journaled = this.journal;
+      happened = recompute(slot, now);
+      markDirty(slot, slot + 1);
+    }
+    if (journaled != null) {
+      journaled.await(sequence);
+    }
+    notifyObservers(slot, happened);
+    return results;
+  }
+
+  /**
+   * Updates the mood, health, and life stage of the pet in the given slot.
+   *
+   * @param slot  the slot of the pet.
+   * @throws IllegalArgumentException if there is no pet in the slot.
+   */
+  public void update(int slot) throws IllegalArgumentException {
+    int happened;
+    synchronized (this) {
+      checkSlot(slot);
+      refreshRules();
+      happened = recompute(slot, this.timer.getElapsedTime());
+      markDirty(slot, slot + 1);
+    }
+    notifyObservers(slot, happened);
+  }
+
+  /**
+   * Gets the name of the pet in the given slot.
+   *
+   * @param slot  the slot of the pet.
+   * @return the name of the pet.
+   * @throws IllegalArgumentException if there is no pet in the slot.
+   */
+  public synchronized String getName(int slot) throws IllegalArgumentException {
+    checkSlot(slot);
+    return this.names[slot];
+  }
+
+  /**
+   * Gets the age of the pet in the given slot, where a minute correlates to a "year".
+   *
+   * @param slot  the slot of the pet.
+   * @return the age of the pet.
+   * @throws IllegalArgumentException if there is no pet in the slot.
+   */
+  public synchronized long getAge(int slot) throws IllegalArgumentException {
+    checkSlot(slot);
+    return (this.timer.getElapsedTime() - this.births[slot]) / 60;
+  }
+
+  /**
+   * Gets a snapshot of the state of the pet in the given slot, taken under the population's lock
+   * so that all of its values are consistent with each other.
+   *
+   * @param slot  the slot of the pet.
+   * @return a snapshot of the pet's state.
+   * @throws IllegalArgumentException if there is no pet in the slot.
+   */
+  public synchronized PetSnapshot getSnapshot(int slot) throws IllegalArgumentException {
+    checkSlot(slot);
+    int[] levels = new int[NEEDS.length];
+    for (int need = 0; need < NEEDS.length; need++) {
+      levels[need] = this.needLevels[need][slot];
+    }
+    return new PetSnapshot(this.names[slot], MOODS[this.moods[slot]],
+        HEALTH_STATES[this.healthStates[slot]], this.healths[slot],
+        this.rules.lifeStage(this.lifeStages[slot]), levels);
+  }
+
+  /**
+   * Gets the mood of the pet in the given slot.
+   *
+   * @param slot  the slot of the pet.
+   * @return the mood of the pet.
+   * @throws IllegalArgumentException if there is no pet in the slot.
+   */
+  public synchronized Mood getMoodState(int slot) throws IllegalArgumentException {
+    checkSlot(slot);
+    return MOODS[this.moods[slot]];
+  }
+
+  /**
+   * Gets the health state of the pet in the given slot.
+   *
+   * @param slot  the slot of the pet.
+   * @return the health state of the pet.
+   * @throws IllegalArgumentException if there is no pet in the slot.
+   */
+  public synchronized Health getHealthState(int slot) throws IllegalArgumentException {
+    checkSlot(slot);
+    return HEALTH_STATES[this.healthStates[slot]];
+  }
+
+  /**
+   * Gets the health level of the pet in the given slot.
+   *
+   * @param slot  the slot of the pet.
+   * @return the health level of the pet.
+   * @throws IllegalArgumentException if there is no pet in the slot.
+   */
+  public synchronized int getHealth(int slot) throws IllegalArgumentException {
+    checkSlot(slot);
+    return this.healths[slot];
+  }
+
+  /**
+   * Gets the life stage of the pet in the given slot.
+   *
+   * @param slot  the slot of the pet.
+   * @return the life stage of the pet.
+   * @throws IllegalArgumentException if there is no pet in the slot.
+   */
+  public synchronized PetLifeStage getLifeStage(int slot) throws IllegalArgumentException {
+    checkSlot(slot);
+    return this.rules.lifeStage(this.lifeStages[slot]);
+  }
+
+  /**
+   * Gets the level of a need of the pet in the given slot.
+   *
+   * @param slot  the slot of the pet.
+   * @param need  the need to get the level of.
+   * @return the level of the need.
+   * @throws IllegalArgumentException if there is no pet in the slot or the need is null.
+   */
+  public synchronized int getNeedLevel(int slot, Need need) throws IllegalArgumentException {
+    checkSlot(slot);
+    if (need == null) {
+      throw new IllegalArgumentException("Invalid need.");
+    }
+    return this.needLevels[need.ordinal()][slot];
+  }
+
+  /**
+   * Ticks the pets in a range of slots. Ranges that do not overlap can be ticked at the same time.
+   * Runs of neighbouring pets in the same life stage have their needs decreased together by one
+   * call to the life stage, before each of them is updated.
+   *
+   * @param from    the first slot to tick.
+   * @param to      the slot after the last slot to tick.
+   * @param now     the elapsed time of the timer, in seconds.
+   * @param events  the queue to add the events of observed pets to.
+   */
+  private void tickRange(int from, int to, long now, Queue<long[]> events) {
+    int slot = from;
+    while (slot < to) {
+      if (!isTicking(slot)) {
+        slot++;
+        continue;
+      }
+      int stage = this.lifeStages[slot];
+      int end = slot + 1;
+      while (end < to && this.lifeStages[end] == stage && isTicking(end)) {
+        end++;
+      }
+      this.rules.lifeStage(stage).decreaseNeeds(this.needLevels, slot, end);
+      markDirty(slot, end);
+      for (; slot < end; slot++) {
+        int happened = recompute(slot, now);
+        if ((this.flags[slot] & OBSERVED) != 0) {
+          events.add(new long[] {slot, happened});
+        }
+      }
+    }
+  }
+
+  /**
+   * Switches the population to the current rules if they were replaced since the last tick or
+   * interaction. Pets keep their life stage, or move to the last one if the new rules have fewer.
+   * Must be called while holding the population's lock.
+   */
+  private void refreshRules() {
+    PetRules current = LifeStageConfig.current();
+    if (current == this.rules) {
+      return;
+    }
+    this.rules = current;
+    byte last = (byte) (current.lifeStageCount() - 1);
+    for (int slot = 0; slot < this.size; slot++) {
+      if (this.lifeStages[slot] > last) {
+        this.lifeStages[slot] = last;
+      }
+    }
+  }
+
+  /**
+   * Checks whether the pet in a slot has its needs decreased when the population ticks.
+   *
+   * @param slot  the slot of the pet.
+   * @return true if the pet is alive and not paused, false otherwise.
+   */
+  private boolean isTicking(int slot) {
+    return this.healthStates[slot] != DEAD && (this.flags[slot] & PAUSED) == 0;
+  }
+
+
+  /**
+   * Recomputes the mood, health, and life stage of a pet from its need levels, using the same
+   * rules as VirtualPetImpl.
+   *
+   * @param slot  the slot of the pet.
+   * @param now   the elapsed time of the timer, in seconds.
+   * @return the events that happened to the pet.
+   */
+  private int recompute(int slot, long now) {
+    int sadNeeds = 0;
+    int total = 0;
+    boolean anyNeedEmpty = false;
+    Need lowestNeed = null;
+    int lowestLevel = this.rules.unhappyLevel();
+    for (int need = 0; need < NEEDS.length; need++) {
+      int level = this.needLevels[need][slot];
+      if (level < lowestLevel) {
+        lowestNeed = NEEDS[need];
+        lowestLevel = level;
+      }
+      if (level <= this.rules.sadLevel()) {
+        sadNeeds++;
+      }
+      anyNeedEmpty |= level == 0;
+      total += level;
+    }
+
+    boolean wasAlive = this.healthStates[slot] != DEAD;
+    Mood mood = PetRules.moodOf(lowestNeed, sadNeeds);
+    Health health = this.rules.healthOf(total / NEEDS.length, anyNeedEmpty);
+    this.moods[slot] = (byte) mood.ordinal();
+    this.healthStates[slot] = (byte) health.ordinal();
+    this.healths[slot] = (byte) (health == Health.DEAD ? 0 : total / NEEDS.length);
+
+    int happened = CHANGED;
+    int stage = this.lifeStages[slot];
+    if (health == Health.DEAD) {
+      if (wasAlive) {
+        happened |= DIED;
+        journal(PetJournal.DEATH, slot, now, 0, null);
+      }
+    } else if (this.rules.canGrow(stage, (now - this.births[slot]) / 60, mood, health)) {
+      this.lifeStages[slot]++;
+      happened |= GREW;
+      journal(PetJournal.STAGE, slot, now, stage + 1, null);
+    }
+    return happened;
+  }
+
+  /**
+   * Puts a new pet in a slot: a happy, healthy child with all of its needs full.
+   *
+   * @param slot   the slot of the pet.
+   * @param name   the name of the pet.
+   * @param birth  the elapsed time of the timer when the pet was born, in seconds.
+   */
+  private void initialize(int slot, String name, long birth) {
+    for (byte[] column : this.needLevels) {
+      column[slot] = 100;
+    }
+    this.lifeStages[slot] = 0;
+    this.moods[slot] = (byte) Mood.HAPPY.ordinal();
+    this.healthStates[slot] = (byte) Health.HEALTHY.ordinal();
+    this.healths[slot] = 100;
+    this.flags[slot] = 0;
+    this.births[slot] = (int) birth;
+    this.names[slot] = name;
+    markDirty(slot, slot + 1);
+  }
+
+  /**
+   * Increases the level of a need of the pet in the given slot by the rate of its life stage, if
+   * the pet is alive and the need is not full, and journals the interaction. The pet's mood,
+   * health, and life stage are not updated. Must be called while holding the population's lock.
+   *
+   * @param slot  the slot of the pet.
+   * @param need  the need corresponding with the desired interaction.
+   * @param now   the elapsed time of the timer, in seconds.
+   * @return whether the need was increased, or why not.
+   */
+  private InteractionResult apply(int slot, Need need, long now) {
+    if (this.healthStates[slot] == DEAD) {
+      return InteractionResult.PET_DEAD;
+    } else if (need == null) {
+      return InteractionResult.INVALID_NEED;
+    }
+    byte[] column = this.needLevels[need.ordinal()];
+    if (column[slot] == 100) {
+      return InteractionResult.NEED_FULL;
+    }
+    journal(PetJournal.INTERACT, slot, now, need.ordinal(), null);
+    column[slot] = (byte) this.rules.lifeStage(this.lifeStages[slot])
+        .increaseNeed(need.ordinal(), column[slot]);
+    return InteractionResult.APPLIED;
+  }
+
+  /**
+   * Appends an entry to the population's journal, if it has one. Must be called while holding
+   * the population's lock.
+   *
+   * @param type      the type of the entry.
+   * @param slot      the slot of the pet, or -1 for a tick.
+   * @param time      the elapsed time of the timer, in seconds.
+   * @param argument  the need or life stage of the entry, or 0.
+   * @param name      the name of the pet for a NAME entry, or null.
+   * @return the sequence number of the entry, or 0 if the population has no journal.
+   */
+  private long journal(byte type, int slot, long time, int argument, String name) {
+    return this.journal == null ? 0 : this.journal.append(type, slot, time, argument, name);
+  }
+
+  /**
+   * Replays the entries of a journal over the population. The slots are split into one partition
+   * for every thread, and the partitions are replayed in parallel: each one goes through every
+   * entry, ticking its own pets and applying only the entries for its own pets.
+   *
+   * @param entries  the entries to replay, in the order they were written.
+   * @param shift    the time to add to the time of every entry, in seconds.
+   * @throws IllegalArgumentException if an entry is for a slot outside the population.
+   * @throws IllegalStateException if a partition could not be replayed.
+   */
+  synchronized void replay(PetJournal.Entries entries, long shift)
+      throws IllegalArgumentException, IllegalStateException {
+    refreshRules();
+    int end = this.size;
+    for (int i = 0; i < entries.count; i++) {
+      int slot = entries.slots[i];
+      if (entries.types[i] == PetJournal.TICK) {
+        continue;
+      } else if (slot < 0 || slot >= this.names.length) {
+        throw new IllegalArgumentException("Journal has a pet outside the population.");
+      } else if (entries.types[i] == PetJournal.NAME) {
+        end = Math.max(end, slot + 1);
+      }
+    }
+    int count = end;
+    int partitions = this.pool == null ? 1 : this.pool.getParallelism();
+    // partitions start at a multiple of 64 so that they never share a word of the dirty bitset
+    int chunk = (count / partitions + Long.SIZE) & -Long.SIZE;
+    if (partitions == 1 || count <= chunk) {
+      replayRange(entries, shift, 0, count);
+    } else {
+      List<Callable<Void>> tasks = new ArrayList<>();
+      for (int from = 0; from < count; from += chunk) {
+        int start = from;
+        tasks.add(() -> {
+          replayRange(entries, shift, start, Math.min(start + chunk, count));
+          return null;
+        });
+      }
+      for (Future<Void> result : this.pool.invokeAll(tasks)) {
+        try {
+          result.get();
+        } catch (InterruptedException | ExecutionException e) {
+          throw new IllegalStateException("Could not replay the journal.", e);
+        }
+      }
+    }
+    this.size = count;
+  }
+
+  /**
+   * Replays the entries of a journal for a range of slots.
+   *
+   * @param entries  the entries to replay.
+   * @param shift    the time to add to the time of every entry, in seconds.
+   * @param from     the first slot of the range.
+   * @param to       the slot after the last slot of the range.
+   */
+  private void replayRange(PetJournal.Entries entries, long shift, int from, int to) {
+    int limit = Math.max(from, Math.min(this.size, to)); // the slots before it hold pets
+    Queue<long[]> events = new ArrayDeque<>(); // nobody observes a population being replayed
+    for (int i = 0; i < entries.count; i++) {
+      byte type = entries.types[i];
+      long time = entries.times[i] + shift;
+      int slot = entries.slots[i];
+      if (type == PetJournal.TICK) {
+        tickRange(from, limit, time, events);
+        continue;
+      } else if (slot < from || slot >= to || (slot >= limit && type != PetJournal.NAME)) {
+        continue;
+      }
+      switch (type) {
+        case PetJournal.NAME:
+          if (slot >= limit) {
+            initialize(slot, entries.names[i], time);
+            limit = slot + 1;
+          } else {
+            this.names[slot] = entries.names[i];
+            markDirty(slot, slot + 1);
+          }
+          break;
+        case PetJournal.INTERACT:
+          byte[] column = this.needLevels[entries.arguments[i]];
+          if (this.healthStates[slot] != DEAD && column[slot] < 100) {
+            column[slot] = (byte) this.rules.lifeStage(this.lifeStages[slot])
+                .increaseNeed(entries.arguments[i], column[slot]);
+            recompute(slot, time);
+            markDirty(slot, slot + 1);
+          }
+          break;
+        case PetJournal.PAUSE:
+          this.flags[slot] ^= PAUSED;
+          markDirty(slot, slot + 1);
+          break;
+        case PetJournal.STAGE:
+          this.lifeStages[slot] =
+              (byte) Math.min(entries.arguments[i], this.rules.lifeStageCount() - 1);
+          markDirty(slot, slot + 1);
+          break;
+        case PetJournal.DEATH:
+          this.healthStates[slot] = DEAD;
+          this.healths[slot] = 0;
+          markDirty(slot, slot + 1);
+          break;
+        default:
+          throw new IllegalArgumentException("Invalid journal entry.");
+      }
+    }
+  }
+
+  /**
+   * Notifies the listeners of a pet of the events that happened to it. Must not be called while
+   * holding the population's lock.
+   *
+   * @param slot      the slot of the pet.
+   * @param happened  the events that happened to the pet.
+   */
+  private void notifyObservers(int slot, int happened) {
+    Observers watching;
+    synchronized (this) {
+      watching = this.observers.get(slot);
+    }
+    if (watching == null) {
+      return;
+    }
+    for (VirtualPetListener listener : watching.listeners) {
+      listener.stateChanged(watching.pet);
+      if ((happened & GREW) != 0) {
+        listener.lifeStageChanged(watching.pet, watching.pet.getLifeStage());
+      }
+      if ((happened & DIED) != 0) {
+        listener.died(watching.pet);
+      }
+    }
+  }
+
+  /**
+   * Checks that there is a pet in the given slot.
+   *
+   * @param slot  the slot to check.
+   * @throws IllegalArgumentException if there is no pet in the slot.
+   */
+  private synchronized void checkSlot(int slot) throws IllegalArgumentException {
+    if (slot < 0 || slot >= this.size) {
+      throw new IllegalArgumentException("No pet in slot " + slot + ".");
+    }
+  }
+
+  /**
+   * A task that ticks a range of slots, splitting it in half until each half is no larger than
+   * a chunk.
+   */
+  private class TickTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final int from;
+    private final int to;
+    private final long now;
+    private final Queue<long[]> events;
+
+    TickTask(int from, int to, long now, Queue<long[]> events) {
+      this.from = from;
+      this.to = to;
+      this.now = now;
+      this.events = events;
+    }
+
+    @Override
+    protected void compute() {
+      if (this.to - this.from <= TICK_CHUNK) {
+        tickRange(this.from, this.to, this.now, this.events);
+      } else {
+        // split at a multiple of 64, so the halves never share a word of the dirty bitset
+        int middle = ((this.from + this.to) >>> 1) & -Long.SIZE;
+        invokeAll(new TickTask(this.from, middle, this.now, this.events),
+            new TickTask(middle, this.to, this.now, this.events));
+      }
+    }
+  }
+
+  /**
+   * The listeners registered for a single pet.
+   */
+  private static class Observers {
+    private final VirtualPet pet;
+    private final List<VirtualPetListener> listeners;
+
+    Observers(VirtualPet pet) {
+      this.pet = pet;
+      this.listeners = new CopyOnWriteArrayList<>();
+    }
+  }
+
+  /**
+   * A VirtualPet backed by a slot in the population.
+   */
+  private class SlotPet implements VirtualPet {
+    private final int slot;
+
+    SlotPet(int slot) {
+      this.slot = slot;
+    }
+
+    @Override
+    public void setName(String name) {
+      synchronized (PetPopulation.this) {
+        names[this.slot] = name;
+        markDirty(this.slot, this.slot + 1);
+        journal(PetJournal.NAME, this.slot, timer.getElapsedTime(), 0, name);
+      }
+    }
+
+    @Override
+    public String getName() {
+      return PetPopulation.this.getName(this.slot);
+    }
+
+    @Override
+    public long getAge() {
+      return PetPopulation.this.getAge(this.slot);
+    }
+
+    @Override
+    public Mood getMoodState() {
+      return PetPopulation.this.getMoodState(this.slot);
+    }
+
+    @Override
+    public Health getHealthState() {
+      return PetPopulation.this.getHealthState(this.slot);
+    }
+
+    @Override
+    public int getHealth() {
+      return PetPopulation.this.getHealth(this.slot);
+    }
+
+    @Override
+    public PetLifeStage getLifeStage() {
+      return PetPopulation.this.getLifeStage(this.slot);
+    }
+
+    @Override
+    public HashMap<Need, Integer> getNeedLevels() {
+      HashMap<Need, Integer> levels = new HashMap<>();
+      synchronized (PetPopulation.this) {
+        for (Need need : NEEDS) {
+          levels.put(need, (int) needLevels[need.ordinal()][this.slot]);
+        }
+      }
+      return levels;
+    }
+
+    @Override
+    public void copyNeedLevels(int[] levels) throws IllegalArgumentException {
+      if (levels == null || levels.length < NEEDS.length) {
+        throw new IllegalArgumentException("Array must hold a level for every need.");
+      }
+      synchronized (PetPopulation.this) {
+        for (int need = 0; need < NEEDS.length; need++) {
+          levels[need] = needLevels[need][this.slot];
+        }
+      }
+    }
+
+    @Override
+    public PetSnapshot getSnapshot() {
+      return PetPopulation.this.getSnapshot(this.slot);
+    }
+
+    @Override
+    public void interact(Need need) throws IllegalStateException, IllegalArgumentException {
+      PetPopulation.this.interact(this.slot, need);
+    }
+
+    @Override
+    public InteractionResult[] interactAll(Need... needs) throws IllegalArgumentException {
+      return PetPopulation.this.interactAll(this.slot, needs);
+    }
+
+    @Override
+    public void update() {
+      PetPopulation.this.update(this.slot);
+    }
+
+    @Override
+    public boolean isAlive() {
+      return getHealthState() != Health.DEAD;
+    }
+
+    @Override
+    public void pauseTimer() {
+      synchronized (PetPopulation.this) {
+        flags[this.slot] ^= PAUSED;
+        markDirty(this.slot, this.slot + 1);
+        journal(PetJournal.PAUSE, this.slot, timer.getElapsedTime(), 0, null);
+      }
+    }
+
+    @Override
+    public void addListener(VirtualPetListener listener) throws IllegalArgumentException {
+      if (listener == null) {
+        throw new IllegalArgumentException("Listener cannot be null.");
+      }
+      synchronized (PetPopulation.this) {
+        observers.computeIfAbsent(this.slot, slot -> new Observers(this)).listeners.add(listener);
+        flags[this.slot] |= OBSERVED;
+      }
+    }
+
+    @Override
+    public void removeListener(VirtualPetListener listener) {
+      synchronized (PetPopulation.this) {
+        Observers watching = observers.get(this.slot);
+        if (watching != null && watching.listeners.remove(listener)
+            && watching.listeners.isEmpty()) {
+          observers.remove(this.slot);
+          flags[this.slot] &= ~OBSERVED;
+        }
+      }
+    }
+
+    @Override
+    public String toString() {
+      int[] levels = new int[NEEDS.length];
+      StringBuilder needs = new StringBuilder();
+      synchronized (PetPopulation.this) {
+        copyNeedLevels(levels);
+        for (Need need : NEEDS) {
+          needs.append(need).append(": ").append(levels[need.ordinal()]).append("\n");
+        }
+        return "Name: " + getName() + "\n"
+            + "Age: " + getAge() + "\n"
+            + "Mood: " + getMoodState() + "\n"
+            + "Health: " + getHealthState() + "\n"
+            + "Life Stage: " + getLifeStage() + "\n"
+            + "Need Levels:\n" + needs;
+      }
+    }
+  }
+}
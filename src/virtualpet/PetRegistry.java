@@ -0,0 +1,316 @@
+package virtualpet;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class holds a set of pets identified by number, starting with the pets saved in a
+ * population file. Opening a registry only reads the file's header, so it takes the same time
+ * however many pets were saved. A saved pet is hydrated into a VirtualPetImpl the first time it is
+ * asked for, and at that moment it catches up on the decreases of the time since the registry was
+ * opened. As when a population file is loaded, the time between saving and opening does not
+ * count. Pets decay lazily or predictively, so a pet that is never asked for costs nothing.
+ *
+ * <p>The pets are split into shards by id. Each shard has its own scheduler, which runs the
+ * timers of its pets only, and its own map of live pets and count of hydrated pets, so pets in
+ * different shards share nothing but the counter that hands out new ids. Give each shard a
+ * scheduler with its own thread, such as a TimingWheelScheduler, to spread the pets' wakeups over
+ * that many cores.
+ */
+public class PetRegistry {
+  /**
+   * The number of pets whose changes each subscriber of the registry's changes can wait for.
+   */
+  public static final int CHANGE_BUFFER = 65536;
+
+  private final PopulationFile snapshot; // null if the registry started empty
+  private final int savedCount;
+  private final long savedAt;
+  private final DecayMode decayMode;
+  private final Shard[] shards; // the shard of a pet is its id modulo the number of shards
+  private final AtomicInteger nextId;
+  private final ConflatingPublisher<Integer, PetChange> changes;
+
+  /**
+   * Opens a registry of the pets saved in a population file.
+   *
+   * @param snapshot   the file the pets were saved to, or null to start with no pets.
+   * @param scheduler  the scheduler that creates the pets' timers.
+   * @param decayMode  how the pets' needs decrease over time, lazy or predictive.
+   * @throws IllegalArgumentException if the scheduler or decay mode is null, or the decay mode is
+   *                                  not lazy or predictive.
+   */
+  public PetRegistry(PopulationFile snapshot, GameScheduler scheduler, DecayMode decayMode)
+      throws IllegalArgumentException {
+    this(snapshot, new GameScheduler[] {scheduler}, decayMode);
+  }
+
+  /**
+   * Opens a registry of the pets saved in a population file, split into a shard for each
+   * scheduler.
+   *
+   * @param snapshot    the file the pets were saved to, or null to start with no pets.
+   * @param schedulers  the scheduler of each shard, which creates the timers of its pets.
+   * @param decayMode   how the pets' needs decrease over time, lazy or predictive.
+   * @throws IllegalArgumentException if the schedulers, any of them, or the decay mode is null,
+   *                                  there are no schedulers, or the decay mode is not lazy or
+   *                                  predictive.
+   */
+  public PetRegistry(PopulationFile snapshot, GameScheduler[] schedulers, DecayMode decayMode)
+      throws IllegalArgumentException {
+    if (schedulers == null || schedulers.length == 0) {
+      throw new IllegalArgumentException("There must be at least one scheduler.");
+    }
+    if (decayMode == null || decayMode == DecayMode.SCHEDULED) {
+      throw new IllegalArgumentException("Decay mode must be lazy or predictive.");
+    }
+    this.shards = new Shard[schedulers.length];
+    for (int i = 0; i < schedulers.length; i++) {
+      if (schedulers[i] == null) {
+        throw new IllegalArgumentException("Scheduler cannot be null.");
+      }
+      this.shards[i] = new Shard(schedulers[i]);
+    }
+    this.snapshot = snapshot;
+    this.savedCount = snapshot == null ? 0 : snapshot.size();
+    this.savedAt = snapshot == null ? 0 : snapshot.getSavedAt();
+    this.decayMode = decayMode;
+    this.nextId = new AtomicInteger(this.savedCount);
+    this.changes = new ConflatingPublisher<>(ForkJoinPool.commonPool(), CHANGE_BUFFER);
+  }
+
+  /**
+   * Gets a pet, hydrating it from the population file if this is the first time it is asked for.
+   *
+   * @param id  the id of the pet.
+   * @return the pet.
+   * @throws IllegalArgumentException if there is no pet with the id.
+   */
+  public VirtualPet get(int id) throws IllegalArgumentException {
+    if (id < 0) {
+      throw new IllegalArgumentException("No pet with id " + id + ".");
+    }
+    Shard shard = shard(id);
+    VirtualPet pet = shard.pets.get(id);
+    if (pet != null) {
+      return pet;
+    }
+    if (id >= this.savedCount) {
+      throw new IllegalArgumentException("No pet with id " + id + ".");
+    }
+    return shard.pets.computeIfAbsent(id, saved -> hydrate(shard, saved));
+  }
+
+  /**
+   * Interacts with many pets at once. The interactions are grouped by pet, keeping their order,
+   * so each pet applies all of its interactions and updates its mood, health, and life stage only
+   * once. An interaction that is not possible is skipped, and its result says why.
+   *
+   * @param ids    the id of the pet of each interaction.
+   * @param needs  the need of each interaction.
+   * @return the result of each interaction, in the same order as the ids and needs.
+   * @throws IllegalArgumentException if either array is null, or they have different lengths.
+   */
+  public InteractionResult[] interactAll(int[] ids, Need[] needs)
+      throws IllegalArgumentException {
+    if (ids == null || needs == null) {
+      throw new IllegalArgumentException("Ids and needs cannot be null.");
+    }
+    if (ids.length != needs.length) {
+      throw new IllegalArgumentException("There must be one need for each id.");
+    }
+    Map<Integer, List<Integer>> byPet = new LinkedHashMap<>();
+    for (int i = 0; i < ids.length; i++) {
+      byPet.computeIfAbsent(ids[i], id -> new ArrayList<>()).add(i);
+    }
+    InteractionResult[] results = new InteractionResult[ids.length];
+    for (Map.Entry<Integer, List<Integer>> entry : byPet.entrySet()) {
+      List<Integer> indices = entry.getValue();
+      VirtualPet pet;
+      try {
+        pet = get(entry.getKey());
+      } catch (IllegalArgumentException e) {
+        for (int index : indices) {
+          results[index] = InteractionResult.NO_SUCH_PET;
+        }
+        continue;
+      }
+      Need[] petNeeds = new Need[indices.size()];
+      for (int i = 0; i < petNeeds.length; i++) {
+        petNeeds[i] = needs[indices.get(i)];
+      }
+      InteractionResult[] petResults = pet.interactAll(petNeeds);
+      for (int i = 0; i < petResults.length; i++) {
+        results[indices.get(i)] = petResults[i];
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Adds a new pet to the registry.
+   *
+   * @param name  the name of the pet.
+   * @return the id of the new pet.
+   * @throws IllegalArgumentException if the name is null.
+   */
+  public int add(String name) throws IllegalArgumentException {
+    if (name == null) {
+      throw new IllegalArgumentException("Name cannot be null.");
+    }
+    int id = this.nextId.getAndIncrement();
+    Shard shard = shard(id);
+    VirtualPet pet = new VirtualPetImpl(name, shard.scheduler.newTimer(), this.decayMode);
+    pet.addListener(publishChanges(id));
+    shard.pets.put(id, pet);
+    return id;
+  }
+
+  /**
+   * Gets a publisher of the changes of every live pet in the registry. Each subscriber waits for
+   * at most the latest change of each pet, and for at most CHANGE_BUFFER pets, so a slow
+   * subscriber skips changes instead of slowing the pets down. A saved pet's changes are
+   * published once it has been hydrated. Changes are delivered on the common fork-join pool.
+   *
+   * @return the publisher of the pets' changes.
+   */
+  public Flow.Publisher<PetChange> getChanges() {
+    return this.changes;
+  }
+
+  /**
+   * Gets the number of pets in the registry, whether they have been hydrated or not.
+   *
+   * @return the number of pets.
+   */
+  public int size() {
+    return this.nextId.get();
+  }
+
+  /**
+   * Gets the number of saved pets that have been hydrated so far.
+   *
+   * @return the number of hydrated pets.
+   */
+  public int getHydratedCount() {
+    int hydrated = 0;
+    for (Shard shard : this.shards) {
+      hydrated += shard.hydrated.get();
+    }
+    return hydrated;
+  }
+
+  /**
+   * Gets the number of shards the pets are split into.
+   *
+   * @return the number of shards.
+   */
+  public int getShardCount() {
+    return this.shards.length;
+  }
+
+  /**
+   * Gets the shard of a pet.
+   *
+   * @param id  the id of the pet, which is not negative.
+   * @return the shard.
+   */
+  private Shard shard(int id) {
+    return this.shards[id % this.shards.length];
+  }
+
+  /**
+   * Hydrates a saved pet into a live one. The pet's timer starts at its age when it was saved
+   * plus the time since the registry was opened, so the pet catches up on that time when it is
+   * first read.
+   *
+   * @param shard  the shard of the pet.
+   * @param id     the id of the pet.
+   * @return the hydrated pet.
+   */
+  private VirtualPet hydrate(Shard shard, int id) {
+    PopulationFile.Record saved = this.snapshot.read(id);
+    long savedAge = this.savedAt - saved.birth;
+    GameTimer timer = new AgedTimer(shard.scheduler.newTimer(),
+        savedAge + shard.clock.getElapsedTime());
+    shard.hydrated.incrementAndGet();
+    VirtualPet pet = new VirtualPetImpl(saved, timer, savedAge, this.decayMode);
+    pet.addListener(publishChanges(id));
+    return pet;
+  }
+
+  /**
+   * Creates a listener that publishes a pet's changes to the subscribers of the registry's
+   * changes, if there are any.
+   *
+   * @param id  the id of the pet.
+   * @return the listener.
+   */
+  private VirtualPetListener publishChanges(int id) {
+    return pet -> {
+      if (this.changes.hasSubscribers()) {
+        this.changes.offer(id, new PetChange(id, pet.getSnapshot()));
+      }
+    };
+  }
+
+  /**
+   * The pets whose ids fall in one shard, with the scheduler that runs their timers.
+   */
+  private static final class Shard {
+    private final GameScheduler scheduler;
+    private final GameTimer clock; // keeps track of the time since the registry was opened
+    private final ConcurrentHashMap<Integer, VirtualPet> pets = new ConcurrentHashMap<>();
+    private final AtomicInteger hydrated = new AtomicInteger();
+
+    Shard(GameScheduler scheduler) {
+      this.scheduler = scheduler;
+      this.clock = scheduler.newTimer();
+    }
+  }
+
+  /**
+   * A timer whose elapsed time starts at a given age instead of at 0.
+   */
+  private static class AgedTimer implements GameTimer {
+    private final GameTimer timer;
+    private final long age;
+
+    AgedTimer(GameTimer timer, long age) {
+      this.timer = timer;
+      this.age = age;
+    }
+
+    @Override
+    public void scheduleTask(TimerTask task, long interval) {
+      this.timer.scheduleTask(task, interval);
+    }
+
+    @Override
+    public void scheduleOnce(TimerTask task, long delay) {
+      this.timer.scheduleOnce(task, delay);
+    }
+
+    @Override
+    public void cancel(TimerTask task) {
+      this.timer.cancel(task);
+    }
+
+    @Override
+    public void stop() {
+      this.timer.stop();
+    }
+
+    @Override
+    public long getElapsedTime() {
+      return this.age + this.timer.getElapsedTime();
+    }
+  }
+}
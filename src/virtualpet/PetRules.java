@@ -0,0 +1,173 @@
+package virtualpet;
+
+/**
+ * This class holds the rules that turn a pet's need levels into its mood and health states, and
+ * that decide when a pet grows into its next life stage. The rules are shared by every kind of
+ * virtual pet so they always behave the same way. A set of rules is immutable: the life stages,
+ * growth ages and thresholds are compiled into flat tables once, when the rules are loaded, and
+ * new rules replace the old ones as a whole through LifeStageConfig.
+ */
+final class PetRules {
+  /**
+   * The built-in rules, used when no configuration is loaded.
+   */
+  static final PetRules DEFAULT = new PetRules(
+      new PetLifeStage[] {Child.INSTANCE, Adult.INSTANCE, Senior.INSTANCE},
+      new long[] {2, 5, Long.MAX_VALUE}, 75, 25, 50);
+
+  private final PetLifeStage[] lifeStages; // in the order the pet grows through them
+  private final long[] growthAges; // in minutes, indexed by life stage
+  private final int unhappyLevel;
+  private final int sadLevel;
+  private final int sickHealth;
+
+  /**
+   * Creates a set of rules.
+   *
+   * @param lifeStages    the life stages of a pet, in the order the pet grows through them.
+   * @param growthAges    the age, in minutes, at which a pet can grow out of each life stage, or
+   *                      Long.MAX_VALUE if it never grows out of it. The last life stage is never
+   *                      grown out of.
+   * @param unhappyLevel  a need below this level changes the pet's mood.
+   * @param sadLevel      if more than one need is at or below this level, the pet is sad.
+   * @param sickHealth    a pet whose health is below this level is sick.
+   * @throws IllegalArgumentException if there are no life stages, there is not a growth age for
+   *                                  every life stage, or a level is not between 0 and 100.
+   */
+  PetRules(PetLifeStage[] lifeStages, long[] growthAges, int unhappyLevel, int sadLevel,
+      int sickHealth) throws IllegalArgumentException {
+    if (lifeStages.length == 0 || lifeStages.length > Byte.MAX_VALUE) {
+      throw new IllegalArgumentException("There must be between 1 and 127 life stages.");
+    }
+    if (growthAges.length != lifeStages.length) {
+      throw new IllegalArgumentException("There must be a growth age for every life stage.");
+    }
+    for (int level : new int[] {unhappyLevel, sadLevel, sickHealth}) {
+      if (level < 0 || level > 100) {
+        throw new IllegalArgumentException("Levels must be between 0 and 100.");
+      }
+    }
+    this.lifeStages = lifeStages.clone();
+    this.growthAges = growthAges.clone();
+    this.growthAges[growthAges.length - 1] = Long.MAX_VALUE;
+    this.unhappyLevel = unhappyLevel;
+    this.sadLevel = sadLevel;
+    this.sickHealth = sickHealth;
+  }
+
+  /**
+   * Gets the number of life stages.
+   *
+   * @return the number of life stages.
+   */
+  int lifeStageCount() {
+    return this.lifeStages.length;
+  }
+
+  /**
+   * Gets a life stage. Rules that were loaded to replace others may have fewer life stages, so a
+   * stage past the last one is treated as the last one.
+   *
+   * @param stage  the index of the life stage.
+   * @return the life stage.
+   */
+  PetLifeStage lifeStage(int stage) {
+    return this.lifeStages[Math.min(stage, this.lifeStages.length - 1)];
+  }
+
+  /**
+   * Gets the age, in minutes, at which a pet can grow out of a life stage.
+   *
+   * @param stage  the index of the life stage.
+   * @return the age at which a pet can grow out of the life stage, or Long.MAX_VALUE if the pet
+   *         never grows out of it.
+   */
+  long growthAge(int stage) {
+    return stage >= this.growthAges.length - 1 ? Long.MAX_VALUE : this.growthAges[stage];
+  }
+
+  /**
+   * Gets the level below which a need changes the pet's mood.
+   *
+   * @return the unhappy level.
+   */
+  int unhappyLevel() {
+    return this.unhappyLevel;
+  }
+
+  /**
+   * Gets the level at or below which a need counts towards the pet being sad.
+   *
+   * @return the sad level.
+   */
+  int sadLevel() {
+    return this.sadLevel;
+  }
+
+  /**
+   * Gets the health below which a pet is sick.
+   *
+   * @return the sick level.
+   */
+  int sickHealth() {
+    return this.sickHealth;
+  }
+
+  /**
+   * Gets the mood of a pet. If more than one need is at or below the sad level, then the pet is
+   * sad. Otherwise, if a need is below the unhappy level, then the pet's mood corresponds to the
+   * lowest such need. Otherwise, the pet is happy.
+   *
+   * @param lowestNeed  the need with the lowest level below the unhappy level, or null if none.
+   * @param sadNeeds    the number of needs at or below the sad level.
+   * @return the mood of the pet.
+   */
+  static Mood moodOf(Need lowestNeed, int sadNeeds) {
+    if (sadNeeds > 1) {
+      return Mood.SAD;
+    } else if (lowestNeed == null) {
+      return Mood.HAPPY;
+    }
+    switch (lowestNeed) {
+      case HUNGER:
+        return Mood.HUNGRY;
+      case SOCIAL:
+        return Mood.BORED;
+      case HYGIENE:
+        return Mood.DIRTY;
+      case ENERGY:
+        return Mood.TIRED;
+      default:
+        throw new IllegalArgumentException("Invalid need.");
+    }
+  }
+
+  /**
+   * Gets the health state of a pet. If any need has hit 0, then the pet is dead. If the pet's
+   * health is below the sick level, then the pet is sick. Otherwise, the pet is healthy.
+   *
+   * @param health       the pet's health, the average of its need levels.
+   * @param anyNeedEmpty whether any of the pet's needs has hit 0.
+   * @return the health state of the pet.
+   */
+  Health healthOf(int health, boolean anyNeedEmpty) {
+    if (anyNeedEmpty) {
+      return Health.DEAD;
+    }
+    return health < this.sickHealth ? Health.SICK : Health.HEALTHY;
+  }
+
+  /**
+   * Checks whether a pet can grow out of its life stage. A pet grows when it is healthy and happy
+   * and old enough.
+   *
+   * @param stage   the index of the pet's life stage.
+   * @param age     the pet's age, in minutes.
+   * @param mood    the pet's mood.
+   * @param health  the pet's health state.
+   * @return true if the pet grows into the next life stage, false otherwise.
+   */
+  boolean canGrow(int stage, long age, Mood mood, Health health) {
+    return health == Health.HEALTHY && mood == Mood.HAPPY && age >= growthAge(stage);
+  }
+}
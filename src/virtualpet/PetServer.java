@@ -0,0 +1,350 @@
+package virtualpet;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class serves the pets of a registry over HTTP, without a window, so that many pets can be
+ * driven by load generators. Connections are accepted and read by the HTTP server's single
+ * selector thread, and requests are handled on a small pool of threads. No request waits on a
+ * pet's timer, since the registry's pets catch up on decay when they are read.
+ *
+ * <p>The server answers these requests:
+ * <ul>
+ *   <li>POST /pets?name=NAME creates a pet and answers with it.</li>
+ *   <li>GET /pets/ID answers with a pet.</li>
+ *   <li>POST /pets/ID/NEED interacts with a pet, where NEED is a need such as HUNGER, and answers
+ *       with the pet.</li>
+ *   <li>GET /metrics answers with the number of requests and their latencies, as text.</li>
+ * </ul>
+ * Pets are answered as JSON. A pet that does not exist is answered with 404, an unknown need with
+ * 400, and an interaction that is not possible, because the need is full or the pet is dead, with
+ * 409.
+ */
+public final class PetServer implements Closeable {
+  private static final String JSON = "application/json; charset=utf-8";
+  private static final String TEXT = "text/plain; charset=utf-8";
+
+  static {
+    // the server writes a response's headers and body separately, so without this every response
+    // on a kept-alive connection waits for the client's delayed acknowledgement
+    if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+      System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+  }
+
+  private final PetRegistry registry;
+  private final HttpServer server;
+  private final ExecutorService handlers;
+  private final LatencyHistogram latencies = new LatencyHistogram();
+  private final AtomicLong errors = new AtomicLong();
+
+  /**
+   * Creates a server for the pets of a registry and starts it.
+   *
+   * @param registry  the registry of the pets to serve.
+   * @param address   the address to listen on; port 0 picks a free port.
+   * @param threads   the number of threads handling requests.
+   * @throws IllegalArgumentException if the registry or address is null, or the number of threads
+   *                                  is not positive.
+   * @throws IOException if the server could not listen on the address.
+   */
+  public PetServer(PetRegistry registry, InetSocketAddress address, int threads)
+      throws IllegalArgumentException, IOException {
+    if (registry == null || address == null) {
+      throw new IllegalArgumentException("Registry and address cannot be null.");
+    }
+    if (threads <= 0) {
+      throw new IllegalArgumentException("Number of threads must be positive.");
+    }
+    this.registry = registry;
+    this.server = HttpServer.create(address, 1024);
+    this.handlers = Executors.newFixedThreadPool(threads);
+    this.server.setExecutor(this.handlers);
+    this.server.createContext("/", this::handle);
+    this.server.start();
+  }
+
+  /**
+   * Gets the port the server is listening on.
+   *
+   * @return the port.
+   */
+  public int getPort() {
+    return this.server.getAddress().getPort();
+  }
+
+  /**
+   * Gets the number of requests answered so far.
+   *
+   * @return the number of requests.
+   */
+  public long getRequestCount() {
+    return this.latencies.getCount();
+  }
+
+  /**
+   * Stops the server, closing its connections.
+   */
+  @Override
+  public void close() {
+    this.server.stop(0);
+    this.handlers.shutdown();
+  }
+
+  /**
+   * Handles a request and records how long it took. A request that fails before its response has
+   * been started is answered with 500.
+   *
+   * @param exchange  the request and its response.
+   */
+  private void handle(HttpExchange exchange) {
+    long start = System.nanoTime();
+    try {
+      drain(exchange.getRequestBody());
+      route(exchange);
+    } catch (IOException e) {
+      this.errors.incrementAndGet();
+    } catch (RuntimeException e) {
+      this.errors.incrementAndGet();
+      System.err.println("Pet server could not answer a request: " + e);
+      if (exchange.getResponseCode() == -1) { // no headers have been sent yet
+        try {
+          send(exchange, 500, TEXT, "Internal server error.");
+        } catch (IOException notSent) {
+          // the client has gone, so there is no one left to tell
+        }
+      }
+    } finally {
+      exchange.close();
+      this.latencies.record(System.nanoTime() - start);
+    }
+  }
+
+  /**
+   * Answers a request according to its method and path.
+   *
+   * @param exchange  the request and its response.
+   * @throws IOException if the response could not be sent.
+   */
+  private void route(HttpExchange exchange) throws IOException {
+    String method = exchange.getRequestMethod();
+    String[] path = exchange.getRequestURI().getPath().substring(1).split("/");
+    if (path.length == 1 && "metrics".equals(path[0])) {
+      if (!"GET".equals(method)) {
+        send(exchange, 405, TEXT, "Method not allowed.");
+        return;
+      }
+      send(exchange, 200, TEXT, metrics());
+      return;
+    }
+    if (path.length == 0 || !"pets".equals(path[0]) || path.length > 3) {
+      send(exchange, 404, TEXT, "Not found.");
+      return;
+    }
+    if (path.length == 1) {
+      String name = query(exchange, "name");
+      if (!"POST".equals(method)) {
+        send(exchange, 405, TEXT, "Method not allowed.");
+      } else if (name == null) {
+        send(exchange, 400, TEXT, "A name is required.");
+      } else {
+        int id = this.registry.add(name);
+        send(exchange, 201, JSON, json(id, this.registry.get(id)));
+      }
+      return;
+    }
+    VirtualPet pet;
+    int id;
+    try {
+      id = Integer.parseInt(path[1]);
+      pet = this.registry.get(id);
+    } catch (IllegalArgumentException e) {
+      send(exchange, 404, TEXT, "No such pet.");
+      return;
+    }
+    if (path.length == 2) {
+      if (!"GET".equals(method)) {
+        send(exchange, 405, TEXT, "Method not allowed.");
+        return;
+      }
+      send(exchange, 200, JSON, json(id, pet));
+      return;
+    }
+    if (!"POST".equals(method)) {
+      send(exchange, 405, TEXT, "Method not allowed.");
+      return;
+    }
+    Need need;
+    try {
+      need = Need.valueOf(path[2].toUpperCase());
+    } catch (IllegalArgumentException e) {
+      send(exchange, 400, TEXT, "Unknown need.");
+      return;
+    }
+    try {
+      pet.interact(need);
+    } catch (IllegalArgumentException | IllegalStateException e) {
+      send(exchange, 409, TEXT, e.getMessage());
+      return;
+    }
+    send(exchange, 200, JSON, json(id, pet));
+  }
+
+  /**
+   * Describes the requests answered so far, one value per line, with latencies in microseconds.
+   *
+   * @return the metrics.
+   */
+  private String metrics() {
+    return "requests " + this.latencies.getCount() + "\n"
+        + "errors " + this.errors.get() + "\n"
+        + "latency_p50_us " + this.latencies.getPercentile(50) / 1000 + "\n"
+        + "latency_p99_us " + this.latencies.getPercentile(99) / 1000 + "\n"
+        + "latency_p999_us " + this.latencies.getPercentile(99.9) / 1000 + "\n"
+        + "latency_max_us " + this.latencies.getMax() / 1000 + "\n"
+        + "pets " + this.registry.size() + "\n"
+        + "hydrated_pets " + this.registry.getHydratedCount() + "\n";
+  }
+
+  /**
+   * Describes a pet as JSON, from a single snapshot so that its fields agree with each other.
+   *
+   * @param id   the id of the pet.
+   * @param pet  the pet.
+   * @return the JSON object.
+   */
+  private static String json(int id, VirtualPet pet) {
+    PetSnapshot snapshot = pet.getSnapshot();
+    StringBuilder json = new StringBuilder(192);
+    json.append("{\"id\":").append(id)
+        .append(",\"name\":");
+    quote(json, snapshot.getName());
+    json.append(",\"age\":").append(pet.getAge())
+        .append(",\"mood\":\"").append(snapshot.getMoodState().name())
+        .append("\",\"health\":\"").append(snapshot.getHealthState().name())
+        .append("\",\"healthPoints\":").append(snapshot.getHealth())
+        .append(",\"lifeStage\":");
+    quote(json, snapshot.getLifeStage().toString());
+    json.append(",\"alive\":").append(snapshot.isAlive())
+        .append(",\"needs\":{");
+    for (Need need : Need.values()) {
+      json.append(need.ordinal() == 0 ? "\"" : ",\"").append(need.name()).append("\":")
+          .append(snapshot.getNeedLevel(need));
+    }
+    return json.append("}}").toString();
+  }
+
+  /**
+   * Appends a string to JSON as a quoted string, escaping the characters JSON does not allow.
+   *
+   * @param json    the JSON to append to.
+   * @param string  the string.
+   */
+  private static void quote(StringBuilder json, String string) {
+    json.append('"');
+    for (int i = 0; i < string.length(); i++) {
+      char c = string.charAt(i);
+      if (c == '"' || c == '\\') {
+        json.append('\\').append(c);
+      } else if (c < ' ') {
+        json.append(String.format("\\u%04x", (int) c));
+      } else {
+        json.append(c);
+      }
+    }
+    json.append('"');
+  }
+
+  /**
+   * Gets a parameter of a request's query.
+   *
+   * @param exchange   the request.
+   * @param parameter  the name of the parameter.
+   * @return the decoded value of the parameter, or null if it is not in the query.
+   */
+  private static String query(HttpExchange exchange, String parameter) {
+    String query = exchange.getRequestURI().getRawQuery();
+    if (query == null) {
+      return null;
+    }
+    for (String pair : query.split("&")) {
+      int equals = pair.indexOf('=');
+      String key = equals < 0 ? pair : pair.substring(0, equals);
+      if (parameter.equals(key)) {
+        return equals < 0 ? "" : URLDecoder.decode(pair.substring(equals + 1),
+            StandardCharsets.UTF_8);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Sends a response.
+   *
+   * @param exchange     the request to respond to.
+   * @param status       the status code.
+   * @param contentType  the content type of the body.
+   * @param body         the body.
+   * @throws IOException if the response could not be sent.
+   */
+  private static void send(HttpExchange exchange, int status, String contentType, String body)
+      throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", contentType);
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  /**
+   * Reads a request's body to the end, so the connection can be kept alive for the next request.
+   *
+   * @param body  the request's body.
+   * @throws IOException if the body could not be read.
+   */
+  private static void drain(InputStream body) throws IOException {
+    byte[] buffer = new byte[512];
+    while (body.read(buffer) >= 0) {
+      continue;
+    }
+  }
+
+  /**
+   * Runs a pet server until the process is stopped. No window is opened.
+   *
+   * @param args  command-line arguments: the port (8080 by default), the number of threads
+   *              handling requests (the number of processors by default), and the population
+   *              file to serve the pets of, if any.
+   * @throws IOException if the server could not start or the population file could not be
+   *                     opened.
+   */
+  public static void main(String[] args) throws IOException {
+    int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+    int threads = args.length > 1 ? Integer.parseInt(args[1])
+        : Runtime.getRuntime().availableProcessors();
+    Path path = args.length > 2 ? Paths.get(args[2]) : null;
+    PopulationFile snapshot = path != null && Files.exists(path) ? new PopulationFile(path) : null;
+    GameScheduler[] shards = new GameScheduler[Runtime.getRuntime().availableProcessors()];
+    for (int i = 0; i < shards.length; i++) {
+      shards[i] = new TimingWheelScheduler();
+    }
+    PetRegistry registry = new PetRegistry(snapshot, shards, DecayMode.LAZY);
+    PetServer server = new PetServer(registry, new InetSocketAddress(port), threads);
+    System.out.println("Serving " + registry.size() + " pets on port " + server.getPort());
+  }
+}
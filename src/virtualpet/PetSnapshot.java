@@ -0,0 +1,135 @@
+package virtualpet;
+
+import java.util.HashMap;
+
+/**
+ * This class represents an immutable snapshot of a virtual pet's state: its name, mood state,
+ * health state, health, life stage, and need levels, all taken at the same moment. A pet publishes
+ * a new snapshot every time its state changes, so reading a snapshot always gives a consistent
+ * view of the pet, such as a dead pet always having a need at 0, without any locking.
+ */
+public final class PetSnapshot {
+  private static final Need[] NEEDS = Need.values();
+
+  private final String name;
+  private final Mood moodState;
+  private final Health healthState;
+  private final int health;
+  private final PetLifeStage lifeStage;
+  private final int[] needLevels; // indexed by Need ordinal
+
+  /**
+   * Creates a snapshot of a pet's state. The snapshot takes over the array of need levels, which
+   * must not be changed afterwards.
+   *
+   * @param name         the name of the pet.
+   * @param moodState    the mood of the pet.
+   * @param healthState  the health state of the pet.
+   * @param health       the health level of the pet.
+   * @param lifeStage    the life stage of the pet.
+   * @param needLevels   the need levels of the pet, indexed by each need's ordinal.
+   */
+  PetSnapshot(String name, Mood moodState, Health healthState, int health,
+      PetLifeStage lifeStage, int[] needLevels) {
+    this.name = name;
+    this.moodState = moodState;
+    this.healthState = healthState;
+    this.health = health;
+    this.lifeStage = lifeStage;
+    this.needLevels = needLevels;
+  }
+
+  /**
+   * Get the name of the pet.
+   *
+   * @return the name of the pet.
+   */
+  public String getName() {
+    return this.name;
+  }
+
+  /**
+   * Get the pet's mood.
+   *
+   * @return the mood of the pet.
+   */
+  public Mood getMoodState() {
+    return this.moodState;
+  }
+
+  /**
+   * Get the pet's health state.
+   *
+   * @return the health state of the pet.
+   */
+  public Health getHealthState() {
+    return this.healthState;
+  }
+
+  /**
+   * Get the pet's health level.
+   *
+   * @return the health level of the pet.
+   */
+  public int getHealth() {
+    return this.health;
+  }
+
+  /**
+   * Get the pet's life stage.
+   *
+   * @return the life stage of the pet.
+   */
+  public PetLifeStage getLifeStage() {
+    return this.lifeStage;
+  }
+
+  /**
+   * Get the level of one of the pet's needs.
+   *
+   * @param need  the need to get the level of.
+   * @return the level of the need.
+   * @throws IllegalArgumentException if the need is null.
+   */
+  public int getNeedLevel(Need need) throws IllegalArgumentException {
+    if (need == null) {
+      throw new IllegalArgumentException("Invalid need.");
+    }
+    return this.needLevels[need.ordinal()];
+  }
+
+  /**
+   * Get the pet's need levels.
+   *
+   * @return a new map of the pet's need levels.
+   */
+  public HashMap<Need, Integer> getNeedLevels() {
+    HashMap<Need, Integer> levels = new HashMap<>();
+    for (Need need : NEEDS) {
+      levels.put(need, this.needLevels[need.ordinal()]);
+    }
+    return levels;
+  }
+
+  /**
+   * Copies the pet's need levels into the given array, indexed by each need's ordinal.
+   *
+   * @param levels  the array to fill, at least as long as the number of needs.
+   * @throws IllegalArgumentException if the array is null or too short.
+   */
+  public void copyNeedLevels(int[] levels) throws IllegalArgumentException {
+    if (levels == null || levels.length < this.needLevels.length) {
+      throw new IllegalArgumentException("Array must hold a level for every need.");
+    }
+    System.arraycopy(this.needLevels, 0, levels, 0, this.needLevels.length);
+  }
+
+  /**
+   * Checks if the pet was alive.
+   *
+   * @return true if the pet was alive, false otherwise.
+   */
+  public boolean isAlive() {
+    return this.healthState != Health.DEAD;
+  }
+}
@@ -0,0 +1,231 @@
+package virtualpet;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * This class represents the changes between two states of a pet: a bitmask of the fields that
+ * changed, and the new state they changed to. Views repaint and clients are sent only the fields
+ * whose bit is set.
+ *
+ * <p>A delta is encoded as the bitmask in a short, followed by the new value of each changed
+ * field in the order of their bits: the name and life stage as a short byte count and UTF-8
+ * bytes, the age as a long, the mood and health state as ordinal bytes, and the health and each
+ * need level as a byte.
+ */
+public final class PetStateDelta {
+  public static final int NAME = 1;
+  public static final int AGE = 1 << 1;
+  public static final int LIFE_STAGE = 1 << 2;
+  public static final int MOOD = 1 << 3;
+  public static final int HEALTH_STATE = 1 << 4;
+  public static final int HEALTH = 1 << 5;
+  private static final int FIRST_NEED = 6; // the bit of the first need; the others follow it
+
+  private static final Need[] NEEDS = Need.values();
+  private static final int ALL = (1 << (FIRST_NEED + NEEDS.length)) - 1;
+
+  private final int changes;
+  private final PetSnapshot snapshot;
+  private final long age;
+  private final byte[] name; // encoded, or null if the name did not change
+  private final byte[] lifeStage; // encoded, or null if the life stage did not change
+
+  /**
+   * Creates a delta.
+   *
+   * @param changes   the bitmask of the fields that changed.
+   * @param snapshot  the new state of the pet.
+   * @param age       the new age of the pet.
+   */
+  private PetStateDelta(int changes, PetSnapshot snapshot, long age) {
+    this.changes = changes;
+    this.snapshot = snapshot;
+    this.age = age;
+    this.name = (changes & NAME) == 0 ? null : encode(snapshot.getName());
+    this.lifeStage = (changes & LIFE_STAGE) == 0 ? null
+        : encode(snapshot.getLifeStage().toString());
+  }
+
+  /**
+   * Works out the changes between two states of a pet.
+   *
+   * @param before     the earlier snapshot of the pet, or null if there was none, in which case
+   *                   every field has changed.
+   * @param beforeAge  the age of the pet at the earlier snapshot.
+   * @param after      the later snapshot of the pet.
+   * @param afterAge   the age of the pet at the later snapshot.
+   * @return the changes between the two states.
+   * @throws IllegalArgumentException if the later snapshot is null.
+   */
+  public static PetStateDelta between(PetSnapshot before, long beforeAge, PetSnapshot after,
+      long afterAge) throws IllegalArgumentException {
+    if (after == null) {
+      throw new IllegalArgumentException("Snapshot cannot be null.");
+    }
+    if (before == null) {
+      return new PetStateDelta(ALL, after, afterAge);
+    }
+    int changes = 0;
+    if (!before.getName().equals(after.getName())) {
+      changes |= NAME;
+    }
+    if (beforeAge != afterAge) {
+      changes |= AGE;
+    }
+    // compared by name, as reloading the rules replaces the life stage objects
+    if (!before.getLifeStage().toString().equals(after.getLifeStage().toString())) {
+      changes |= LIFE_STAGE;
+    }
+    if (before.getMoodState() != after.getMoodState()) {
+      changes |= MOOD;
+    }
+    if (before.getHealthState() != after.getHealthState()) {
+      changes |= HEALTH_STATE;
+    }
+    if (before.getHealth() != after.getHealth()) {
+      changes |= HEALTH;
+    }
+    for (Need need : NEEDS) {
+      if (before.getNeedLevel(need) != after.getNeedLevel(need)) {
+        changes |= needBit(need);
+      }
+    }
+    return new PetStateDelta(changes, after, afterAge);
+  }
+
+  /**
+   * Gets the bit of a need's level in the bitmask of changes.
+   *
+   * @param need  the need.
+   * @return the bit of the need.
+   */
+  public static int needBit(Need need) {
+    return 1 << (FIRST_NEED + need.ordinal());
+  }
+
+  /**
+   * Gets the bitmask of the fields that changed.
+   *
+   * @return the bitmask of changes.
+   */
+  public int getChanges() {
+    return this.changes;
+  }
+
+  /**
+   * Checks whether nothing changed.
+   *
+   * @return true if no field changed.
+   */
+  public boolean isEmpty() {
+    return this.changes == 0;
+  }
+
+  /**
+   * Checks whether a field changed.
+   *
+   * @param field  the bit of the field, such as MOOD.
+   * @return true if the field changed.
+   */
+  public boolean isChanged(int field) {
+    return (this.changes & field) != 0;
+  }
+
+  /**
+   * Checks whether the level of a need changed.
+   *
+   * @param need  the need.
+   * @return true if the need's level changed.
+   */
+  public boolean isNeedChanged(Need need) {
+    return isChanged(needBit(need));
+  }
+
+  /**
+   * Gets the new state of the pet, which holds the new values of the changed fields.
+   *
+   * @return the new snapshot of the pet.
+   */
+  public PetSnapshot getSnapshot() {
+    return this.snapshot;
+  }
+
+  /**
+   * Gets the new age of the pet.
+   *
+   * @return the new age of the pet.
+   */
+  public long getAge() {
+    return this.age;
+  }
+
+  /**
+   * Gets the number of bytes the delta is encoded in.
+   *
+   * @return the size of the encoded delta.
+   */
+  public int getEncodedSize() {
+    int size = 2;
+    size += this.name == null ? 0 : 2 + this.name.length;
+    size += isChanged(AGE) ? 8 : 0;
+    size += this.lifeStage == null ? 0 : 2 + this.lifeStage.length;
+    size += Integer.bitCount(this.changes & (MOOD | HEALTH_STATE | HEALTH));
+    size += Integer.bitCount(this.changes >>> FIRST_NEED);
+    return size;
+  }
+
+  /**
+   * Encodes the delta, writing only the fields that changed.
+   *
+   * @param out  the buffer to write to.
+   * @throws BufferOverflowException if the buffer has less than getEncodedSize() bytes left.
+   */
+  public void writeTo(ByteBuffer out) throws BufferOverflowException {
+    out.putShort((short) this.changes);
+    if (this.name != null) {
+      out.putShort((short) this.name.length).put(this.name);
+    }
+    if (isChanged(AGE)) {
+      out.putLong(this.age);
+    }
+    if (this.lifeStage != null) {
+      out.putShort((short) this.lifeStage.length).put(this.lifeStage);
+    }
+    if (isChanged(MOOD)) {
+      out.put((byte) this.snapshot.getMoodState().ordinal());
+    }
+    if (isChanged(HEALTH_STATE)) {
+      out.put((byte) this.snapshot.getHealthState().ordinal());
+    }
+    if (isChanged(HEALTH)) {
+      out.put((byte) this.snapshot.getHealth());
+    }
+    for (Need need : NEEDS) {
+      if (isNeedChanged(need)) {
+        out.put((byte) this.snapshot.getNeedLevel(need));
+      }
+    }
+  }
+
+  /**
+   * Encodes a string as UTF-8, cut short at the most bytes a short count can describe. The cut
+   * falls between characters, so the encoded string is still valid UTF-8.
+   *
+   * @param string  the string.
+   * @return the encoded string.
+   */
+  private static byte[] encode(String string) {
+    byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+    if (bytes.length <= Short.MAX_VALUE) {
+      return bytes;
+    }
+    int cut = Short.MAX_VALUE;
+    while ((bytes[cut] & 0xC0) == 0x80) { // a continuation byte, inside a character
+      cut--;
+    }
+    return Arrays.copyOf(bytes, cut);
+  }
+}
@@ -0,0 +1,338 @@
+package virtualpet;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class saves a population to a population file in the background, writing only the pets
+ * that changed since the last checkpoint. The population keeps a bit for every pet that changed,
+ * and a checkpoint copies just those pets into a batch while holding the population's lock, which
+ * is quick, and then writes the batch to the file on a separate thread without the lock. There
+ * are two batches, so the next checkpoint can be copied while the last one is still being written
+ * and the population keeps ticking throughout. The first checkpoint writes every pet.
+ *
+ * <p>A batch that fails to be written gives its pets back to the population as changed, so the
+ * next checkpoint writes them. A batch copied before that happened is missing those pets, so it
+ * is not written either, because the file would then claim to be complete without them.
+ */
+public final class PopulationCheckpointer implements Closeable {
+  private final PetPopulation population;
+  private final PopulationFile file;
+  private final BlockingQueue<Batch> freeBatches;
+  private final ScheduledExecutorService capturer;
+  private final ExecutorService writer;
+  private final Object captureLock = new Object();
+  private final AtomicLong captures = new AtomicLong(); // the number of batches copied so far
+  private boolean full = true; // guarded by captureLock: the next checkpoint writes every pet
+  private long firstComplete; // batches numbered below it are missing the pets of a failed one
+  private long checkpoints;
+  private long lastCaptureDuration;
+  private long lastDuration;
+  private long lastBytesWritten;
+  private long bytesWritten;
+  private int lastPetsWritten;
+
+  /**
+   * Creates a checkpointer that saves a population to a file at a fixed interval.
+   *
+   * @param population  the population to save.
+   * @param file        the file to save it to.
+   * @param interval    the time between the end of one checkpoint and the start of the next, in
+   *                    milliseconds.
+   * @throws IllegalArgumentException if the population or file is null, or the interval is not
+   *                                  positive.
+   */
+  public PopulationCheckpointer(PetPopulation population, PopulationFile file, long interval)
+      throws IllegalArgumentException {
+    if (population == null || file == null) {
+      throw new IllegalArgumentException("Population and file cannot be null.");
+    }
+    if (interval <= 0) {
+      throw new IllegalArgumentException("Interval must be positive.");
+    }
+    this.population = population;
+    this.file = file;
+    this.freeBatches = new ArrayBlockingQueue<>(2);
+    this.freeBatches.add(new Batch());
+    this.freeBatches.add(new Batch());
+    this.capturer = Executors.newSingleThreadScheduledExecutor(
+        task -> daemon(task, "population-checkpointer"));
+    this.writer = Executors.newSingleThreadExecutor(
+        task -> daemon(task, "population-checkpoint-writer"));
+    this.capturer.scheduleWithFixedDelay(this::checkpointQuietly, interval, interval,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Takes a checkpoint now and waits until it has been written.
+   *
+   * @throws IOException if the checkpoint could not be written.
+   */
+  public void checkpoint() throws IOException {
+    try {
+      capture().get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for the checkpoint.", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException("Checkpoint failed.", e.getCause());
+    }
+  }
+
+  /**
+   * Gets the number of checkpoints written so far.
+   *
+   * @return the number of checkpoints.
+   */
+  public synchronized long getCheckpointCount() {
+    return this.checkpoints;
+  }
+
+  /**
+   * Gets how long the population's lock was held to copy the changed pets for the last
+   * checkpoint, which is how long the last checkpoint stalled the population.
+   *
+   * @return the duration of the last copy, in nanoseconds.
+   */
+  public synchronized long getLastCaptureDuration() {
+    return this.lastCaptureDuration;
+  }
+
+  /**
+   * Gets how long the last checkpoint took, from copying the changed pets until they were forced
+   * to the disk.
+   *
+   * @return the duration of the last checkpoint, in nanoseconds.
+   */
+  public synchronized long getLastDuration() {
+    return this.lastDuration;
+  }
+
+  /**
+   * Gets the number of pets written by the last checkpoint.
+   *
+   * @return the number of pets written.
+   */
+  public synchronized int getLastPetsWritten() {
+    return this.lastPetsWritten;
+  }
+
+  /**
+   * Gets the number of bytes of the file changed by the last checkpoint.
+   *
+   * @return the number of bytes written.
+   */
+  public synchronized long getLastBytesWritten() {
+    return this.lastBytesWritten;
+  }
+
+  /**
+   * Gets the number of bytes of the file changed by every checkpoint so far.
+   *
+   * @return the total number of bytes written.
+   */
+  public synchronized long getBytesWritten() {
+    return this.bytesWritten;
+  }
+
+  /**
+   * Stops taking checkpoints in the background, and takes a last one.
+   *
+   * @throws IOException if the last checkpoint could not be written.
+   */
+  @Override
+  public void close() throws IOException {
+    this.capturer.shutdown();
+    try {
+      this.capturer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+      checkpoint();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      this.writer.shutdown();
+    }
+  }
+
+  /**
+   * Copies the changed pets into a free batch and hands it to the writer. Waits for a free batch
+   * if both are still being written.
+   *
+   * @return the write of the batch.
+   * @throws InterruptedException if interrupted while waiting for a free batch.
+   */
+  private Future<?> capture() throws InterruptedException {
+    synchronized (this.captureLock) {
+      Batch batch = this.freeBatches.take();
+      boolean all = this.full;
+      this.full = false;
+      long number = this.captures.getAndIncrement();
+      long start = System.nanoTime();
+      this.population.captureDirty(batch, all);
+      long captured = System.nanoTime();
+      synchronized (this) {
+        this.lastCaptureDuration = captured - start;
+      }
+      return this.writer.submit(() -> {
+        try {
+          write(batch, number, start);
+        } finally {
+          this.freeBatches.add(batch);
+        }
+        return null;
+      });
+    }
+  }
+
+  /**
+   * Writes a batch to the file and records its metrics. If it cannot be written, its pets are
+   * marked as changed again, and every batch copied before that is refused.
+   *
+   * @param batch   the batch to write.
+   * @param number  the number of the batch, in the order the batches were copied.
+   * @param start   when the checkpoint started, from System.nanoTime().
+   * @throws IOException if the batch could not be written, or an earlier batch failed after it
+   *                     was copied.
+   */
+  private void write(Batch batch, long number, long start) throws IOException {
+    long bytes;
+    try {
+      synchronized (this) {
+        if (number < this.firstComplete) {
+          throw new IOException("An earlier checkpoint failed after this one was taken.");
+        }
+      }
+      bytes = this.file.write(batch);
+    } catch (IOException | RuntimeException e) {
+      this.population.markDirty(batch);
+      // only batches copied after the pets were marked again are sure to include them
+      long next = this.captures.get();
+      synchronized (this) {
+        this.firstComplete = next;
+      }
+      throw e;
+    }
+    synchronized (this) {
+      this.checkpoints++;
+      this.lastDuration = System.nanoTime() - start;
+      this.lastPetsWritten = batch.count;
+      this.lastBytesWritten = bytes;
+      this.bytesWritten += bytes;
+    }
+  }
+
+  /**
+   * Takes a scheduled checkpoint, reporting a failure on standard error rather than stopping the
+   * schedule.
+   */
+  private void checkpointQuietly() {
+    try {
+      checkpoint();
+    } catch (IOException e) {
+      System.err.println("Could not checkpoint the population: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Creates a daemon thread, so that checkpointing does not keep the program running.
+   *
+   * @param task  the task of the thread.
+   * @param name  the name of the thread.
+   * @return the thread.
+   */
+  private static Thread daemon(Runnable task, String name) {
+    Thread thread = new Thread(task, name);
+    thread.setDaemon(true);
+    return thread;
+  }
+
+  /**
+   * The pets copied from a population for one checkpoint, kept column by column.
+   */
+  static final class Batch {
+    int capacity;
+    int size;
+    long savedAt;
+    long journalSequence;
+    PetJournal journal; // compacted once the batch is saved, or null
+    int count;
+    int[] slots = new int[0];
+    String[] names = new String[0];
+    byte[][] needLevels = new byte[Need.values().length][0];
+    byte[] moods = new byte[0];
+    byte[] healthStates = new byte[0];
+    byte[] lifeStages = new byte[0];
+    byte[] flags = new byte[0];
+    long[] births = new long[0];
+
+    /**
+     * Empties the batch for a new checkpoint.
+     *
+     * @param capacity         the capacity of the population.
+     * @param size             the number of pets in the population.
+     * @param savedAt          the elapsed time of the population's timer, in seconds.
+     * @param journalSequence  the sequence number of the last journal entry included.
+     * @param journal          the journal of the population, or null.
+     */
+    void begin(int capacity, int size, long savedAt, long journalSequence, PetJournal journal) {
+      this.capacity = capacity;
+      this.size = size;
+      this.savedAt = savedAt;
+      this.journalSequence = journalSequence;
+      this.journal = journal;
+      this.count = 0;
+    }
+
+    /**
+     * Adds a pet to the batch.
+     *
+     * @param slot        the slot of the pet.
+     * @param name        the name of the pet.
+     * @param needLevels  the population's need levels, indexed by need ordinal and then slot.
+     * @param mood        the ordinal of the pet's mood.
+     * @param health      the ordinal of the pet's health state.
+     * @param stage       the index of the pet's life stage.
+     * @param flags       the pet's flags.
+     * @param birth       the elapsed time of the timer when the pet was born, in seconds.
+     */
+    void add(int slot, String name, byte[][] needLevels, byte mood, byte health, byte stage,
+        byte flags, long birth) {
+      if (this.count == this.slots.length) {
+        int length = Math.max(this.count * 2, 64);
+        this.slots = Arrays.copyOf(this.slots, length);
+        this.names = Arrays.copyOf(this.names, length);
+        for (int need = 0; need < this.needLevels.length; need++) {
+          this.needLevels[need] = Arrays.copyOf(this.needLevels[need], length);
+        }
+        this.moods = Arrays.copyOf(this.moods, length);
+        this.healthStates = Arrays.copyOf(this.healthStates, length);
+        this.lifeStages = Arrays.copyOf(this.lifeStages, length);
+        this.flags = Arrays.copyOf(this.flags, length);
+        this.births = Arrays.copyOf(this.births, length);
+      }
+      int index = this.count++;
+      this.slots[index] = slot;
+      this.names[index] = name;
+      for (int need = 0; need < this.needLevels.length; need++) {
+        this.needLevels[need][index] = needLevels[need][slot];
+      }
+      this.moods[index] = mood;
+      this.healthStates[index] = health;
+      this.lifeStages[index] = stage;
+      this.flags[index] = flags;
+      this.births[index] = birth;
+    }
+  }
+}
@@ -0,0 +1,804 @@
+package virtualpet;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * This class represents a population saved in a binary file that is mapped into memory. The file
+ * starts with a header, followed by one fixed-width record for every slot the population has room
+ * for, followed by a heap of the pets' names:
+ *
+ * <pre>
+ * header   magic, version, record size, number of needs, number of pets, capacity,
+ *          elapsed time of the timer when saved, journal sequence, length of the name heap
+ * record   name offset (4 bytes), one byte per need level, mood, health state and life stage
+ *          ordinals, flags (1 byte each), birth time (8 bytes)
+ * heap     for each name, its length (2 bytes) followed by the name in UTF-8
+ * </pre>
+ *
+ * <p>Saving compares every record with the one already in the file and only writes the bytes that
+ * changed, so the pages of pets that did not change are never touched and do not have to be
+ * written back to disk. A name is only added to the heap when it changes; the old copy is left in
+ * the heap until the file is written again for a population of a different capacity. Loading
+ * reads the records in order, which is a sequential scan of the mapping.
+ *
+ * <p>Before a save changes any record, the records it is about to change are forced to a redo
+ * file next to the population file; pets whose records are already up to date are left out. If
+ * the process stops part of the way through the save, opening the file again finishes the save
+ * from the redo file, so the records are never left from different points in time while the
+ * journal entries that would rebuild them are compacted away. The redo file is removed once the
+ * save has finished, and the population's journal is then compacted. The first save to a file
+ * needs no redo file, as the journal is still whole.
+ *
+ * <p>Opening a file checks that its header describes records and names that fit in the file, and
+ * reading a pet checks that its name lies within the name heap, its need levels are between 0 and
+ * 100 and its life stage is not negative, so a damaged file is refused with an
+ * IllegalArgumentException. A file whose last save did not finish, and could not be finished
+ * from the redo file, cannot be loaded on its own; PetJournal recovers such a file.
+ */
+public final class PopulationFile implements Closeable {
+  private static final int MAGIC = 0x56504F50; // "VPOP"
+  private static final short VERSION = 1;
+  private static final int NEED_COUNT = Need.values().length;
+
+  /**
+   * The size of a pet's record, in bytes.
+   */
+  static final int RECORD_SIZE = 4 + NEED_COUNT + 4 + 8;
+
+  /**
+   * The size of the header, in bytes. Room is left for fields added by later versions.
+   */
+  static final int HEADER_SIZE = 64;
+
+  // offsets of the header fields
+  private static final int VERSION_OFFSET = 4;
+  private static final int RECORD_SIZE_OFFSET = 6;
+  private static final int NEED_COUNT_OFFSET = 8;
+  private static final int COUNT_OFFSET = 12;
+  private static final int CAPACITY_OFFSET = 16;
+  private static final int SAVED_AT_OFFSET = 24;
+  private static final int JOURNAL_SEQUENCE_OFFSET = 32;
+  private static final int HEAP_LENGTH_OFFSET = 40;
+
+  // offsets of the fields of a record
+  private static final int NAME_FIELD = 0;
+  private static final int NEEDS_FIELD = 4;
+  private static final int MOOD_FIELD = NEEDS_FIELD + NEED_COUNT;
+  private static final int HEALTH_FIELD = MOOD_FIELD + 1;
+  private static final int STAGE_FIELD = HEALTH_FIELD + 1;
+  private static final int FLAGS_FIELD = STAGE_FIELD + 1;
+  private static final int BIRTH_FIELD = FLAGS_FIELD + 1;
+
+  private static final int MIN_HEAP_CAPACITY = 4096;
+
+  private static final int REDO_MAGIC = 0x56505244; // "VPRD"
+  private static final int REDO_HEADER = 16; // magic, length of the body and its checksum
+  private static final int REDO_BUFFER = 1 << 17; // holds the largest pet, with its name
+  private static final int REDO_PET = 4 + NEED_COUNT + 4 + 8 + 2; // slot, record fields, name
+
+  /**
+   * The journal sequence of a file whose last save did not finish, so that its records may be
+   * from different points in time.
+   */
+  static final long INCOMPLETE = -1;
+
+  private final FileChannel channel;
+  private final Path redo;
+  private MappedByteBuffer records; // the header and the records
+  private MappedByteBuffer heap; // the names
+  private int capacity;
+  private int heapLength;
+  private String[] savedNames; // the name last saved for each slot, to skip unchanged names
+
+  /**
+   * Opens a population file, creating an empty one if it does not exist.
+   *
+   * @param file  the file to open.
+   * @throws IOException if the file cannot be opened or mapped.
+   * @throws IllegalArgumentException if the file exists but is not a population file.
+   */
+  public PopulationFile(Path file) throws IOException, IllegalArgumentException {
+    this.redo = file.resolveSibling(file.getFileName() + ".redo");
+    this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE);
+    try {
+      if (this.channel.size() == 0) {
+        layOut(0);
+      } else {
+        map();
+      }
+      finishSave();
+    } catch (IOException | IllegalArgumentException e) {
+      this.channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Saves a population to the file, replacing the population saved before. Only the bytes that
+   * changed since the last save are written.
+   *
+   * @param population  the population to save.
+   * @throws IOException if the file cannot be grown.
+   * @throws IllegalArgumentException if the population is too large for a single mapping.
+   */
+  public synchronized void save(PetPopulation population)
+      throws IOException, IllegalArgumentException {
+    PopulationCheckpointer.Batch batch = new PopulationCheckpointer.Batch();
+    population.captureDirty(batch, true);
+    try {
+      write(batch);
+    } catch (IOException | RuntimeException e) {
+      population.markDirty(batch);
+      throw e;
+    }
+  }
+
+  /**
+   * Loads the population saved in the file, ticked using every available processor. Pets keep
+   * their age: the time between saving and loading does not count.
+   *
+   * @param timer  the timer of the loaded population.
+   * @return the loaded population.
+   * @throws IllegalArgumentException if there is no population saved in the file.
+   */
+  public PetPopulation load(GameTimer timer) throws IllegalArgumentException {
+    return load(timer, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Loads the population saved in the file. Pets keep their age: the time between saving and
+   * loading does not count.
+   *
+   * @param timer        the timer of the loaded population.
+   * @param parallelism  the number of threads used to tick the population.
+   * @return the loaded population.
+   * @throws IllegalArgumentException if there is no population saved in the file, the last save
+   *                                  did not finish, the file is damaged, or the timer is null or
+   *                                  parallelism less than 1.
+   */
+  public PetPopulation load(GameTimer timer, int parallelism) throws IllegalArgumentException {
+    if (getJournalSequence() == INCOMPLETE) {
+      throw new IllegalArgumentException("The last save to the population file did not finish.");
+    }
+    return load(timer, parallelism, getSavedAt());
+  }
+
+  /**
+   * Loads the population saved in the file, with the pets' ages as they were at the given time
+   * rather than when they were saved.
+   *
+   * @param timer        the timer of the loaded population.
+   * @param parallelism  the number of threads used to tick the population.
+   * @param stoppedAt    the elapsed time of the saved population's timer when it stopped, in
+   *                     seconds.
+   * @return the loaded population.
+   * @throws IllegalArgumentException if there is no population saved in the file, the file is
+   *                                  damaged, or the timer is null or parallelism less than 1.
+   */
+  synchronized PetPopulation load(GameTimer timer, int parallelism, long stoppedAt)
+      throws IllegalArgumentException {
+    if (this.capacity == 0) {
+      throw new IllegalArgumentException("No population saved.");
+    }
+    PetPopulation population = new PetPopulation(this.capacity, timer, parallelism);
+    int count = this.records.getInt(COUNT_OFFSET);
+    long shift = timer.getElapsedTime() - stoppedAt;
+    byte[] names = new byte[this.heapLength];
+    this.heap.duplicate().get(names);
+    byte[] levels = new byte[NEED_COUNT];
+    for (int slot = 0; slot < count; slot++) {
+      int record = HEADER_SIZE + slot * RECORD_SIZE;
+      int nameOffset = checkName(this.records.getInt(record + NAME_FIELD));
+      int nameLength = ((names[nameOffset] & 0xFF) << 8) | (names[nameOffset + 1] & 0xFF);
+      String name = new String(names, nameOffset + 2, nameLength, StandardCharsets.UTF_8);
+      this.records.duplicate().position(record + NEEDS_FIELD).get(levels);
+      checkRecord(record);
+      population.restore(name, levels, this.records.get(record + MOOD_FIELD),
+          this.records.get(record + HEALTH_FIELD), this.records.get(record + STAGE_FIELD),
+          this.records.get(record + FLAGS_FIELD),
+          this.records.getLong(record + BIRTH_FIELD) + shift);
+      this.savedNames[slot] = name;
+    }
+    return population;
+  }
+
+  /**
+   * Reads the saved state of a single pet.
+   *
+   * @param slot  the slot of the pet.
+   * @return the pet's saved state.
+   * @throws IllegalArgumentException if there is no pet saved in the slot, or its record is
+   *                                  damaged.
+   */
+  synchronized Record read(int slot) throws IllegalArgumentException {
+    if (slot < 0 || slot >= size()) {
+      throw new IllegalArgumentException("No pet saved in slot " + slot + ".");
+    }
+    int record = HEADER_SIZE + slot * RECORD_SIZE;
+    checkRecord(record);
+    int[] levels = new int[NEED_COUNT];
+    for (int need = 0; need < NEED_COUNT; need++) {
+      levels[need] = this.records.get(record + NEEDS_FIELD + need);
+    }
+    String name = nameAt(checkName(this.records.getInt(record + NAME_FIELD)));
+    return new Record(name, levels,
+        this.records.get(record + STAGE_FIELD),
+        (this.records.get(record + FLAGS_FIELD) & PetPopulation.PAUSED) != 0,
+        this.records.getLong(record + BIRTH_FIELD));
+  }
+
+  /**
+   * Gets the number of pets saved in the file.
+   *
+   * @return the number of pets saved.
+   */
+  public synchronized int size() {
+    return this.records.getInt(COUNT_OFFSET);
+  }
+
+  /**
+   * Gets the capacity of the saved population.
+   *
+   * @return the capacity, or 0 if no population has been saved.
+   */
+  synchronized int getCapacity() {
+    return this.capacity;
+  }
+
+  /**
+   * Gets the elapsed time of the saved population's timer when it was saved.
+   *
+   * @return the elapsed time, in seconds.
+   */
+  synchronized long getSavedAt() {
+    return this.records.getLong(SAVED_AT_OFFSET);
+  }
+
+  /**
+   * Gets the sequence number of the last journal entry included in the saved population.
+   *
+   * @return the journal sequence, 0 if no journal entry is included, or INCOMPLETE if the last
+   *         save did not finish.
+   */
+  synchronized long getJournalSequence() {
+    return this.records.getLong(JOURNAL_SEQUENCE_OFFSET);
+  }
+
+  /**
+   * Writes every changed page of the mapping to the disk.
+   */
+  public synchronized void force() {
+    this.records.force();
+    this.heap.force();
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    force();
+    this.channel.close();
+  }
+
+  /**
+   * Writes a batch of pets copied from a population to the file, by way of the redo file, and
+   * then compacts the population's journal. The other pets' records are left as they were.
+   *
+   * @param batch  the batch to write.
+   * @return the number of bytes of the file that changed.
+   * @throws IOException if the redo file cannot be written or the name heap cannot be grown.
+   * @throws IllegalArgumentException if a name is too long to save, or the population is too
+   *                                  large for a single mapping.
+   */
+  synchronized long write(PopulationCheckpointer.Batch batch)
+      throws IOException, IllegalArgumentException {
+    if (this.capacity > 0) {
+      writeRedo(batch);
+    } // else nothing was ever saved here, so the journal has not been compacted
+    long bytes = writeBatch(batch);
+    Files.deleteIfExists(this.redo);
+    if (batch.journal != null) {
+      batch.journal.compact(batch.journalSequence);
+    }
+    return bytes;
+  }
+
+  /**
+   * Writes a batch of pets to the records.
+   *
+   * @param batch  the batch to write.
+   * @return the number of bytes of the file that changed.
+   * @throws IOException if the name heap cannot be grown.
+   * @throws IllegalArgumentException if the population is too large for a single mapping.
+   */
+  private long writeBatch(PopulationCheckpointer.Batch batch)
+      throws IOException, IllegalArgumentException {
+    beginSave(batch.capacity, batch.size, batch.savedAt);
+    long bytes = 0;
+    for (int index = 0; index < batch.count; index++) {
+      bytes += writeRecord(batch.slots[index], batch.names[index], batch.needLevels, index,
+          batch.moods[index], batch.healthStates[index], batch.lifeStages[index],
+          batch.flags[index], batch.births[index]);
+    }
+    endSave(batch.journalSequence);
+    return bytes;
+  }
+
+  /**
+   * Starts saving a population, laying the file out again if the population's capacity is not
+   * the capacity of the saved one. The file is marked INCOMPLETE on the disk before any record
+   * changes, so a save that is cut short is never mistaken for a finished one.
+   *
+   * @param capacity  the capacity of the population.
+   * @param count     the number of pets in the population.
+   * @param savedAt   the elapsed time of the population's timer, in seconds.
+   * @throws IOException if the file cannot be laid out.
+   * @throws IllegalArgumentException if the capacity is too large for a single mapping.
+   */
+  private void beginSave(int capacity, int count, long savedAt)
+      throws IOException, IllegalArgumentException {
+    if (capacity != this.capacity) {
+      layOut(capacity);
+    }
+    this.records.putLong(JOURNAL_SEQUENCE_OFFSET, INCOMPLETE);
+    this.records.force();
+    this.records.putInt(COUNT_OFFSET, count);
+    this.records.putLong(SAVED_AT_OFFSET, savedAt);
+  }
+
+  /**
+   * Finishes saving a population: forces the records and names to the disk, and only then
+   * records the journal sequence they include.
+   *
+   * @param journalSequence  the sequence number of the last journal entry included.
+   */
+  private void endSave(long journalSequence) {
+    this.heap.force();
+    this.records.force();
+    this.records.putLong(JOURNAL_SEQUENCE_OFFSET, journalSequence);
+    this.records.force();
+  }
+
+  /**
+   * Writes the record of a pet, changing only the bytes that differ from the saved record.
+   *
+   * @param slot        the slot of the pet.
+   * @param name        the name of the pet.
+   * @param needLevels  need levels, indexed by need ordinal and then by the index below.
+   * @param index       the index of the pet's levels in needLevels.
+   * @param mood        the ordinal of the pet's mood.
+   * @param health      the ordinal of the pet's health state.
+   * @param stage       the index of the pet's life stage.
+   * @param flags       the pet's flags.
+   * @param birth       the elapsed time of the timer when the pet was born, in seconds.
+   * @return the number of bytes of the file that changed.
+   * @throws IOException if the name heap cannot be grown.
+   */
+  private int writeRecord(int slot, String name, byte[][] needLevels, int index, byte mood,
+      byte health, byte stage, byte flags, long birth) throws IOException {
+    int record = HEADER_SIZE + slot * RECORD_SIZE;
+    int written = 0;
+    // names rarely change, so the heap is only read when the slot holds a different string
+    if (name != this.savedNames[slot]) {
+      int offset = this.records.getInt(record + NAME_FIELD);
+      if (!nameAt(offset).equals(name)) {
+        int before = this.heapLength;
+        this.records.putInt(record + NAME_FIELD, appendName(name));
+        written += 4 + this.heapLength - before;
+      }
+      this.savedNames[slot] = name;
+    }
+    for (int need = 0; need < NEED_COUNT; need++) {
+      written += putIfChanged(record + NEEDS_FIELD + need, needLevels[need][index]);
+    }
+    written += putIfChanged(record + MOOD_FIELD, mood);
+    written += putIfChanged(record + HEALTH_FIELD, health);
+    written += putIfChanged(record + STAGE_FIELD, stage);
+    written += putIfChanged(record + FLAGS_FIELD, flags);
+    if (this.records.getLong(record + BIRTH_FIELD) != birth) {
+      this.records.putLong(record + BIRTH_FIELD, birth);
+      written += 8;
+    }
+    return written;
+  }
+
+  /**
+   * Forces the records of a batch that will change to the redo file, replacing the redo file only
+   * once the copy is complete. The pets whose records are already up to date are left out, and
+   * the copy is streamed through a small buffer, so it costs about as much as the save itself.
+   *
+   * @param batch  the batch to copy.
+   * @throws IOException if the redo file cannot be written.
+   * @throws IllegalArgumentException if a name is longer than 65535 bytes in UTF-8.
+   */
+  private void writeRedo(PopulationCheckpointer.Batch batch)
+      throws IOException, IllegalArgumentException {
+    Path temporary = this.redo.resolveSibling(this.redo.getFileName() + ".tmp");
+    try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+      ByteBuffer buffer = ByteBuffer.allocate(REDO_BUFFER);
+      CRC32C checksum = new CRC32C();
+      long length = 0;
+      buffer.position(REDO_HEADER); // written last, once the length and checksum are known
+      buffer.putInt(batch.capacity).putInt(batch.size).putLong(batch.savedAt)
+          .putLong(batch.journalSequence);
+      boolean relaidOut = batch.capacity != this.capacity;
+      for (int index = 0; index < batch.count; index++) {
+        if (!relaidOut && !recordChanges(batch, index)) {
+          continue;
+        }
+        byte[] name = batch.names[index].getBytes(StandardCharsets.UTF_8);
+        if (name.length > 0xFFFF) {
+          throw new IllegalArgumentException("Name is too long to save.");
+        }
+        if (buffer.remaining() < REDO_PET + name.length) {
+          length += writeRedo(out, buffer, checksum);
+        }
+        buffer.putInt(batch.slots[index]);
+        for (int need = 0; need < NEED_COUNT; need++) {
+          buffer.put(batch.needLevels[need][index]);
+        }
+        buffer.put(batch.moods[index]).put(batch.healthStates[index])
+            .put(batch.lifeStages[index]).put(batch.flags[index]).putLong(batch.births[index])
+            .putShort((short) name.length).put(name);
+      }
+      length += writeRedo(out, buffer, checksum);
+      buffer.clear();
+      buffer.putInt(REDO_MAGIC).putLong(length).putInt((int) checksum.getValue()).flip();
+      while (buffer.hasRemaining()) {
+        out.write(buffer, buffer.position());
+      }
+      out.force(false);
+    }
+    Files.move(temporary, this.redo, StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING);
+    try (FileChannel folder = FileChannel.open(this.redo.toAbsolutePath().getParent(),
+        StandardOpenOption.READ)) {
+      folder.force(true);
+    } catch (IOException e) {
+      // not every platform can force a folder; the rename is then as durable as it gets
+    }
+  }
+
+  /**
+   * Writes the buffered part of the redo file and empties the buffer. The header at the start of
+   * the file is skipped, and only the body is added to the checksum.
+   *
+   * @param out       the redo file.
+   * @param buffer    the buffer.
+   * @param checksum  the checksum of the body.
+   * @return the number of bytes of the body written.
+   * @throws IOException if the redo file cannot be written.
+   */
+  private static int writeRedo(FileChannel out, ByteBuffer buffer, CRC32C checksum)
+      throws IOException {
+    buffer.flip();
+    if (out.position() == 0) {
+      buffer.position(REDO_HEADER);
+      out.position(REDO_HEADER);
+    }
+    int length = buffer.remaining();
+    checksum.update(buffer.array(), buffer.position(), length);
+    while (buffer.hasRemaining()) {
+      out.write(buffer);
+    }
+    buffer.clear();
+    return length;
+  }
+
+  /**
+   * Checks whether writing a pet of a batch would change its record.
+   *
+   * @param batch  the batch.
+   * @param index  the index of the pet in the batch.
+   * @return true if any field of the record, or the name, differs.
+   */
+  private boolean recordChanges(PopulationCheckpointer.Batch batch, int index) {
+    int slot = batch.slots[index];
+    int record = HEADER_SIZE + slot * RECORD_SIZE;
+    for (int need = 0; need < NEED_COUNT; need++) {
+      if (this.records.get(record + NEEDS_FIELD + need) != batch.needLevels[need][index]) {
+        return true;
+      }
+    }
+    String name = batch.names[index];
+    return this.records.get(record + MOOD_FIELD) != batch.moods[index]
+        || this.records.get(record + HEALTH_FIELD) != batch.healthStates[index]
+        || this.records.get(record + STAGE_FIELD) != batch.lifeStages[index]
+        || this.records.get(record + FLAGS_FIELD) != batch.flags[index]
+        || this.records.getLong(record + BIRTH_FIELD) != batch.births[index]
+        || name != this.savedNames[slot]
+        && !nameAt(this.records.getInt(record + NAME_FIELD)).equals(name);
+  }
+
+  /**
+   * Finishes a save that was cut short, from the redo file, and removes the redo file. A redo
+   * file that was only partly written is ignored, since its save never started.
+   *
+   * @throws IOException if the redo file cannot be read or removed, or the name heap cannot be
+   *                     grown.
+   */
+  private void finishSave() throws IOException {
+    if (!Files.exists(this.redo)) {
+      return;
+    }
+    if (getJournalSequence() == INCOMPLETE) {
+      try (FileChannel in = FileChannel.open(this.redo, StandardOpenOption.READ)) {
+        // the first pass only checks the copy, so a damaged one never touches the records
+        if (readRedo(in, false)) {
+          readRedo(in, true);
+        }
+      }
+    }
+    Files.delete(this.redo);
+  }
+
+  /**
+   * Reads the redo file, checking it or saving the pets copied to it.
+   *
+   * @param in    the redo file.
+   * @param save  whether to save the pets, rather than only check the copy.
+   * @return whether the copy is complete.
+   * @throws IOException if the redo file cannot be read, or the name heap cannot be grown.
+   */
+  private boolean readRedo(FileChannel in, boolean save) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(REDO_HEADER);
+    while (header.hasRemaining()) {
+      if (in.read(header, header.position()) < 0) {
+        return false;
+      }
+    }
+    long length = header.getLong(4);
+    if (header.getInt(0) != REDO_MAGIC || length != in.size() - REDO_HEADER) {
+      return false;
+    }
+    CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(
+        Channels.newInputStream(in.position(REDO_HEADER)), REDO_BUFFER), new CRC32C());
+    DataInputStream body = new DataInputStream(checked);
+    byte[][] levels = new byte[NEED_COUNT][1];
+    try {
+      int capacity = body.readInt();
+      int size = body.readInt();
+      long savedAt = body.readLong();
+      long journalSequence = body.readLong();
+      if (save) {
+        beginSave(capacity, size, savedAt);
+      }
+      long read = 4 + 4 + 8 + 8;
+      while (read < length) {
+        int slot = body.readInt();
+        for (int need = 0; need < NEED_COUNT; need++) {
+          levels[need][0] = body.readByte();
+        }
+        byte mood = body.readByte();
+        byte health = body.readByte();
+        byte stage = body.readByte();
+        byte flags = body.readByte();
+        long birth = body.readLong();
+        byte[] name = new byte[body.readUnsignedShort()];
+        body.readFully(name);
+        read += REDO_PET + name.length;
+        if (slot < 0 || slot >= capacity) {
+          return false;
+        }
+        if (save) {
+          writeRecord(slot, new String(name, StandardCharsets.UTF_8), levels, 0, mood, health,
+              stage, flags, birth);
+        }
+      }
+      if (save) {
+        endSave(journalSequence);
+      }
+      return read == length && (int) checked.getChecksum().getValue() == header.getInt(12);
+    } catch (EOFException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Writes a byte of the mapping only if it changed, so that unchanged pages stay clean.
+   *
+   * @param index  the index of the byte.
+   * @param value  the new value of the byte.
+   * @return 1 if the byte changed, 0 otherwise.
+   */
+  private int putIfChanged(int index, byte value) {
+    if (this.records.get(index) == value) {
+      return 0;
+    }
+    this.records.put(index, value);
+    return 1;
+  }
+
+  /**
+   * Gets the name stored in the heap at an offset.
+   *
+   * @param offset  the offset of the name.
+   * @return the name, or an empty string if the offset is not the start of a name.
+   */
+  private String nameAt(int offset) {
+    if (offset < 0 || offset + 2 > this.heapLength) {
+      return "";
+    }
+    int length = Short.toUnsignedInt(this.heap.getShort(offset));
+    if (offset + 2 + length > this.heapLength) {
+      return "";
+    }
+    byte[] bytes = new byte[length];
+    this.heap.duplicate().position(offset + 2).get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Checks that a saved record's need levels are between 0 and 100 and its life stage is not
+   * negative.
+   *
+   * @param record  the offset of the record.
+   * @throws IllegalArgumentException if a need level or the life stage is out of range.
+   */
+  private void checkRecord(int record) throws IllegalArgumentException {
+    for (int need = 0; need < NEED_COUNT; need++) {
+      byte level = this.records.get(record + NEEDS_FIELD + need);
+      if (level < 0 || level > 100) {
+        throw new IllegalArgumentException("Population file is damaged.");
+      }
+    }
+    if (this.records.get(record + STAGE_FIELD) < 0) {
+      throw new IllegalArgumentException("Population file is damaged.");
+    }
+  }
+
+  /**
+   * Checks that a saved record's name lies within the heap.
+   *
+   * @param offset  the offset of the name.
+   * @return the offset.
+   * @throws IllegalArgumentException if the name's length or bytes are outside the heap.
+   */
+  private int checkName(int offset) throws IllegalArgumentException {
+    if (offset < 0 || offset > this.heapLength - 2
+        || Short.toUnsignedInt(this.heap.getShort(offset)) > this.heapLength - offset - 2) {
+      throw new IllegalArgumentException("Population file is damaged.");
+    }
+    return offset;
+  }
+
+  /**
+   * Adds a name to the end of the heap, growing the heap if it is full.
+   *
+   * @param name  the name to add.
+   * @return the offset of the name in the heap.
+   * @throws IOException if the heap cannot be grown.
+   * @throws IllegalArgumentException if the name is longer than 65535 bytes in UTF-8, or the heap
+   *                                  is too large for a single mapping.
+   */
+  private int appendName(String name) throws IOException, IllegalArgumentException {
+    byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+    if (bytes.length > 0xFFFF) {
+      throw new IllegalArgumentException("Name is too long to save.");
+    }
+    int offset = this.heapLength;
+    int end = offset + 2 + bytes.length;
+    if (end < 0) {
+      throw new IllegalArgumentException("Names are too large to save.");
+    }
+    if (end > this.heap.capacity()) {
+      mapHeap((int) Math.min(Integer.MAX_VALUE, Math.max((long) this.heap.capacity() * 2, end)));
+    }
+    this.heap.putShort(offset, (short) bytes.length);
+    this.heap.duplicate().position(offset + 2).put(bytes);
+    this.heapLength = end;
+    this.records.putInt(HEAP_LENGTH_OFFSET, end);
+    return offset;
+  }
+
+  /**
+   * Lays the file out again, empty, for a population of the given capacity.
+   *
+   * @param capacity  the capacity of the population.
+   * @throws IOException if the file cannot be mapped.
+   * @throws IllegalArgumentException if the capacity is too large for a single mapping.
+   */
+  private void layOut(int capacity) throws IOException, IllegalArgumentException {
+    long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+    if (size > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Population is too large to save.");
+    }
+    this.channel.truncate(0);
+    this.capacity = capacity;
+    this.records = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    this.records.putInt(0, MAGIC);
+    this.records.putShort(VERSION_OFFSET, VERSION);
+    this.records.putShort(RECORD_SIZE_OFFSET, (short) RECORD_SIZE);
+    this.records.putInt(NEED_COUNT_OFFSET, NEED_COUNT);
+    this.records.putInt(CAPACITY_OFFSET, capacity);
+    this.heapLength = 0;
+    this.savedNames = new String[capacity];
+    mapHeap(MIN_HEAP_CAPACITY);
+    // every record starts out pointing at an empty name, which no real name matches
+    appendName("");
+  }
+
+  /**
+   * Maps an existing population file, checking its header.
+   *
+   * @throws IOException if the file cannot be mapped.
+   * @throws IllegalArgumentException if the file is not a population file.
+   */
+  private void map() throws IOException, IllegalArgumentException {
+    if (this.channel.size() < HEADER_SIZE) {
+      throw new IllegalArgumentException("Not a population file.");
+    }
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    this.channel.read(header, 0);
+    if (header.getInt(0) != MAGIC) {
+      throw new IllegalArgumentException("Not a population file.");
+    }
+    if (header.getShort(VERSION_OFFSET) != VERSION
+        || header.getShort(RECORD_SIZE_OFFSET) != RECORD_SIZE
+        || header.getInt(NEED_COUNT_OFFSET) != NEED_COUNT) {
+      throw new IllegalArgumentException("Unsupported population file version.");
+    }
+    int capacity = header.getInt(CAPACITY_OFFSET);
+    int count = header.getInt(COUNT_OFFSET);
+    int heapLength = header.getInt(HEAP_LENGTH_OFFSET);
+    long size = HEADER_SIZE + (long) capacity * RECORD_SIZE;
+    if (capacity < 0 || size > Integer.MAX_VALUE || heapLength < 0
+        || this.channel.size() < size + heapLength) {
+      throw new IllegalArgumentException("Population file is truncated.");
+    }
+    if (count < 0 || count > capacity) {
+      throw new IllegalArgumentException("Population file is damaged.");
+    }
+    this.capacity = capacity;
+    this.records = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    this.heapLength = heapLength;
+    this.savedNames = new String[capacity];
+    mapHeap((int) Math.max(this.channel.size() - size, MIN_HEAP_CAPACITY));
+  }
+
+  /**
+   * Maps the name heap, which follows the records, growing the file if it is too short.
+   *
+   * @param heapCapacity  the size of the heap mapping, in bytes.
+   * @throws IOException if the heap cannot be mapped.
+   */
+  private void mapHeap(int heapCapacity) throws IOException {
+    long start = HEADER_SIZE + (long) this.capacity * RECORD_SIZE;
+    this.heap = this.channel.map(FileChannel.MapMode.READ_WRITE, start, heapCapacity);
+  }
+
+  /**
+   * The saved state of a single pet. Its mood and health state are not kept, as they follow from
+   * its need levels.
+   */
+  static final class Record {
+    final String name;
+    final int[] needLevels; // indexed by Need ordinal
+    final int lifeStage; // index of the life stage in the rules
+    final boolean paused;
+    final long birth; // elapsed time of the population's timer, in seconds
+
+    Record(String name, int[] needLevels, int lifeStage, boolean paused, long birth) {
+      this.name = name;
+      this.needLevels = needLevels;
+      this.lifeStage = lifeStage;
+      this.paused = paused;
+      this.birth = birth;
+    }
+  }
+}
@@ -0,0 +1,107 @@
+package virtualpet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Benchmark comparing the ways pets' tasks can be scheduled. For each kind of timer it measures
+ * how long it takes to schedule a decay task for every pet, how long it takes to stop every pet's
+ * timer, and, for the shared schedulers, how many tasks actually run per second when every pet is
+ * ticking quickly. GameTimerImpl starts a thread for every pet, so it is only measured with up to
+ * a couple thousand pets.
+ */
+public class SchedulerBenchmark {
+  private static final int MAX_THREAD_TIMERS = 2000;
+  private static final long FAST_INTERVAL = 100;
+  private static final long RUN_TIME = 3000;
+
+  /**
+   * Runs the benchmark.
+   *
+   * @param args  command-line arguments, optionally the number of pets (100000 by default).
+   * @throws InterruptedException if the benchmark is interrupted while waiting for tasks to run.
+   */
+  public static void main(String[] args) throws InterruptedException {
+    int pets = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+    int threadPets = Math.min(pets, MAX_THREAD_TIMERS);
+
+    System.out.println("Scheduling and stopping one decay task per pet:");
+    measureScheduling("GameTimerImpl", threadPets, null);
+    measureScheduling("SharedGameScheduler", pets, new SharedGameScheduler());
+    measureScheduling("TimingWheelScheduler", pets, new TimingWheelScheduler());
+
+    System.out.println("\nTasks run with every pet ticking every " + FAST_INTERVAL + " ms:");
+    measureThroughput("SharedGameScheduler", pets, new SharedGameScheduler());
+    measureThroughput("TimingWheelScheduler", pets, new TimingWheelScheduler());
+  }
+
+  /**
+   * Measures the time taken to schedule a decay task for every pet and then stop every timer.
+   *
+   * @param name       the name of the timer being measured.
+   * @param pets       the number of pets.
+   * @param scheduler  the scheduler to create the timers with, or null to use GameTimerImpl.
+   */
+  private static void measureScheduling(String name, int pets, GameScheduler scheduler) {
+    List<GameTimer> timers = new ArrayList<>(pets);
+    long start = System.nanoTime();
+    for (int i = 0; i < pets; i++) {
+      GameTimer timer = scheduler == null ? new GameTimerImpl() : scheduler.newTimer();
+      timer.scheduleTask(noOp(), PetLifeStage.INTERVAL);
+      timers.add(timer);
+    }
+    long scheduled = System.nanoTime();
+    for (GameTimer timer : timers) {
+      timer.stop();
+    }
+    long stopped = System.nanoTime();
+    if (scheduler != null) {
+      scheduler.shutdown();
+    }
+    System.out.printf("  %-22s %9d pets  schedule %8.1f ns/pet  stop %8.1f ns/pet%n", name, pets,
+        (scheduled - start) / (double) pets, (stopped - scheduled) / (double) pets);
+  }
+
+  /**
+   * Measures how many tasks run per second when every pet has a task with a short interval,
+   * compared to the number that should run.
+   *
+   * @param name       the name of the scheduler being measured.
+   * @param pets       the number of pets.
+   * @param scheduler  the scheduler to measure.
+   * @throws InterruptedException if interrupted while waiting for tasks to run.
+   */
+  private static void measureThroughput(String name, int pets, GameScheduler scheduler)
+      throws InterruptedException {
+    AtomicLong runs = new AtomicLong();
+    for (int i = 0; i < pets; i++) {
+      scheduler.newTimer().scheduleTask(new TimerTask() {
+        @Override
+        public void run() {
+          runs.incrementAndGet();
+        }
+      }, FAST_INTERVAL);
+    }
+    Thread.sleep(RUN_TIME);
+    long ran = runs.get();
+    scheduler.shutdown();
+    double expected = pets * (RUN_TIME / (double) FAST_INTERVAL);
+    System.out.printf("  %-22s %9d pets  %12.0f tasks/s  (%.0f%% of expected)%n", name, pets,
+        ran * 1000.0 / RUN_TIME, ran * 100 / expected);
+  }
+
+  /**
+   * Creates a task that does nothing.
+   *
+   * @return a task that does nothing.
+   */
+  private static TimerTask noOp() {
+    return new TimerTask() {
+      @Override
+      public void run() {
+      }
+    };
+  }
+}
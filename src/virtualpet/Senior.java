@@ -6,12 +6,16 @@ package virtualpet;
  * needs decrease at an even smaller value than the adult life stage, similar to how life slows
  * down for a senior pet.
  */
-public class Senior extends AbstractLifeStage {
+public final class Senior extends AbstractLifeStage {
   private static final int[] INCREASE_RATES = {6, 10, 8, 10};
   private static final int[] DECREASE_RATES = {1, 2, 5, 8};
 
+  /**
+   * The shared senior life stage. Life stages never change, so every pet can use this one.
+   */
+  public static final Senior INSTANCE = new Senior();
 
-  public Senior() {
+  private Senior() {
     super(INCREASE_RATES, DECREASE_RATES);
   }
 
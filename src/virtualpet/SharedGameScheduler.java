@@ -0,0 +1,137 @@
+package virtualpet;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimerTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class represents a scheduler shared by many virtual pets. It implements the GameScheduler
+ * interface. Instead of every pet creating its own java Timer thread, all the pets' tasks run on a
+ * single ScheduledExecutorService with a small pool of daemon threads, sized to the number of
+ * processors by default. Stopping a pet's timer only cancels that pet's tasks.
+ */
+public class SharedGameScheduler implements GameScheduler {
+  private final ScheduledExecutorService executor;
+
+  /**
+   * Creates a new shared scheduler with one thread per available processor.
+   */
+  public SharedGameScheduler() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Creates a new shared scheduler with the given number of threads.
+   *
+   * @param threads  the number of threads used to run the pets' tasks.
+   * @throws IllegalArgumentException if the number of threads is less than 1.
+   */
+  public SharedGameScheduler(int threads) throws IllegalArgumentException {
+    if (threads < 1) {
+      throw new IllegalArgumentException("Scheduler needs at least one thread.");
+    }
+    AtomicInteger count = new AtomicInteger();
+    ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(threads, runnable -> {
+      Thread thread = new Thread(runnable, "pet-scheduler-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    // drop the tasks of stopped pets from the queue right away instead of when they are next due
+    executor.setRemoveOnCancelPolicy(true);
+    this.executor = executor;
+  }
+
+  @Override
+  public GameTimer newTimer() throws IllegalStateException {
+    if (this.executor.isShutdown()) {
+      throw new IllegalStateException("Scheduler has been shut down.");
+    }
+    return new PetTimer(this.executor);
+  }
+
+  @Override
+  public void shutdown() {
+    this.executor.shutdownNow();
+  }
+
+  /**
+   * Gets the number of tasks waiting in the executor's queue, over every pet.
+   *
+   * @return the number of waiting tasks.
+   */
+  public int getQueuedTaskCount() {
+    return ((ScheduledThreadPoolExecutor) this.executor).getQueue().size();
+  }
+
+  /**
+   * A timer for a single pet whose tasks run on the shared executor. A scheduled task first runs
+   * once its interval has passed, and then again after every interval. Cancelling a task through
+   * the timer cancels its future, which removes it from the executor's queue, and a task that
+   * cancels itself that way while it runs is not run again. TimerTask offers no way to tell that it
+   * was cancelled, so a task must be cancelled through the timer to stop it.
+   */
+  private static class PetTimer implements GameTimer {
+    private final ScheduledExecutorService executor;
+    private final Instant startTime;
+    private final Map<TimerTask, ScheduledFuture<?>> tasks;
+    private boolean stopped;
+
+    PetTimer(ScheduledExecutorService executor) {
+      this.executor = executor;
+      this.startTime = Instant.now();
+      this.tasks = new HashMap<>();
+      this.stopped = false;
+    }
+
+    @Override
+    public synchronized void scheduleTask(TimerTask task, long interval)
+        throws IllegalStateException {
+      if (this.stopped) {
+        throw new IllegalStateException("Timer has been stopped.");
+      }
+      this.tasks.put(task,
+          this.executor.scheduleWithFixedDelay(task, interval, interval, TimeUnit.MILLISECONDS));
+    }
+
+    @Override
+    public synchronized void scheduleOnce(TimerTask task, long delay)
+        throws IllegalStateException {
+      if (this.stopped) {
+        throw new IllegalStateException("Timer has been stopped.");
+      }
+      // forget tasks that already ran once, so a pet that keeps scheduling them does not leak
+      this.tasks.values().removeIf(ScheduledFuture::isDone);
+      this.tasks.put(task, this.executor.schedule(task, delay, TimeUnit.MILLISECONDS));
+    }
+
+    @Override
+    public synchronized void cancel(TimerTask task) {
+      task.cancel();
+      ScheduledFuture<?> future = this.tasks.remove(task);
+      if (future != null) {
+        future.cancel(false);
+      }
+    }
+
+    @Override
+    public synchronized void stop() {
+      this.stopped = true;
+      for (ScheduledFuture<?> task : this.tasks.values()) {
+        task.cancel(false);
+      }
+      this.tasks.clear();
+    }
+
+    @Override
+    public long getElapsedTime() {
+      return Duration.between(this.startTime, Instant.now()).getSeconds();
+    }
+  }
+}
@@ -1,15 +1,20 @@
 package virtualpet;
 
+import java.util.concurrent.CountDownLatch;
 import javax.swing.SwingUtilities;
 
 /**
  * This class represents a controller for a virtual pet game. It implements the VirtualPetController
  * interface. It contains a view and a model. It uses the view to display the game and the model to
- * update the game's state.
+ * update the game's state. The view is only updated when the model notifies the controller of a
+ * change, and then only the stats that changed since they were last shown are sent to it. All
+ * updates to the view are made on the Swing event dispatch thread.
  */
 public class SwingVirtualPetController implements VirtualPetController {
   private final VirtualPetView view;
   private final VirtualPet model;
+  private PetSnapshot shown; // the snapshot last shown in the view, only used on the EDT
+  private long shownAge;
 
   /**
    * Constructs a SwingVirtualPetController object with the given view and model.
@@ -37,37 +42,58 @@ public class SwingVirtualPetController implements VirtualPetController {
     getPetName();
 
     view.showGame();
+
+    CountDownLatch death = new CountDownLatch(1);
+    VirtualPetListener listener = new VirtualPetListener() {
+      @Override
+      public void stateChanged(VirtualPet pet) {
+        SwingUtilities.invokeLater(() -> updateViewStats());
+      }
+
+      @Override
+      public void lifeStageChanged(VirtualPet pet, PetLifeStage lifeStage) {
+        // when pet ages up, update pet display
+        SwingUtilities.invokeLater(() -> view.setPetDisplay(pet.getHealthState(), lifeStage));
+      }
+
+      @Override
+      public void died(VirtualPet pet) {
+        death.countDown();
+      }
+    };
+    model.addListener(listener);
     // resume timer/decreasing of needs
     model.pauseTimer();
 
-    view.setNameDisplay("Name: " + model.getName());
-    view.setUserDisplay("Welcome to your Virtual Pet!");
-    view.setPetDisplay(model.getHealthState(), model.getLifeStage());
-
-    int flag = 0; // flag to check if pet has aged up and display has changed
-    while (model.isAlive()) {
+    SwingUtilities.invokeLater(() -> {
+      view.setUserDisplay("Welcome to your Virtual Pet!");
+      view.setPetDisplay(model.getHealthState(), model.getLifeStage());
       updateViewStats();
+    });
 
-      // when pet ages up, update pet display
-      if (model.getLifeStage() instanceof Adult && flag == 0) {
-        SwingUtilities.invokeLater(() -> view.setPetDisplay(model.getHealthState(), model.getLifeStage()));
-        flag = 1;
-      }
-      if (model.getLifeStage() instanceof Senior && flag == 1) {
-        SwingUtilities.invokeLater(() -> view.setPetDisplay(model.getHealthState(), model.getLifeStage()));
-        flag = 2;
+    // block until the pet dies; the listener keeps the view up to date in the meantime
+    try {
+      if (model.isAlive()) {
+        death.await();
       }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return;
+    } finally {
+      model.removeListener(listener);
     }
 
     // when pet dies, update pet display and stats, and disable buttons
-    if (model.getHealthState() == Health.DEAD) {
-      view.setPetDisplay(model.getHealthState(), model.getLifeStage());
-      view.setUserDisplay(model.getName() + " has died. Game over!");
-    }
+    SwingUtilities.invokeLater(() -> {
+      PetSnapshot snapshot = model.getSnapshot();
+      if (!snapshot.isAlive()) {
+        view.setPetDisplay(snapshot.getHealthState(), snapshot.getLifeStage());
+        view.setUserDisplay(snapshot.getName() + " has died. Game over!");
+      }
 
-    view.setHealthDisplay("Health: " + model.getHealthState());
-    view.setNeedsLevels(model.getNeedLevels());
-    view.disableButtons();
+      updateViewStats();
+      view.disableButtons();
+    });
   }
 
   @Override
@@ -84,15 +110,20 @@ public class SwingVirtualPetController implements VirtualPetController {
   }
 
   /**
-   * Updates the view's stats displays to match the model's stats. Stats include the pet's age,
-   * life stage, mood, health, and need levels.
+   * Updates the view's stats displays to match the model's stats. Stats include the pet's name,
+   * age, life stage, mood, health, and need levels, all read from a single snapshot of the model
+   * so they are consistent with each other. Only the stats that changed since the last update are
+   * sent to the view. Must be called on the event dispatch thread.
    */
   private void updateViewStats() {
-    view.setAgeDisplay("Age: " + model.getAge());
-    view.setLifeStageDisplay("Life Stage: " + model.getLifeStage());
-    view.setMoodDisplay("Mood: " + model.getMoodState());
-    view.setHealthDisplay("Health: " + model.getHealthState());
-    view.setNeedsLevels(model.getNeedLevels());
+    PetSnapshot snapshot = model.getSnapshot();
+    long age = model.getAge();
+    PetStateDelta delta = PetStateDelta.between(shown, shownAge, snapshot, age);
+    shown = snapshot;
+    shownAge = age;
+    if (!delta.isEmpty()) {
+      view.applyDelta(delta);
+    }
   }
 
   @Override
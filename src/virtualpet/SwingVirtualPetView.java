@@ -215,17 +215,30 @@ public class SwingVirtualPetView extends JFrame implements VirtualPetView {
 
   @Override
   public void setNeedsLevels(HashMap<Need, Integer> levels) {
-    hungerDisplay.setString("Hunger: " + String.valueOf(levels.get(Need.HUNGER)));
-    hungerDisplay.setValue(levels.get(Need.HUNGER));
-
-    socialDisplay.setString("Social: " + String.valueOf(levels.get(Need.SOCIAL)));
-    socialDisplay.setValue(levels.get(Need.SOCIAL));
-
-    hygieneDisplay.setString("Hygiene: " + String.valueOf(levels.get(Need.HYGIENE)));
-    hygieneDisplay.setValue(levels.get(Need.HYGIENE));
+    setNeedLevel(hungerDisplay, Need.HUNGER, levels.get(Need.HUNGER));
+    setNeedLevel(socialDisplay, Need.SOCIAL, levels.get(Need.SOCIAL));
+    setNeedLevel(hygieneDisplay, Need.HYGIENE, levels.get(Need.HYGIENE));
+    setNeedLevel(energyDisplay, Need.ENERGY, levels.get(Need.ENERGY));
+  }
 
-    energyDisplay.setString("Energy: " + String.valueOf(levels.get(Need.ENERGY)));
-    energyDisplay.setValue(levels.get(Need.ENERGY));
+  @Override
+  public void setNeedLevel(Need need, int level) {
+    switch (need) {
+      case HUNGER:
+        setNeedLevel(hungerDisplay, need, level);
+        break;
+      case SOCIAL:
+        setNeedLevel(socialDisplay, need, level);
+        break;
+      case HYGIENE:
+        setNeedLevel(hygieneDisplay, need, level);
+        break;
+      case ENERGY:
+        setNeedLevel(energyDisplay, need, level);
+        break;
+      default:
+        break;
+    }
   }
 
   @Override
@@ -243,14 +256,14 @@ public class SwingVirtualPetView extends JFrame implements VirtualPetView {
     if (health == Health.DEAD) {
       petDisplay.setIcon(new ImageIcon(getClass().getResource(DEAD_GIF)));
     } else {
-      String pathToGif = gifs.get(lifeStage.toString()).get(0);
+      String pathToGif = getGifs(lifeStage).get(0);
       petDisplay.setIcon(new ImageIcon(getClass().getResource(pathToGif)));
     }
   }
 
   @Override
   public void setPetDisplayOnAction(Need need, PetLifeStage lifeStage) {
-    List<String> gifsList = gifs.get(lifeStage.toString());
+    List<String> gifsList = getGifs(lifeStage);
     switch (need) {
       case HUNGER:
         playGif(gifsList.get(1), "1", lifeStage);
@@ -297,6 +310,18 @@ public class SwingVirtualPetView extends JFrame implements VirtualPetView {
     }
   }
 
+  /**
+   * Sets the text and value of a need's progress bar.
+   *
+   * @param display the progress bar displaying the need.
+   * @param need    the need being displayed.
+   * @param level   the level of the need.
+   */
+  private void setNeedLevel(JProgressBar display, Need need, int level) {
+    display.setString(need + ": " + level);
+    display.setValue(level);
+  }
+
   /**
    * Enables the interact buttons.
    */
@@ -326,7 +351,7 @@ public class SwingVirtualPetView extends JFrame implements VirtualPetView {
         e.printStackTrace();
       }
       enableButtons();
-      String pathToCurrentGif = gifs.get(lifeStage.toString()).get(0);
+      String pathToCurrentGif = getGifs(lifeStage).get(0);
       SwingUtilities.invokeLater(() -> {
         petDisplay.setIcon(new ImageIcon(getClass().getResource(pathToCurrentGif)));
       });
@@ -339,6 +364,17 @@ public class SwingVirtualPetView extends JFrame implements VirtualPetView {
     }).start();
   }
 
+  /**
+   * Gets the gifs of a life stage. Life stages can be renamed or added in the life stage
+   * configuration, so a life stage without gifs of its own is shown with the child gifs.
+   *
+   * @param lifeStage  the life stage to get the gifs of.
+   * @return the paths to the life stage's gifs.
+   */
+  private List<String> getGifs(PetLifeStage lifeStage) {
+    return gifs.getOrDefault(lifeStage.toString(), CHILD_GIFS);
+  }
+
   /**
    * Initializes a HashMap with the life stages as keys and a list of paths to the gifs as values.
    *
@@ -0,0 +1,314 @@
+package virtualpet;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class represents a scheduler shared by many virtual pets that is built on a hashed timing
+ * wheel. It implements the GameScheduler interface. Time is divided into ticks, and tasks are
+ * kept in a ring of buckets, one per tick, so scheduling and cancelling a task take constant time
+ * no matter how many tasks are waiting, unlike the heaps used by java Timer and
+ * ScheduledThreadPoolExecutor. A single daemon thread advances the wheel one bucket per tick and
+ * runs the tasks that are due. By default the wheel covers at least PetLifeStage.INTERVAL in one
+ * revolution, so a pet's decay task always lands within one turn of the wheel.
+ */
+public class TimingWheelScheduler implements GameScheduler {
+  /**
+   * The default length of a tick, in milliseconds.
+   */
+  public static final long DEFAULT_TICK = 100;
+
+  private final long tickNanos;
+  private final long tickMillis;
+  private final Bucket[] wheel;
+  private final int mask;
+  private final Queue<Entry> pending;
+  private final Thread worker;
+  private volatile boolean shutdown;
+
+  /**
+   * Creates a new timing wheel scheduler with the default tick length and enough buckets to cover
+   * a whole PetLifeStage.INTERVAL.
+   */
+  public TimingWheelScheduler() {
+    this(DEFAULT_TICK, (int) Math.max(1, PetLifeStage.INTERVAL / DEFAULT_TICK));
+  }
+
+  /**
+   * Creates a new timing wheel scheduler with the given tick length and number of buckets. The
+   * number of buckets is rounded up to a power of two.
+   *
+   * @param tickMillis  the length of a tick, in milliseconds.
+   * @param buckets     the minimum number of buckets on the wheel.
+   * @throws IllegalArgumentException if the tick length or number of buckets is less than 1.
+   */
+  public TimingWheelScheduler(long tickMillis, int buckets) throws IllegalArgumentException {
+    if (tickMillis < 1) {
+      throw new IllegalArgumentException("Tick must be at least 1 millisecond.");
+    }
+    if (buckets < 1 || buckets > (1 << 30)) {
+      throw new IllegalArgumentException("Number of buckets must be between 1 and 2^30.");
+    }
+    int size = Integer.highestOneBit(buckets);
+    if (size < buckets) {
+      size <<= 1;
+    }
+    this.tickMillis = tickMillis;
+    this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+    this.wheel = new Bucket[size];
+    for (int i = 0; i < size; i++) {
+      this.wheel[i] = new Bucket();
+    }
+    this.mask = size - 1;
+    this.pending = new ConcurrentLinkedQueue<>();
+    this.shutdown = false;
+    this.worker = new Thread(this::turnWheel, "pet-timing-wheel");
+    this.worker.setDaemon(true);
+    this.worker.start();
+  }
+
+  @Override
+  public GameTimer newTimer() throws IllegalStateException {
+    if (this.shutdown) {
+      throw new IllegalStateException("Scheduler has been shut down.");
+    }
+    return new PetTimer();
+  }
+
+  @Override
+  public void shutdown() {
+    this.shutdown = true;
+    LockSupport.unpark(this.worker);
+  }
+
+  /**
+   * Gets the number of buckets on the wheel.
+   *
+   * @return the number of buckets on the wheel.
+   */
+  public int getWheelSize() {
+    return this.wheel.length;
+  }
+
+  /**
+   * Advances the wheel one bucket every tick until the scheduler is shut down. New tasks are
+   * handed to this thread through a queue so that only this thread ever touches the buckets.
+   */
+  private void turnWheel() {
+    long start = System.nanoTime();
+    long tick = 0;
+    while (!this.shutdown) {
+      long deadline = start + (tick + 1) * this.tickNanos;
+      long wait = deadline - System.nanoTime();
+      if (wait > 0) {
+        LockSupport.parkNanos(this, wait);
+        continue;
+      }
+      tick++;
+      addPending(tick);
+      expire(this.wheel[(int) (tick & this.mask)], tick);
+    }
+  }
+
+  /**
+   * Moves newly scheduled tasks from the queue onto the wheel.
+   *
+   * @param tick  the current tick.
+   */
+  private void addPending(long tick) {
+    for (Entry entry = this.pending.poll(); entry != null; entry = this.pending.poll()) {
+      if (!entry.cancelled) {
+        insert(entry, tick + entry.intervalTicks);
+      }
+    }
+  }
+
+  /**
+   * Adds a task to the bucket for the tick it is due.
+   *
+   * @param entry         the task to add.
+   * @param deadlineTick  the tick at which the task is due.
+   */
+  private void insert(Entry entry, long deadlineTick) {
+    entry.deadlineTick = deadlineTick;
+    this.wheel[(int) (deadlineTick & this.mask)].add(entry);
+  }
+
+  /**
+   * Runs every task in the bucket that is due at the current tick and reschedules it for its next
+   * interval. Tasks that were cancelled are dropped, also when they were cancelled while they ran,
+   * and tasks due in a later turn of the wheel are left where they are. A task that fails is
+   * reported and not run again, and the rest of the bucket still runs.
+   *
+   * @param bucket  the bucket for the current tick.
+   * @param tick    the current tick.
+   */
+  private void expire(Bucket bucket, long tick) {
+    Entry entry = bucket.head;
+    while (entry != null) {
+      Entry next = entry.next;
+      if (entry.cancelled) {
+        bucket.remove(entry);
+      } else if (entry.deadlineTick <= tick) {
+        bucket.remove(entry);
+        try {
+          entry.task.run();
+          if (!entry.repeating) {
+            entry.cancelled = true;
+          } else if (!entry.cancelled) {
+            insert(entry, tick + entry.intervalTicks);
+          }
+        } catch (Throwable e) {
+          // like ScheduledExecutorService, a task that fails is not run again
+          entry.cancelled = true;
+          System.err.println("Timing wheel dropped a task that failed: " + e);
+        }
+      }
+      entry = next;
+    }
+  }
+
+  /**
+   * A scheduled task, linked into the bucket for the tick it is next due.
+   */
+  private static class Entry {
+    private final TimerTask task;
+    private final long intervalTicks;
+    private final boolean repeating;
+    private volatile boolean cancelled;
+    private long deadlineTick;
+    private Entry prev;
+    private Entry next;
+
+    Entry(TimerTask task, long intervalTicks, boolean repeating) {
+      this.task = task;
+      this.intervalTicks = intervalTicks;
+      this.repeating = repeating;
+      this.cancelled = false;
+    }
+  }
+
+  /**
+   * A doubly linked list of the tasks in one slot of the wheel, so tasks can be added and removed
+   * in constant time.
+   */
+  private static class Bucket {
+    private Entry head;
+    private Entry tail;
+
+    void add(Entry entry) {
+      entry.prev = this.tail;
+      entry.next = null;
+      if (this.tail == null) {
+        this.head = entry;
+      } else {
+        this.tail.next = entry;
+      }
+      this.tail = entry;
+    }
+
+    void remove(Entry entry) {
+      if (entry.prev == null) {
+        this.head = entry.next;
+      } else {
+        entry.prev.next = entry.next;
+      }
+      if (entry.next == null) {
+        this.tail = entry.prev;
+      } else {
+        entry.next.prev = entry.prev;
+      }
+      entry.prev = null;
+      entry.next = null;
+    }
+  }
+
+  /**
+   * A timer for a single pet whose tasks are placed on the wheel. A scheduled task first runs
+   * once its interval has passed, rounded up to whole ticks, and then again after every interval.
+   * A task scheduled once runs when its delay has passed, rounded up to whole ticks. A task
+   * cancelled through the timer never runs again, even when it cancels itself while it runs, and
+   * its entry is dropped the next time the wheel reaches its bucket, within one turn of the wheel.
+   * TimerTask offers no way to tell that it was cancelled, so a task must be cancelled through the
+   * timer to stop it.
+   */
+  private class PetTimer implements GameTimer {
+    private final Instant startTime;
+    private final Map<TimerTask, Entry> tasks;
+    private boolean stopped;
+
+    PetTimer() {
+      this.startTime = Instant.now();
+      this.tasks = new HashMap<>(2);
+      this.stopped = false;
+    }
+
+    @Override
+    public synchronized void scheduleTask(TimerTask task, long interval)
+        throws IllegalArgumentException, IllegalStateException {
+      if (task == null) {
+        throw new IllegalArgumentException("Task cannot be null.");
+      }
+      if (interval <= 0) {
+        throw new IllegalArgumentException("Interval must be positive.");
+      }
+      if (this.stopped || shutdown) {
+        throw new IllegalStateException("Timer has been stopped.");
+      }
+      long intervalTicks = Math.max(1, (interval + tickMillis - 1) / tickMillis);
+      Entry entry = new Entry(task, intervalTicks, true);
+      this.tasks.put(task, entry);
+      pending.add(entry);
+    }
+
+    @Override
+    public synchronized void scheduleOnce(TimerTask task, long delay)
+        throws IllegalArgumentException, IllegalStateException {
+      if (task == null) {
+        throw new IllegalArgumentException("Task cannot be null.");
+      }
+      if (delay < 0) {
+        throw new IllegalArgumentException("Delay cannot be negative.");
+      }
+      if (this.stopped || shutdown) {
+        throw new IllegalStateException("Timer has been stopped.");
+      }
+      // forget tasks that already ran once, so a pet that keeps scheduling them does not leak
+      this.tasks.values().removeIf(entry -> entry.cancelled);
+      long delayTicks = Math.max(1, (delay + tickMillis - 1) / tickMillis);
+      Entry entry = new Entry(task, delayTicks, false);
+      this.tasks.put(task, entry);
+      pending.add(entry);
+    }
+
+    @Override
+    public synchronized void cancel(TimerTask task) {
+      task.cancel();
+      Entry entry = this.tasks.remove(task);
+      if (entry != null) {
+        entry.cancelled = true;
+      }
+    }
+
+    @Override
+    public synchronized void stop() {
+      this.stopped = true;
+      for (Entry entry : this.tasks.values()) {
+        entry.cancelled = true;
+      }
+      this.tasks.clear();
+    }
+
+    @Override
+    public long getElapsedTime() {
+      return Duration.between(this.startTime, Instant.now()).getSeconds();
+    }
+  }
+}
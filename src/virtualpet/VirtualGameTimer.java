@@ -0,0 +1,211 @@
+package virtualpet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.TimerTask;
+import java.util.function.BooleanSupplier;
+
+/**
+ * This class represents a timer for the game that runs on virtual time instead of the system
+ * clock. It implements the GameTimer interface. Time only passes when the timer is advanced, at
+ * which point every task that falls due is run, in order, on the thread advancing the timer. This
+ * allows a pet's whole life to be simulated deterministically and as fast as the tasks can run.
+ * A scheduled task first runs once its interval has passed, and then again after every interval.
+ * A task scheduled once runs when its delay has passed, and is then dropped. Tasks run without the
+ * timer's lock held, so a task may schedule or cancel tasks, itself included, and a pet's lock is
+ * never taken inside the timer's. TimerTask offers no way to tell that it was cancelled, so a task
+ * must be cancelled through the timer to stop it.
+ */
+public class VirtualGameTimer implements GameTimer {
+  private final PriorityQueue<ScheduledTask> tasks;
+  private final List<ScheduledTask> running; // taken off the queue, and not yet put back
+  private long currentTime; // in milliseconds
+  private long scheduled; // number of tasks ever scheduled, to keep tasks due together in order
+  private boolean stopped;
+
+  /**
+   * Creates a new virtual timer, starting at time 0.
+   */
+  public VirtualGameTimer() {
+    this.tasks = new PriorityQueue<>();
+    this.running = new ArrayList<>();
+    this.currentTime = 0;
+    this.scheduled = 0;
+    this.stopped = false;
+  }
+
+  @Override
+  public synchronized void scheduleTask(TimerTask task, long interval)
+      throws IllegalArgumentException, IllegalStateException {
+    if (task == null) {
+      throw new IllegalArgumentException("Task cannot be null.");
+    }
+    if (interval <= 0) {
+      throw new IllegalArgumentException("Interval must be positive.");
+    }
+    if (this.stopped) {
+      throw new IllegalStateException("Timer has been stopped.");
+    }
+    this.tasks.add(new ScheduledTask(task, interval, this.currentTime + interval, this.scheduled++));
+  }
+
+  @Override
+  public synchronized void scheduleOnce(TimerTask task, long delay)
+      throws IllegalArgumentException, IllegalStateException {
+    if (task == null) {
+      throw new IllegalArgumentException("Task cannot be null.");
+    }
+    if (delay < 0) {
+      throw new IllegalArgumentException("Delay cannot be negative.");
+    }
+    if (this.stopped) {
+      throw new IllegalStateException("Timer has been stopped.");
+    }
+    this.tasks.add(new ScheduledTask(task, 0, this.currentTime + delay, this.scheduled++));
+  }
+
+  @Override
+  public synchronized void cancel(TimerTask task) {
+    task.cancel();
+    this.tasks.removeIf(scheduled -> scheduled.task == task);
+    for (ScheduledTask scheduled : this.running) {
+      if (scheduled.task == task) {
+        scheduled.cancelled = true;
+      }
+    }
+  }
+
+  @Override
+  public synchronized void stop() {
+    this.stopped = true;
+    this.tasks.clear();
+  }
+
+  @Override
+  public synchronized long getElapsedTime() {
+    return this.currentTime / 1000;
+  }
+
+  /**
+   * Advances virtual time by the given number of milliseconds, running every task that falls due
+   * along the way.
+   *
+   * @param millis  the number of milliseconds to advance by.
+   * @throws IllegalArgumentException if the number of milliseconds is negative.
+   */
+  public void advance(long millis) throws IllegalArgumentException {
+    if (millis < 0) {
+      throw new IllegalArgumentException("Cannot advance by a negative amount of time.");
+    }
+    long target;
+    synchronized (this) {
+      target = this.currentTime + millis;
+    }
+    while (runNext(target)) {
+      // every task due by the target runs in turn
+    }
+    moveTo(target);
+  }
+
+  /**
+   * Advances virtual time one task at a time until the given condition holds, or until the given
+   * number of milliseconds have passed, whichever comes first. The condition is checked before
+   * anything runs and after every task.
+   *
+   * @param condition  the condition to wait for.
+   * @param maxMillis  the maximum number of milliseconds to advance by.
+   * @return true if the condition holds, false if the time ran out first.
+   * @throws IllegalArgumentException if the condition is null or the number of milliseconds is
+   *                                  negative.
+   */
+  public boolean advanceUntil(BooleanSupplier condition, long maxMillis)
+      throws IllegalArgumentException {
+    if (condition == null) {
+      throw new IllegalArgumentException("Condition cannot be null.");
+    }
+    if (maxMillis < 0) {
+      throw new IllegalArgumentException("Cannot advance by a negative amount of time.");
+    }
+    long target;
+    synchronized (this) {
+      target = this.currentTime + maxMillis;
+    }
+    while (!condition.getAsBoolean()) {
+      if (!runNext(target)) {
+        moveTo(target);
+        return condition.getAsBoolean();
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Moves the current time to the earliest task due by a given time and runs it, rescheduling it
+   * for its next interval unless it was scheduled once, it was cancelled, or the timer was stopped
+   * while it ran. The task is taken off the queue under the timer's lock, but run outside it.
+   *
+   * @param target  the time the task must be due by, in milliseconds.
+   * @return true if a task ran, false if none was due.
+   */
+  private boolean runNext(long target) {
+    ScheduledTask next;
+    synchronized (this) {
+      if (this.tasks.isEmpty() || this.tasks.peek().nextRun > target) {
+        return false;
+      }
+      next = this.tasks.poll();
+      this.currentTime = Math.max(this.currentTime, next.nextRun);
+      this.running.add(next);
+    }
+    boolean ran = false;
+    try {
+      next.task.run();
+      ran = true;
+    } finally {
+      synchronized (this) {
+        this.running.remove(next);
+        if (ran && !this.stopped && !next.cancelled && next.interval > 0) {
+          next.nextRun += next.interval;
+          this.tasks.add(next);
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Moves the current time forward to a given time, unless it is already past it.
+   *
+   * @param target  the time to move to, in milliseconds.
+   */
+  private synchronized void moveTo(long target) {
+    this.currentTime = Math.max(this.currentTime, target);
+  }
+
+  /**
+   * A task waiting in the timer's queue, ordered by the time it should next run.
+   */
+  private static class ScheduledTask implements Comparable<ScheduledTask> {
+    private final TimerTask task;
+    private final long interval; // 0 for a task that runs once
+    private final long order;
+    private long nextRun;
+    private boolean cancelled; // cancelled while it ran, so it is not put back
+
+    ScheduledTask(TimerTask task, long interval, long nextRun, long order) {
+      this.task = task;
+      this.interval = interval;
+      this.nextRun = nextRun;
+      this.order = order;
+    }
+
+    @Override
+    public int compareTo(ScheduledTask other) {
+      if (this.nextRun != other.nextRun) {
+        return Long.compare(this.nextRun, other.nextRun);
+      }
+      return Long.compare(this.order, other.order);
+    }
+  }
+}
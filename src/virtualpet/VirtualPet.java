@@ -74,6 +74,23 @@ public interface VirtualPet {
    */
   HashMap<Need, Integer> getNeedLevels();
 
+  /**
+   * Copies the pet's current need levels into the given array, indexed by each need's ordinal.
+   * Unlike getNeedLevels(), no new objects are created, so this can be called as often as needed.
+   *
+   * @param levels  the array to fill, at least as long as the number of needs.
+   * @throws IllegalArgumentException if the array is null or too short.
+   */
+  void copyNeedLevels(int[] levels) throws IllegalArgumentException;
+
+  /**
+   * Get a snapshot of the pet's current state. All the values in a snapshot were taken at the same
+   * moment, so they are consistent with each other even while the pet is changing.
+   *
+   * @return a snapshot of the pet's current state.
+   */
+  PetSnapshot getSnapshot();
+
   /**
    * Interact with the pet (feed, play, clean, or put to sleep). Throws an IllegalStateException
    * if the pet is dead and an IllegalArgumentException if the need is invalid or already full.
@@ -82,6 +99,17 @@ public interface VirtualPet {
    */
   void interact(Need need) throws IllegalStateException, IllegalArgumentException;
 
+  /**
+   * Interact with the pet several times at once, applying the needs in order and then updating
+   * the pet's mood, health, and life stage and notifying its listeners only once. An interaction
+   * that is not possible is skipped instead of throwing, and its result says why.
+   *
+   * @param needs  the needs corresponding with the desired interactions.
+   * @return the result of each interaction, in the same order as the needs.
+   * @throws IllegalArgumentException if the array of needs is null.
+   */
+  InteractionResult[] interactAll(Need... needs) throws IllegalArgumentException;
+
   /**
    * Updates the mood, health, and life stage of the virtual pet.
    */
@@ -99,6 +127,22 @@ public interface VirtualPet {
    */
   void pauseTimer();
 
+  /**
+   * Registers a listener to be notified whenever the pet's state changes, when it grows into a
+   * new life stage, and when it dies.
+   *
+   * @param listener  the listener to register.
+   * @throws IllegalArgumentException if the listener is null.
+   */
+  void addListener(VirtualPetListener listener) throws IllegalArgumentException;
+
+  /**
+   * Unregisters a listener so it is no longer notified of changes to the pet.
+   *
+   * @param listener  the listener to unregister.
+   */
+  void removeListener(VirtualPetListener listener);
+
   /**
    * Returns a string representation of the pet. Provides the pet's name, its current mood and
    * health states, and its need levels.
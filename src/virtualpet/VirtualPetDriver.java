@@ -5,27 +5,29 @@ package virtualpet;
  * creation of new game, displaying stats, how needs decrease over time and increase upon
  * interaction, how the virtual pet grows into a new life stage after a certain amount of time
  * has passed, how needs decrease and increase differently upon entering a new life stage,
- * and dies when neglected and needs hit 0.
+ * and dies when neglected and needs hit 0. Passing "--virtual" as an argument runs the demonstration
+ * on a VirtualGameTimer, so it completes immediately instead of taking minutes.
  */
 public class VirtualPetDriver {
 
   /**
    * Driver for virtual pet game.
    *
-   * @param args  command-line arguments
+   * @param args  command-line arguments, "--virtual" to simulate the passing of time
    * @throws InterruptedException from running Thread.sleep, if any threads interrupt the currently
    *                              running thread
    */
   public static void main(String[] args) throws InterruptedException {
     // Create game timer and new pet
-    GameTimer timer = new GameTimerImpl();
+    boolean virtual = args.length > 0 && "--virtual".equals(args[0]);
+    GameTimer timer = virtual ? new VirtualGameTimer() : new GameTimerImpl();
     VirtualPet pet = new VirtualPetImpl("Jack", timer);
 
     // Display initial pet stats
     System.out.println(pet);
 
     // Wait for 5 seconds for first need decrease
-    Thread.sleep(5000);
+    waitFor(timer, 5000);
 
     // Display updated pet stats
     System.out.println("After 5 seconds:");
@@ -53,12 +55,12 @@ public class VirtualPetDriver {
     System.out.println(pet);
 
     // Wait for 20 seconds for needs to decrease
-    Thread.sleep(20000);
+    waitFor(timer, 20000);
     // Neglecting the pet's needs leads to mood changes and health deterioration
     System.out.println("After 20 seconds");
     System.out.println(
         pet.getName() + " is " + pet.getMoodState().toString().toLowerCase() + "!\n");
-    Thread.sleep(10000);
+    waitFor(timer, 10000);
     System.out.println("After 10 seconds");
     System.out.println(
         pet.getName() + " is " + pet.getHealthState().toString().toLowerCase() + "!\n");
@@ -75,10 +77,10 @@ public class VirtualPetDriver {
     System.out.println(pet);
 
     // Simulate game play up to 2 minutes so the pet can grow up to an adult
-    Thread.sleep(1000);
+    waitFor(timer, 1000);
     for (int i = 0; i < 17; i++) {
       // Let time pass and needs decrease
-      Thread.sleep(5000);
+      waitFor(timer, 5000);
       System.out.println("\nAfter 5 seconds");
       System.out.println(pet);
 
@@ -98,7 +100,7 @@ public class VirtualPetDriver {
 
     // Increase and decrease of needs are now at different rates due to different life stage
     // Wait for 5 seconds for needs to decrease
-    Thread.sleep(5000);
+    waitFor(timer, 5000);
     System.out.println("\nAfter 5 seconds");
     System.out.println(pet);
 
@@ -121,7 +123,7 @@ public class VirtualPetDriver {
 
     // Neglecting pet leads to death and game over
     while (pet.isAlive()) {
-      Thread.sleep(5000);
+      waitFor(timer, 5000);
       System.out.println("\n5 seconds...");
     }
     if (!pet.isAlive()) {
@@ -129,4 +131,19 @@ public class VirtualPetDriver {
     }
     System.out.println(pet);
   }
+
+  /**
+   * Lets the given amount of time pass, either by advancing a virtual timer or by sleeping.
+   *
+   * @param timer   the timer used by the pet.
+   * @param millis  the number of milliseconds to let pass.
+   * @throws InterruptedException if the current thread is interrupted while sleeping.
+   */
+  private static void waitFor(GameTimer timer, long millis) throws InterruptedException {
+    if (timer instanceof VirtualGameTimer) {
+      ((VirtualGameTimer) timer).advance(millis);
+    } else {
+      Thread.sleep(millis);
+    }
+  }
 }
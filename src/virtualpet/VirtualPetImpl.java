@@ -1,7 +1,12 @@
 package virtualpet;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * This class represents a virtual pet. It implements the VirtualPet interface. A virtual pet
@@ -11,17 +16,39 @@ import java.util.TimerTask;
  * when the pet is interacted with. If one of the need levels hits 0, then the pet dies and the
  * game is over. If the pet is healthy and happy, then when the appropriate amount of time has
  * passed, the pet grows and enters a new life stage. It uses PetLifeStage for the life stage and
- * GameTimer to keep track of time and schedule the pet's needs to decrease over time.
+ * GameTimer to keep track of time and schedule the pet's needs to decrease over time. The life
+ * stages, rates, thresholds and growth ages come from LifeStageConfig, and the pet switches to
+ * newly loaded ones the next time it changes. Registered VirtualPetListeners are notified after
+ * every update. Changes are made while holding the pet's lock and are published as an immutable
+ * PetSnapshot, which readers use without locking, so they always see a consistent state even while
+ * the timer is changing it. In the lazy decay mode, no task is scheduled; instead, the decreases
+ * that are due are applied whenever the pet is read or interacted with, in time proportional to the
+ * number of life stages rather than the number of intervals that have passed.
  */
 public class VirtualPetImpl implements VirtualPet {
+  /**
+   * All the needs of a pet, cached so iterating over them does not copy the enum's values.
+   */
+  private static final Need[] NEEDS = Need.values();
+
+  // the pet's state is only changed while holding the pet's lock, and every change is followed by
+  // publishing a new snapshot, which is all that readers look at
+  private volatile PetSnapshot snapshot;
   private String name;
   private Mood moodState;
   private Health healthState;
   private int health;
-  private PetLifeStage lifeStage;
-  private final HashMap<Need, Integer> needLevels;
+  private PetRules rules; // replaced by the current rules at the next change
+  private int lifeStage; // index of the life stage in the rules
+  private final NeedLevels needLevels;
   private final GameTimer timer;
   private TimerTask timedDecrease;
+  private final List<VirtualPetListener> listeners;
+  private volatile ConflatingPublisher<VirtualPet, PetSnapshot> changes; // created on first use
+  private final DecayMode decayMode;
+  private long decayedIntervals; // the intervals since creation already accounted for
+  private TimerTask wakeup; // in predictive mode, runs at the next predicted change
+  private long wakeupInterval; // the interval the wakeup is due at
   private boolean running;
 
   /**
@@ -33,31 +60,127 @@ public class VirtualPetImpl implements VirtualPet {
    * @throws IllegalArgumentException if either the name or the timer is null.
    */
   public VirtualPetImpl(String name, GameTimer timer) throws IllegalArgumentException {
+    this(name, timer, DecayMode.SCHEDULED);
+  }
+
+  /**
+   * Creates a new virtual pet whose needs decrease over time in the given decay mode. It
+   * initializes the pet's name, mood state, health state, life stage, and need levels.
+   *
+   * @param name       the name of the pet.
+   * @param timer      the timer used to keep track of time.
+   * @param decayMode  how the pet's needs decrease over time.
+   * @throws IllegalArgumentException if the name, the timer, or the decay mode is null.
+   */
+  public VirtualPetImpl(String name, GameTimer timer, DecayMode decayMode)
+      throws IllegalArgumentException {
+    this(decayMode, name, timer);
+    this.publish();
+    if (decayMode == DecayMode.SCHEDULED) {
+      decreaseNeedsOverTime();
+    } else {
+      synchronized (this) {
+        this.scheduleWakeup();
+      }
+    }
+  }
+
+  /**
+   * Initializes a new pet's fields without publishing it or starting its needs decreasing.
+   *
+   * @param decayMode  how the pet's needs decrease over time.
+   * @param name       the name of the pet.
+   * @param timer      the timer used to keep track of time.
+   * @throws IllegalArgumentException if the name, the timer, or the decay mode is null.
+   */
+  private VirtualPetImpl(DecayMode decayMode, String name, GameTimer timer)
+      throws IllegalArgumentException {
     if (name == null) {
       throw new IllegalArgumentException("Name cannot be null.");
     }
     if (timer == null) {
       throw new IllegalArgumentException("Timer cannot be null.");
     }
+    if (decayMode == null) {
+      throw new IllegalArgumentException("Decay mode cannot be null.");
+    }
     this.name = name;
     this.moodState = Mood.HAPPY;
     this.healthState = Health.HEALTHY;
     this.health = 100;
-    this.lifeStage = new Child();
-    this.needLevels = initializeNeedLevels();
+    this.rules = LifeStageConfig.current();
+    this.lifeStage = 0;
+    this.needLevels = new NeedLevels(NEEDS.length, 100, this.rules.sadLevel());
     this.timer = timer;
+    this.listeners = new CopyOnWriteArrayList<>();
+    this.decayMode = decayMode;
+    this.decayedIntervals = 0;
     this.running = true;
-    decreaseNeedsOverTime();
+  }
+
+  /**
+   * Restores a pet saved in a population file. The pet's mood and health state are worked out
+   * again from its need levels, and it catches up on the decreases of the intervals its timer has
+   * run for since it was saved.
+   *
+   * @param saved      the pet's saved state.
+   * @param timer      the timer used to keep track of time, whose elapsed time is the pet's age.
+   * @param savedAge   the pet's age when it was saved, in seconds.
+   * @param decayMode  how the pet's needs decrease over time, lazy or predictive.
+   * @throws IllegalArgumentException if the timer is null, or the decay mode is not lazy or
+   *                                  predictive.
+   */
+  VirtualPetImpl(PopulationFile.Record saved, GameTimer timer, long savedAge,
+      DecayMode decayMode) throws IllegalArgumentException {
+    this(decayMode, saved.name, timer);
+    if (decayMode == DecayMode.SCHEDULED) {
+      throw new IllegalArgumentException("Restored pets must decay lazily or predictively.");
+    }
+    synchronized (this) {
+      this.lifeStage = Math.min(saved.lifeStage, this.rules.lifeStageCount() - 1);
+      this.needLevels.setAll(saved.needLevels);
+      this.decayedIntervals = savedAge * 1000 / PetLifeStage.INTERVAL;
+      this.running = !saved.paused;
+      this.updateMood();
+      this.updateHealth();
+      this.catchUp();
+      this.publish();
+      this.scheduleWakeup();
+    }
+  }
+
+  /**
+   * Gets a publisher of the pet's snapshots, one for each change. Each subscriber waits for at
+   * most one snapshot, the latest, so a slow subscriber skips the snapshots in between instead
+   * of slowing the pet down. Snapshots are delivered on the common fork-join pool.
+   *
+   * @return the publisher of the pet's changes.
+   */
+  public Flow.Publisher<PetSnapshot> getChanges() {
+    ConflatingPublisher<VirtualPet, PetSnapshot> changes = this.changes;
+    if (changes == null) {
+      synchronized (this) {
+        changes = this.changes;
+        if (changes == null) {
+          changes = new ConflatingPublisher<>(ForkJoinPool.commonPool(), 1);
+          this.changes = changes;
+        }
+      }
+    }
+    return changes;
   }
 
   @Override
   public void setName(String name) {
-    this.name = name;
+    synchronized (this) {
+      this.name = name;
+      this.publish();
+    }
   }
 
   @Override
   public String getName() {
-    return this.name;
+    return this.snapshot.getName();
   }
 
   @Override
@@ -67,95 +190,283 @@ public class VirtualPetImpl implements VirtualPet {
 
   @Override
   public Mood getMoodState() {
-    return this.moodState;
+    return this.current().getMoodState();
   }
 
   @Override
   public Health getHealthState() {
-    return this.healthState;
+    return this.current().getHealthState();
   }
 
   @Override
   public int getHealth() {
-    return this.health;
+    return this.current().getHealth();
   }
 
   @Override
   public PetLifeStage getLifeStage() {
-    return this.lifeStage;
+    return this.current().getLifeStage();
   }
 
   @Override
   public HashMap<Need, Integer> getNeedLevels() {
-    return new HashMap<>(this.needLevels);
+    return this.current().getNeedLevels();
+  }
+
+  @Override
+  public void copyNeedLevels(int[] levels) throws IllegalArgumentException {
+    this.current().copyNeedLevels(levels);
+  }
+
+  @Override
+  public PetSnapshot getSnapshot() {
+    return this.current();
   }
 
   @Override
   public void interact(Need need) throws IllegalStateException, IllegalArgumentException {
-    if (this.getHealthState() == Health.DEAD) {
+    PetSnapshot before;
+    PetSnapshot after = null;
+    InteractionResult result;
+    synchronized (this) {
+      this.refreshRules();
+      boolean caughtUp = this.catchUp();
+      before = this.snapshot;
+      result = this.apply(need);
+      // even a refused interaction publishes the decreases it caught up on, such as a death
+      if (result == InteractionResult.APPLIED || caughtUp) {
+        this.recompute();
+        after = this.publish();
+        this.scheduleWakeup();
+      }
+    }
+    if (after != null) {
+      this.notifyListeners(before, after);
+    }
+    if (result == InteractionResult.PET_DEAD) {
       throw new IllegalStateException("The pet is dead.");
-    } else if (need == null || !this.needLevels.containsKey(need)) {
+    } else if (result == InteractionResult.INVALID_NEED) {
       throw new IllegalArgumentException("Invalid need.");
-    } else if (this.needLevels.get(need) == 100) {
+    } else if (result == InteractionResult.NEED_FULL) {
       throw new IllegalArgumentException("Need level is already full.");
     }
-    int increasedLevel = this.lifeStage.increaseNeed(need, this.needLevels.get(need));
-    this.needLevels.replace(need, increasedLevel);
-    this.update();
+  }
+
+  @Override
+  public InteractionResult[] interactAll(Need... needs) throws IllegalArgumentException {
+    if (needs == null) {
+      throw new IllegalArgumentException("Needs cannot be null.");
+    }
+    InteractionResult[] results = new InteractionResult[needs.length];
+    PetSnapshot before;
+    PetSnapshot after;
+    synchronized (this) {
+      this.refreshRules();
+      this.catchUp();
+      before = this.snapshot;
+      for (int i = 0; i < needs.length; i++) {
+        results[i] = this.apply(needs[i]);
+      }
+      this.recompute();
+      after = this.publish();
+      this.scheduleWakeup();
+    }
+    this.notifyListeners(before, after);
+    return results;
   }
 
   @Override
   public void update() {
-    this.updateMood();
-    this.updateHealth();
-    this.updateLifeStage();
+    PetSnapshot before;
+    PetSnapshot after;
+    synchronized (this) {
+      this.refreshRules();
+      this.catchUp();
+      before = this.snapshot;
+      this.recompute();
+      after = this.publish();
+      this.scheduleWakeup();
+    }
+    this.notifyListeners(before, after);
   }
 
   @Override
   public boolean isAlive() {
-    return this.healthState != Health.DEAD;
+    return this.current().isAlive();
   }
 
   @Override
   public void pauseTimer() {
-    if (running) {
-      this.running = false;
-    } else {
-      this.running = true;
+    PetSnapshot before;
+    PetSnapshot after;
+    synchronized (this) {
+      before = this.snapshot;
+      // intervals that pass while paused are skipped, so account for the ones before pausing first
+      boolean changed = this.catchUp();
+      this.running = !this.running;
+      this.scheduleWakeup();
+      if (!changed) {
+        return;
+      }
+      after = this.publish();
+    }
+    this.notifyListeners(before, after);
+  }
+
+  /**
+   * Predicts when the pet's mood, health, and life stage will next change if it is left alone,
+   * from its need levels and the decrease rates of its life stage.
+   *
+   * @return a forecast of the pet's next changes.
+   */
+  public PetForecast getForecast() {
+    this.current();
+    synchronized (this) {
+      return this.forecast();
+    }
+  }
+
+  @Override
+  public void addListener(VirtualPetListener listener) throws IllegalArgumentException {
+    if (listener == null) {
+      throw new IllegalArgumentException("Listener cannot be null.");
     }
+    this.listeners.add(listener);
+  }
+
+  @Override
+  public void removeListener(VirtualPetListener listener) {
+    this.listeners.remove(listener);
   }
 
   @Override
   public String toString() {
+    PetSnapshot current = this.current();
     StringBuilder needs = new StringBuilder();
-    needs.append(Need.HUNGER).append(": ").append(this.needLevels.get(Need.HUNGER))
-        .append("\n");
-    needs.append(Need.SOCIAL).append(": ").append(this.needLevels.get(Need.SOCIAL))
-        .append("\n");
-    needs.append(Need.HYGIENE).append(": ").append(this.needLevels.get(Need.HYGIENE))
-        .append("\n");
-    needs.append(Need.ENERGY).append(": ").append(this.needLevels.get(Need.ENERGY))
-        .append("\n");
-
-    return "Name: " + this.name + "\n"
+    for (Need need : NEEDS) {
+      needs.append(need).append(": ").append(current.getNeedLevel(need)).append("\n");
+    }
+
+    return "Name: " + current.getName() + "\n"
         + "Age: " + this.getAge() + "\n"
-        + "Mood: " + this.moodState.toString() + "\n"
-        + "Health: " + this.healthState.toString() + "\n"
-        + "Life Stage: " + this.lifeStage.toString() + "\n"
+        + "Mood: " + current.getMoodState().toString() + "\n"
+        + "Health: " + current.getHealthState().toString() + "\n"
+        + "Life Stage: " + current.getLifeStage().toString() + "\n"
         + "Need Levels:\n" + needs;
   }
 
   /**
-   * Creates a HashMap with all the pet's needs and initializes their levels to 100.
+   * Gets the pet's current snapshot. In the lazy and predictive decay modes, the decreases that
+   * are due are applied first, and a new snapshot is published if anything changed.
+   *
+   * @return the pet's current snapshot.
+   */
+  private PetSnapshot current() {
+    if (this.decayMode == DecayMode.SCHEDULED) {
+      return this.snapshot;
+    }
+    PetSnapshot before;
+    PetSnapshot after;
+    synchronized (this) {
+      before = this.snapshot;
+      if (!this.catchUp()) {
+        return before;
+      }
+      after = this.publish();
+    }
+    this.notifyListeners(before, after);
+    return after;
+  }
+
+  /**
+   * Publishes a new snapshot of the pet's state. Must be called while holding the pet's lock,
+   * after every change to its state.
+   *
+   * @return the new snapshot.
+   */
+  private PetSnapshot publish() {
+    this.snapshot = new PetSnapshot(this.name, this.moodState, this.healthState, this.health,
+        this.lifeStage(), this.needLevels.toArray());
+    return this.snapshot;
+  }
+
+  /**
+   * Increases the level of a need by the rate of the pet's life stage, if the pet is alive and
+   * the need is not full, without updating the pet's mood, health, or life stage. Must be called
+   * while holding the pet's lock.
+   *
+   * @param need  the need corresponding with the desired interaction.
+   * @return whether the need was increased, or why not.
+   */
+  private InteractionResult apply(Need need) {
+    if (this.healthState == Health.DEAD) {
+      return InteractionResult.PET_DEAD;
+    } else if (need == null) {
+      return InteractionResult.INVALID_NEED;
+    }
+    int i = need.ordinal();
+    if (this.needLevels.get(i) == 100) {
+      return InteractionResult.NEED_FULL;
+    }
+    this.needLevels.set(i, this.lifeStage().increaseNeed(i, this.needLevels.get(i)));
+    return InteractionResult.APPLIED;
+  }
+
+  /**
+   * Updates the mood, health, and life stage of the pet from its need levels. Must be called
+   * while holding the pet's lock.
+   */
+  private void recompute() {
+    this.updateMood();
+    this.updateHealth();
+    this.updateLifeStage();
+  }
+
+  /**
+   * Notifies the registered listeners that the pet has been updated, and whether it grew or died,
+   * and publishes the new snapshot to the subscribers of the pet's changes.
+   * Must not be called while holding the pet's lock.
+   *
+   * @param before  the pet's snapshot before the update.
+   * @param after   the pet's snapshot after the update.
+   */
+  private void notifyListeners(PetSnapshot before, PetSnapshot after) {
+    for (VirtualPetListener listener : this.listeners) {
+      listener.stateChanged(this);
+      if (after.getLifeStage() != before.getLifeStage()) {
+        listener.lifeStageChanged(this, after.getLifeStage());
+      }
+      if (before.isAlive() && !after.isAlive()) {
+        listener.died(this);
+      }
+    }
+    ConflatingPublisher<VirtualPet, PetSnapshot> changes = this.changes;
+    if (changes != null && changes.hasSubscribers()) {
+      changes.offer(this, after);
+    }
+  }
+
+  /**
+   * Gets the pet's life stage from the rules in use.
    *
-   * @return a HashMap with all the needs and their corresponding levels.
+   * @return the pet's life stage.
    */
-  private HashMap<Need, Integer> initializeNeedLevels() {
-    HashMap<Need, Integer> needLevels = new HashMap<>();
-    for (Need need : Need.values()) {
-      needLevels.put(need, 100);
+  private PetLifeStage lifeStage() {
+    return this.rules.lifeStage(this.lifeStage);
+  }
+
+  /**
+   * Switches the pet to the current rules if they were replaced since the pet last changed. The
+   * pet keeps its life stage, or moves to the last one if the new rules have fewer. Must be called
+   * while holding the pet's lock.
+   */
+  private void refreshRules() {
+    PetRules current = LifeStageConfig.current();
+    if (current != this.rules) {
+      this.rules = current;
+      this.lifeStage = Math.min(this.lifeStage, current.lifeStageCount() - 1);
+      this.needLevels.setSadLevel(current.sadLevel());
     }
-    return needLevels;
   }
 
   /**
@@ -165,60 +476,298 @@ public class VirtualPetImpl implements VirtualPet {
     TimerTask task = new TimerTask() {
       @Override
       public void run() {
-        if (running) {
-          for (Need need : needLevels.keySet()) {
-            int decreasedLevel = lifeStage.decreaseNeed(need, needLevels.get(need));
-            needLevels.replace(need, decreasedLevel);
+        PetSnapshot before;
+        PetSnapshot after;
+        synchronized (VirtualPetImpl.this) {
+          decayedIntervals++;
+          if (!running) {
+            return;
           }
-          update();
+          before = snapshot;
+          refreshRules();
+          needLevels.decrease(lifeStage());
+          recompute();
+          after = publish();
         }
+        notifyListeners(before, after);
       }
     };
-    this.timer.scheduleTask(task, lifeStage.getInterval());
+    this.timer.scheduleTask(task, lifeStage().getInterval());
   }
 
   /**
-   * Updates the mood state of the virtual pet. If any of the pet's needs drop below 75, then the
-   * pet's mood changes to correspond with the need with the lowest level. If more than one of
-   * the needs hits 25 or below, then the pet is sad. Otherwise, the pet is happy.
+   * In the lazy and predictive decay modes, applies the decreases of every interval that has passed
+   * since the pet was last read. Within a life stage, the levels after any number of intervals
+   * follow directly from the stage's rates, so instead of replaying the intervals one by one, this
+   * jumps straight to whichever comes first: the end of the elapsed time, the interval at which a
+   * need hits 0 and the pet dies, or the interval at which the pet grows into its next life stage
+   * and the rates change. Intervals that pass while the pet is paused or dead are skipped. Must be
+   * called while holding the pet's lock.
+   *
+   * @return true if any decreases were applied, false otherwise.
    */
-  private void updateMood() {
-    int numNeedsBelow25 = 0;
-    Need minNeed = null;
+  private boolean catchUp() {
+    if (this.decayMode == DecayMode.SCHEDULED) {
+      return false;
+    }
+    this.refreshRules();
+    long now = this.timer.getElapsedTime() * 1000 / PetLifeStage.INTERVAL;
+    if (now <= this.decayedIntervals) {
+      return false;
+    }
+    if (!this.running || this.healthState == Health.DEAD) {
+      this.decayedIntervals = now;
+      return false;
+    }
+
+    while (this.decayedIntervals < now && this.healthState != Health.DEAD) {
+      long untilGrowth = intervalsUntilGrowth();
+      long intervals = Math.min(now - this.decayedIntervals,
+          Math.min(intervalsUntilEmpty(), untilGrowth));
+      PetLifeStage stage = this.lifeStage();
+      for (Need need : NEEDS) {
+        int i = need.ordinal();
+        long decrease = intervals * stage.getDecreaseRate(need);
+        this.needLevels.set(i, (int) Math.max(this.needLevels.get(i) - decrease, 0));
+      }
+      this.decayedIntervals += intervals;
+      this.updateMood();
+      this.updateHealth();
+      if (intervals == untilGrowth && this.healthState != Health.DEAD) {
+        this.lifeStage++;
+      }
+    }
+    this.decayedIntervals = now;
+    return true;
+  }
+
+  /**
+   * In the predictive decay mode, schedules the pet to wake up at its next predicted change,
+   * replacing any wakeup scheduled before. Nothing is scheduled while the pet is paused or dead,
+   * or if nothing will change. Must be called while holding the pet's lock, after the pet has
+   * caught up.
+   */
+  private void scheduleWakeup() {
+    if (this.decayMode != DecayMode.PREDICTIVE) {
+      return;
+    }
+    long next = !this.running || this.healthState == Health.DEAD
+        ? Long.MAX_VALUE : this.forecast().getIntervalsUntilNextChange();
+    long target = next == Long.MAX_VALUE ? -1 : this.decayedIntervals + next;
+    if (this.wakeup != null && target == this.wakeupInterval) {
+      return;
+    }
+    if (this.wakeup != null) {
+      this.timer.cancel(this.wakeup);
+      this.wakeup = null;
+    }
+    if (target < 0) {
+      return;
+    }
+    TimerTask task = new TimerTask() {
+      @Override
+      public void run() {
+        wakeUp(this);
+      }
+    };
+    this.wakeup = task;
+    this.wakeupInterval = target;
+    long delay = target * PetLifeStage.INTERVAL - this.timer.getElapsedTime() * 1000;
+    this.timer.scheduleOnce(task, Math.max(delay, 0));
+  }
+
+  /**
+   * Wakes the pet up at a predicted change, catching up to the current time, notifying the
+   * listeners if the pet changed, and scheduling the next wakeup. A wakeup that was replaced by a
+   * newer one does nothing.
+   *
+   * @param task  the wakeup that is running.
+   */
+  private void wakeUp(TimerTask task) {
+    PetSnapshot before;
+    PetSnapshot after;
+    synchronized (this) {
+      if (task != this.wakeup) {
+        return;
+      }
+      this.wakeup = null;
+      before = this.snapshot;
+      boolean changed = this.catchUp();
+      after = changed ? this.publish() : before;
+      // a wakeup that ran a little early is scheduled again for the same interval
+      this.scheduleWakeup();
+      if (!changed) {
+        return;
+      }
+    }
+    this.notifyListeners(before, after);
+  }
+
+  /**
+   * Predicts when the pet's mood, health, and life stage will next change if it is left alone.
+   * Must be called while holding the pet's lock, after the pet has caught up.
+   *
+   * @return a forecast of the pet's next changes.
+   */
+  private PetForecast forecast() {
+    if (this.healthState == Health.DEAD) {
+      return new PetForecast(Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE);
+    }
+    long death = intervalsUntilEmpty();
+    return new PetForecast(intervalsUntilMoodChange(death), intervalsUntilSick(death), death,
+        intervalsUntilGrowth());
+  }
 
-    for (Need need : this.needLevels.keySet()) {
-      if (this.needLevels.get(need) < 75) {
-        if (minNeed == null || this.needLevels.get(need) < this.needLevels.get(minNeed)) {
-          minNeed = need;
+  /**
+   * Gets the number of intervals of decrease until the pet's mood changes. The mood can only
+   * change at an interval where a need drops below the unhappy level or to the sad level, or where
+   * two needs below the unhappy level swap places as the lowest, so only those intervals are
+   * checked.
+   *
+   * @param death  the number of intervals until the pet dies.
+   * @return the number of intervals until the mood changes, or Long.MAX_VALUE if it will not.
+   */
+  private long intervalsUntilMoodChange(long death) {
+    if (death == Long.MAX_VALUE) {
+      return Long.MAX_VALUE; // nothing decreases
+    }
+    PetLifeStage stage = this.lifeStage();
+    int unhappy = this.rules.unhappyLevel();
+    int sad = this.rules.sadLevel();
+    long[] candidates = new long[NEEDS.length * (NEEDS.length + 3) / 2 + 1];
+    int count = 0;
+    candidates[count++] = death;
+    for (int i = 0; i < NEEDS.length; i++) {
+      int level = this.needLevels.get(i);
+      int rate = stage.getDecreaseRate(NEEDS[i]);
+      if (rate > 0 && level >= unhappy) {
+        candidates[count++] = (level - unhappy) / rate + 1;
+      }
+      if (rate > 0 && level > sad) {
+        candidates[count++] = (level - sad + rate - 1) / rate;
+      }
+      for (int j = i + 1; j < NEEDS.length; j++) {
+        // need i is chosen over need j while its level is not higher
+        long difference = level - this.needLevels.get(j);
+        long closing = rate - stage.getDecreaseRate(NEEDS[j]);
+        if (closing > 0 && difference > 0) {
+          candidates[count++] = (difference + closing - 1) / closing;
+        } else if (closing < 0 && difference <= 0) {
+          candidates[count++] = -difference / -closing + 1;
         }
       }
-      if (this.needLevels.get(need) <= 25) {
-        numNeedsBelow25++;
+    }
+    Arrays.sort(candidates, 0, count);
+    for (int k = 0; k < count; k++) {
+      if (candidates[k] <= death && moodAfter(candidates[k]) != this.moodState) {
+        return candidates[k];
       }
     }
+    return Long.MAX_VALUE;
+  }
 
-    if (numNeedsBelow25 > 1) {
-      this.moodState = Mood.SAD;
-    } else if (minNeed != null) {
-      switch (minNeed) {
-        case HUNGER:
-          this.moodState = Mood.HUNGRY;
-          break;
-        case SOCIAL:
-          this.moodState = Mood.BORED;
-          break;
-        case HYGIENE:
-          this.moodState = Mood.DIRTY;
-          break;
-        case ENERGY:
-          this.moodState = Mood.TIRED;
-          break;
-        default:
-          throw new IllegalArgumentException("Invalid need.");
+  /**
+   * Gets the pet's mood after a number of intervals of decrease, assuming it is left alone.
+   *
+   * @param intervals  the number of intervals.
+   * @return the pet's mood after the intervals.
+   */
+  private Mood moodAfter(long intervals) {
+    PetLifeStage stage = this.lifeStage();
+    Need lowestNeed = null;
+    long lowestLevel = this.rules.unhappyLevel();
+    int sadNeeds = 0;
+    for (Need need : NEEDS) {
+      long level = Math.max(
+          this.needLevels.get(need.ordinal()) - intervals * stage.getDecreaseRate(need), 0);
+      if (level < lowestLevel) {
+        lowestNeed = need;
+        lowestLevel = level;
+      }
+      if (level <= this.rules.sadLevel()) {
+        sadNeeds++;
       }
-    } else {
-      this.moodState = Mood.HAPPY;
     }
+    return PetRules.moodOf(lowestNeed, sadNeeds);
+  }
+
+  /**
+   * Gets the number of intervals of decrease until the pet is sick, which is when the average of
+   * its need levels drops below the sick level.
+   *
+   * @param death  the number of intervals until the pet dies.
+   * @return the number of intervals until the pet is sick, 0 if it already is, or Long.MAX_VALUE
+   *         if it dies first.
+   */
+  private long intervalsUntilSick(long death) {
+    if (this.healthState == Health.SICK) {
+      return 0;
+    }
+    long rate = 0;
+    for (Need need : NEEDS) {
+      rate += this.lifeStage().getDecreaseRate(need);
+    }
+    if (rate == 0) {
+      return Long.MAX_VALUE;
+    }
+    long sickSum = (long) this.rules.sickHealth() * this.needLevels.size();
+    long intervals = (this.needLevels.sum() - sickSum) / rate + 1;
+    return intervals < death ? intervals : Long.MAX_VALUE;
+  }
+
+  /**
+   * Gets the number of intervals of decrease until one of the pet's needs hits 0.
+   *
+   * @return the number of intervals until a need hits 0, or Long.MAX_VALUE if none ever will.
+   */
+  private long intervalsUntilEmpty() {
+    long intervals = Long.MAX_VALUE;
+    for (Need need : NEEDS) {
+      int rate = this.lifeStage().getDecreaseRate(need);
+      if (rate > 0) {
+        intervals = Math.min(intervals, (this.needLevels.get(need.ordinal()) + rate - 1) / rate);
+      }
+    }
+    return intervals;
+  }
+
+  /**
+   * Gets the number of intervals of decrease until the pet grows into its next life stage,
+   * assuming it is left alone. The pet grows at the first interval at which it is old enough, as
+   * long as it is still happy (and so healthy) after that interval's decrease.
+   *
+   * @return the number of intervals until the pet grows, or Long.MAX_VALUE if it will not.
+   */
+  private long intervalsUntilGrowth() {
+    long growthAge = this.rules.growthAge(this.lifeStage);
+    if (growthAge == Long.MAX_VALUE) {
+      return Long.MAX_VALUE;
+    }
+    long untilUnhappy = Long.MAX_VALUE; // intervals the pet stays happy for
+    for (Need need : NEEDS) {
+      int level = this.needLevels.get(need.ordinal());
+      int rate = this.lifeStage().getDecreaseRate(need);
+      if (level < this.rules.unhappyLevel()) {
+        return Long.MAX_VALUE;
+      } else if (rate > 0) {
+        untilUnhappy = Math.min(untilUnhappy, (level - this.rules.unhappyLevel()) / rate);
+      }
+    }
+    long intervalsPerMinute = 60 * 1000 / PetLifeStage.INTERVAL;
+    long untilOldEnough = Math.max(1, growthAge * intervalsPerMinute - this.decayedIntervals);
+    return untilOldEnough <= untilUnhappy ? untilOldEnough : Long.MAX_VALUE;
+  }
+
+  /**
+   * Updates the mood state of the virtual pet. If any of the pet's needs drop below 75, then the
+   * pet's mood changes to correspond with the need with the lowest level. If more than one of
+   * the needs hits 25 or below, then the pet is sad. Otherwise, the pet is happy. The lowest need
+   * and the number of sad needs are kept up to date by the need levels as they change.
+   */
+  private void updateMood() {
+    int lowestNeed = this.needLevels.lowestNeedBelow(this.rules.unhappyLevel());
+    this.moodState = PetRules.moodOf(lowestNeed < 0 ? null : NEEDS[lowestNeed],
+        this.needLevels.sadNeeds());
   }
 
   /**
@@ -228,49 +777,34 @@ public class VirtualPetImpl implements VirtualPet {
    */
   private void updateHealth() {
     healthCheck();
-    for (Need need : this.needLevels.keySet()) {
-      if (this.needLevels.get(need) == 0) {
-        this.healthState = Health.DEAD;
-        this.health = 0;
-        this.petDeath();
-        return;
-      }
-    }
-
-    if (this.health < 50) {
-      this.healthState = Health.SICK;
-    } else {
-      this.healthState = Health.HEALTHY;
+    this.healthState = this.rules.healthOf(this.health, this.needLevels.anyEmpty());
+    if (this.healthState == Health.DEAD) {
+      this.health = 0;
+      this.petDeath();
     }
   }
 
   /**
    * Performs a health check on the virtual pet. The health of the pet is determined by the average
-   * of all the need levels, with a maximum of 100 and a minimum of 0.
+   * of all the need levels, with a maximum of 100 and a minimum of 0. The sum of the need levels
+   * is kept up to date by the need levels as they change.
    */
   private void healthCheck() {
-    int totalNeedLevel = 0;
-    for (int needLevel : this.needLevels.values()) {
-      totalNeedLevel += needLevel;
-    }
-    this.health = totalNeedLevel / this.needLevels.size();
+    this.health = this.needLevels.health();
   }
 
   /**
    * Updates the life stage of the virtual pet. If the pet is healthy and happy, then when the
-   * appropriate amount of time has passed, the pet grows and enters a new life stage. At 2 minutes,
-   * the pet can become an adult, and at 5 minutes, the pet can become a senior.
+   * appropriate amount of time has passed, the pet grows and enters a new life stage. With the
+   * built-in rules, at 2 minutes the pet can become an adult, and at 5 minutes a senior.
    */
   private void updateLifeStage() {
     if (this.healthState != Health.HEALTHY || this.moodState != Mood.HAPPY) {
       return;
     }
 
-    long age = this.getAge();
-    if (this.lifeStage instanceof Child && age >= 2) {
-      this.lifeStage = new Adult();
-    } else if (this.lifeStage instanceof Adult && age >= 5) {
-      this.lifeStage = new Senior();
+    if (this.rules.canGrow(this.lifeStage, this.getAge(), this.moodState, this.healthState)) {
+      this.lifeStage++;
     }
   }
 
@@ -0,0 +1,33 @@
+package virtualpet;
+
+/**
+ * This interface represents a listener that is notified when a virtual pet changes. Listeners are
+ * notified on the thread that changed the pet, which is usually the pet's timer thread, so
+ * implementations should return quickly and hand off any long-running work.
+ */
+public interface VirtualPetListener {
+
+  /**
+   * Called after the pet's need levels, mood, health, or life stage have been updated.
+   *
+   * @param pet  the pet that changed.
+   */
+  void stateChanged(VirtualPet pet);
+
+  /**
+   * Called after the pet has grown into a new life stage.
+   *
+   * @param pet        the pet that grew.
+   * @param lifeStage  the pet's new life stage.
+   */
+  default void lifeStageChanged(VirtualPet pet, PetLifeStage lifeStage) {
+  }
+
+  /**
+   * Called once, after the pet has died.
+   *
+   * @param pet  the pet that died.
+   */
+  default void died(VirtualPet pet) {
+  }
+}
@@ -77,6 +77,44 @@ public interface VirtualPetView {
    */
   void setNeedsLevels(HashMap<Need, Integer> levels);
 
+  /**
+   * Sets the display for one of the pet's need levels.
+   *
+   * @param need   the need to display.
+   * @param level  the level of the need.
+   */
+  void setNeedLevel(Need need, int level);
+
+  /**
+   * Updates the displays of the pet's stats that changed, leaving the others as they are. A
+   * delta with every field changed sets every display.
+   *
+   * @param delta  the changes of the pet's state since it was last displayed.
+   */
+  default void applyDelta(PetStateDelta delta) {
+    PetSnapshot snapshot = delta.getSnapshot();
+    if (delta.isChanged(PetStateDelta.NAME)) {
+      setNameDisplay("Name: " + snapshot.getName());
+    }
+    if (delta.isChanged(PetStateDelta.AGE)) {
+      setAgeDisplay("Age: " + delta.getAge());
+    }
+    if (delta.isChanged(PetStateDelta.LIFE_STAGE)) {
+      setLifeStageDisplay("Life Stage: " + snapshot.getLifeStage());
+    }
+    if (delta.isChanged(PetStateDelta.MOOD)) {
+      setMoodDisplay("Mood: " + snapshot.getMoodState());
+    }
+    if (delta.isChanged(PetStateDelta.HEALTH_STATE)) {
+      setHealthDisplay("Health: " + snapshot.getHealthState());
+    }
+    for (Need need : Need.values()) {
+      if (delta.isNeedChanged(need)) {
+        setNeedLevel(need, snapshot.getNeedLevel(need));
+      }
+    }
+  }
+
   /**
    * Sets the normal display for the pet's image.
    *
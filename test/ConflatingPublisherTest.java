@@ -0,0 +1,114 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+import org.junit.Before;
+import org.junit.Test;
+import virtualpet.ConflatingPublisher;
+
+/**
+ * JUnit test class for ConflatingPublisher.
+ */
+public class ConflatingPublisherTest {
+
+  private ConflatingPublisher<String, Integer> publisher;
+  private Recorder recorder;
+
+  /**
+   * Sets up a publisher that delivers on the offering thread, holding two keys per subscriber,
+   * and a subscriber that records what it receives.
+   */
+  @Before
+  public void setUp() {
+    publisher = new ConflatingPublisher<>(Runnable::run, 2);
+    recorder = new Recorder();
+    publisher.subscribe(recorder);
+  }
+
+  /**
+   * Tests that a subscriber that is not keeping up receives only the latest item for a key.
+   */
+  @Test
+  public void testConflation() {
+    recorder.subscription.request(1);
+    for (int i = 1; i <= 100; i++) {
+      publisher.offer("Rex", i);
+    }
+    assertEquals("[1]", recorder.items.toString());
+    recorder.subscription.request(5);
+    assertEquals("[1, 100]", recorder.items.toString());
+    assertEquals(98, publisher.getConflatedCount());
+    publisher.offer("Rex", 101);
+    assertEquals("[1, 100, 101]", recorder.items.toString());
+  }
+
+  /**
+   * Tests that a full buffer drops the key that has waited longest, and that the remaining keys
+   * are delivered in the order they arrived.
+   */
+  @Test
+  public void testBoundedBuffer() {
+    publisher.offer("Rex", 1);
+    publisher.offer("Fido", 2);
+    publisher.offer("Rex", 3);
+    publisher.offer("Max", 4);
+    assertEquals(1, publisher.getDroppedCount());
+    recorder.subscription.request(Long.MAX_VALUE);
+    recorder.subscription.request(Long.MAX_VALUE);
+    assertEquals("[2, 4]", recorder.items.toString());
+  }
+
+  /**
+   * Tests that closing completes a subscriber once its waiting items are delivered, and that an
+   * invalid request cancels the subscription with an error.
+   */
+  @Test
+  public void testCloseAndError() {
+    publisher.offer("Rex", 1);
+    publisher.close();
+    assertEquals(0, recorder.completions);
+    recorder.subscription.request(1);
+    assertEquals("[1]", recorder.items.toString());
+    assertEquals(1, recorder.completions);
+    assertEquals(0, publisher.getSubscriberCount());
+
+    Recorder failing = new Recorder();
+    ConflatingPublisher<String, Integer> other = new ConflatingPublisher<>(Runnable::run, 1);
+    other.subscribe(failing);
+    failing.subscription.request(0);
+    assertTrue(failing.error instanceof IllegalArgumentException);
+    assertEquals(0, other.getSubscriberCount());
+  }
+
+  /**
+   * A subscriber that records the items it receives and how it ended.
+   */
+  private static class Recorder implements Flow.Subscriber<Integer> {
+    private final List<Integer> items = new ArrayList<>();
+    private Flow.Subscription subscription;
+    private Throwable error;
+    private int completions;
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      this.subscription = subscription;
+    }
+
+    @Override
+    public void onNext(Integer item) {
+      items.add(item);
+    }
+
+    @Override
+    public void onError(Throwable error) {
+      this.error = error;
+    }
+
+    @Override
+    public void onComplete() {
+      completions++;
+    }
+  }
+}
@@ -0,0 +1,152 @@
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.After;
+import org.junit.Test;
+import virtualpet.LifeStageConfig;
+import virtualpet.Mood;
+import virtualpet.Need;
+import virtualpet.PetLifeStage;
+import virtualpet.PetPopulation;
+import virtualpet.VirtualGameTimer;
+import virtualpet.VirtualPet;
+import virtualpet.VirtualPetImpl;
+
+/**
+ * JUnit test class for LifeStageConfig.
+ */
+public class LifeStageConfigTest {
+
+  /**
+   * Puts back the built-in rules after each test.
+   */
+  @After
+  public void tearDown() {
+    LifeStageConfig.reset();
+  }
+
+  /**
+   * Creates a configuration with two life stages, Kitten and Cat, where every need of a kitten
+   * increases and decreases by the given rate, and a kitten grows into a cat at 1 minute.
+   *
+   * @param rate      the rate of every need of a kitten.
+   * @param sadLevel  the level at or below which a need is sad.
+   * @return a stream of the configuration.
+   */
+  private InputStream config(int rate, int sadLevel) {
+    StringBuilder config = new StringBuilder();
+    config.append("stages = Kitten, Cat\n")
+        .append("unhappyLevel = 75\n")
+        .append("sadLevel = ").append(sadLevel).append("\n")
+        .append("sickHealth = 50\n")
+        .append("Kitten.growthAge = 1\n");
+    for (Need need : Need.values()) {
+      String name = need.name();
+      config.append("Kitten.increase.").append(name).append(" = ").append(rate).append("\n")
+          .append("Kitten.decrease.").append(name).append(" = ").append(rate).append("\n")
+          .append("Cat.increase.").append(name).append(" = 1\n")
+          .append("Cat.decrease.").append(name).append(" = 1\n");
+    }
+    return new ByteArrayInputStream(config.toString().getBytes(StandardCharsets.ISO_8859_1));
+  }
+
+  /**
+   * Tests that pets created after a configuration is loaded use its life stages and rates.
+   */
+  @Test
+  public void testLoad() throws IOException {
+    LifeStageConfig.load(config(10, 25));
+    VirtualGameTimer timer = new VirtualGameTimer();
+    VirtualPet pet = new VirtualPetImpl("Test", timer);
+    assertEquals("Kitten", pet.getLifeStage().toString());
+    timer.advance(PetLifeStage.INTERVAL);
+    assertEquals(90, pet.getNeedLevels().get(Need.HUNGER).intValue());
+    pet.interact(Need.HUNGER);
+    assertEquals(100, pet.getNeedLevels().get(Need.HUNGER).intValue());
+  }
+
+  /**
+   * Tests that running pets and populations switch to a newly loaded configuration at their next
+   * tick, keeping their need levels.
+   */
+  @Test
+  public void testHotReload() throws IOException {
+    LifeStageConfig.load(config(2, 25));
+    VirtualGameTimer timer = new VirtualGameTimer();
+    VirtualPet pet = new VirtualPetImpl("Test", timer);
+    PetPopulation population = new PetPopulation(1, timer);
+    population.start();
+    int slot = population.add("Test");
+    timer.advance(PetLifeStage.INTERVAL);
+    assertEquals(98, pet.getNeedLevels().get(Need.SOCIAL).intValue());
+    assertEquals(98, population.getNeedLevel(slot, Need.SOCIAL));
+
+    LifeStageConfig.load(config(20, 25));
+    timer.advance(PetLifeStage.INTERVAL);
+    assertEquals(78, pet.getNeedLevels().get(Need.SOCIAL).intValue());
+    assertEquals(78, population.getNeedLevel(slot, Need.SOCIAL));
+
+    // with no decreases, the pets stay happy and grow up at a minute old
+    LifeStageConfig.load(config(0, 25));
+    timer.advance(PetLifeStage.INTERVAL * 10);
+    assertEquals("Cat", pet.getLifeStage().toString());
+    assertEquals("Cat", population.getLifeStage(slot).toString());
+  }
+
+  /**
+   * Tests that a newly loaded sad level is used for pets that already exist.
+   */
+  @Test
+  public void testReloadThresholds() throws IOException {
+    LifeStageConfig.load(config(30, 25));
+    VirtualGameTimer timer = new VirtualGameTimer();
+    VirtualPet pet = new VirtualPetImpl("Test", timer);
+    timer.advance(PetLifeStage.INTERVAL * 2);
+    assertEquals(Mood.HUNGRY, pet.getMoodState());
+    LifeStageConfig.load(config(0, 40));
+    pet.update();
+    assertEquals(Mood.SAD, pet.getMoodState());
+  }
+
+  /**
+   * Tests that a configuration that is missing a value is rejected, and the current rules are
+   * kept.
+   */
+  @Test
+  public void testInvalidConfig() throws IOException {
+    LifeStageConfig.load(config(10, 25));
+    try {
+      LifeStageConfig.load(new ByteArrayInputStream(
+          "stages = Kitten\nsadLevel = 25\n".getBytes(StandardCharsets.ISO_8859_1)));
+    } catch (IllegalArgumentException e) {
+      VirtualPet pet = new VirtualPetImpl("Test", new VirtualGameTimer());
+      assertEquals("Kitten", pet.getLifeStage().toString());
+      return;
+    }
+    throw new AssertionError("Invalid configuration was loaded.");
+  }
+
+  /**
+   * Tests that a configuration that names a life stage twice throws an IllegalArgumentException.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testDuplicateStage() throws IOException {
+    String config = new String(config(10, 25).readAllBytes(), StandardCharsets.ISO_8859_1);
+    LifeStageConfig.load(new ByteArrayInputStream(config.replace("Kitten, Cat", "Kitten, Kitten")
+        .getBytes(StandardCharsets.ISO_8859_1)));
+  }
+
+  /**
+   * Tests that a configuration with a rate that is not a number throws an
+   * IllegalArgumentException.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testRateNotANumber() throws IOException {
+    LifeStageConfig.load(new ByteArrayInputStream(
+        ("stages = Kitten\nunhappyLevel = 75\nsadLevel = 25\nsickHealth = 50\n"
+            + "Kitten.increase.HUNGER = lots\n").getBytes(StandardCharsets.ISO_8859_1)));
+  }
+}
@@ -0,0 +1,241 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import virtualpet.DecayMode;
+import virtualpet.Need;
+import virtualpet.PetDaemon;
+import virtualpet.PetLifeStage;
+import virtualpet.PetPopulation;
+import virtualpet.PetRegistry;
+import virtualpet.PetStateDelta;
+import virtualpet.PopulationFile;
+import virtualpet.SharedGameScheduler;
+import virtualpet.VirtualGameTimer;
+
+/**
+ * JUnit test class for PetDaemon.
+ */
+public class PetDaemonTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private PopulationFile file;
+  private SharedGameScheduler scheduler;
+  private PetRegistry registry;
+
+  /**
+   * Sets up a registry holding one saved pet whose needs have decreased.
+   */
+  @Before
+  public void setUp() throws IOException {
+    VirtualGameTimer timer = new VirtualGameTimer();
+    PetPopulation population = new PetPopulation(4, timer, 1);
+    population.start();
+    population.add("Rex");
+    timer.advance(PetLifeStage.INTERVAL * 3);
+    file = new PopulationFile(folder.getRoot().toPath().resolve("pets.bin"));
+    file.save(population);
+    scheduler = new SharedGameScheduler(1);
+    registry = new PetRegistry(file, scheduler, DecayMode.LAZY);
+  }
+
+  /**
+   * Closes the registry's file and scheduler.
+   */
+  @After
+  public void tearDown() throws IOException {
+    scheduler.shutdown();
+    file.close();
+  }
+
+  /**
+   * Tests that requests sent together without waiting are all answered, in order.
+   */
+  @Test
+  public void testPipelinedRequests() throws IOException {
+    try (PetDaemon daemon = new PetDaemon(registry,
+        new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        SocketChannel channel = PetDaemon.connect(daemon.getAddress())) {
+      byte[] name = "Max".getBytes(StandardCharsets.UTF_8);
+      ByteBuffer requests = ByteBuffer.allocate(64);
+      requests.put(PetDaemon.CREATE).putShort((short) name.length).put(name);
+      requests.put(PetDaemon.INTERACT).putInt(0).put((byte) Need.HUNGER.ordinal());
+      requests.put(PetDaemon.INTERACT).putInt(1).put((byte) Need.HUNGER.ordinal());
+      requests.put(PetDaemon.INTERACT).putInt(9).put((byte) Need.HUNGER.ordinal());
+      requests.put(PetDaemon.SNAPSHOT).putInt(1);
+      requests.flip();
+      while (requests.hasRemaining()) {
+        channel.write(requests);
+      }
+      ByteBuffer answers = read(channel, 5 + 1 + 1 + 1 + 13 + Need.values().length + 4 + 5 + 3);
+      assertEquals(PetDaemon.OK, answers.get());
+      assertEquals(1, answers.getInt());
+      assertEquals(PetDaemon.OK, answers.get());
+      assertEquals(PetDaemon.REFUSED, answers.get());
+      assertEquals(PetDaemon.NO_SUCH_PET, answers.get());
+      assertEquals(PetDaemon.OK, answers.get());
+      answers.getLong();
+      answers.getInt();
+      for (Need need : Need.values()) {
+        assertEquals(100, answers.get());
+      }
+      byte[] stage = new byte[answers.getShort()];
+      answers.get(stage);
+      assertEquals("Child", new String(stage, StandardCharsets.UTF_8));
+      byte[] answered = new byte[answers.getShort()];
+      answers.get(answered);
+      assertEquals("Max", new String(answered, StandardCharsets.UTF_8));
+      assertEquals(5, daemon.getRequestCount());
+    }
+  }
+
+  /**
+   * Tests serving over a Unix domain socket, which is removed when the daemon is closed.
+   */
+  @Test
+  public void testUnixSocket() throws IOException {
+    Assume.assumeTrue(PetDaemon.isUnixSupported());
+    Path socket = folder.getRoot().toPath().resolve("pets.sock");
+    try (PetDaemon daemon = new PetDaemon(registry, socket);
+        SocketChannel channel = PetDaemon.connect(daemon.getAddress())) {
+      assertTrue(Files.exists(socket));
+      channel.write(ByteBuffer.wrap(new byte[] {PetDaemon.INTERACT, 0, 0, 0, 0, 0}));
+      assertEquals(PetDaemon.OK, read(channel, 1).get());
+    }
+    assertFalse(Files.exists(socket));
+  }
+
+  /**
+   * Tests that a malformed request is answered with BAD_REQUEST, and the connection closed.
+   */
+  @Test
+  public void testBadRequest() throws IOException {
+    try (PetDaemon daemon = new PetDaemon(registry,
+        new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        SocketChannel channel = PetDaemon.connect(daemon.getAddress())) {
+      channel.write(ByteBuffer.wrap(new byte[] {PetDaemon.INTERACT, 0, 0, 0, 0, 9, 42}));
+      assertEquals(PetDaemon.BAD_REQUEST, read(channel, 1).get());
+      assertEquals(-1, channel.read(ByteBuffer.allocate(1)));
+    }
+  }
+
+  /**
+   * Tests that a request that fails is answered with FAILED and its connection closed, and that
+   * the daemon goes on serving other connections.
+   */
+  @Test
+  public void testFailedRequest() throws IOException {
+    scheduler.shutdown(); // so creating a pet fails
+    try (PetDaemon daemon = new PetDaemon(registry,
+        new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+      try (SocketChannel channel = PetDaemon.connect(daemon.getAddress())) {
+        channel.write(ByteBuffer.wrap(new byte[] {PetDaemon.CREATE, 0, 1, 'M'}));
+        assertEquals(PetDaemon.FAILED, read(channel, 1).get());
+        assertEquals(-1, channel.read(ByteBuffer.allocate(1)));
+      }
+      try (SocketChannel channel = PetDaemon.connect(daemon.getAddress())) {
+        channel.write(ByteBuffer.wrap(new byte[] {PetDaemon.SNAPSHOT, 0, 0, 0, 9}));
+        assertEquals(PetDaemon.NO_SUCH_PET, read(channel, 1).get());
+      }
+    }
+  }
+
+  /**
+   * Tests that a pet's delta holds every field the first time it is asked for, and only the
+   * changed fields after that.
+   */
+  @Test
+  public void testDelta() throws IOException {
+    try (PetDaemon daemon = new PetDaemon(registry,
+        new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        SocketChannel channel = PetDaemon.connect(daemon.getAddress())) {
+      ByteBuffer requests = ByteBuffer.allocate(16);
+      requests.put(PetDaemon.DELTA).putInt(0);
+      requests.flip();
+      channel.write(requests);
+      ByteBuffer answer = read(channel, 5);
+      assertEquals(PetDaemon.OK, answer.get());
+      short changes = answer.getShort();
+      assertTrue((changes & PetStateDelta.NAME) != 0);
+      for (Need need : Need.values()) {
+        assertTrue((changes & PetStateDelta.needBit(need)) != 0);
+      }
+      byte[] answered = new byte[answer.getShort()];
+      read(channel, answered.length).get(answered);
+      assertEquals("Rex", new String(answered, StandardCharsets.UTF_8));
+      read(channel, 8).getLong();
+      read(channel, read(channel, 2).getShort() + 3 + Need.values().length);
+
+      requests.clear();
+      requests.put(PetDaemon.INTERACT).putInt(0).put((byte) Need.HUNGER.ordinal());
+      requests.put(PetDaemon.DELTA).putInt(0);
+      requests.flip();
+      channel.write(requests);
+      answer = read(channel, 4);
+      assertEquals(PetDaemon.OK, answer.get());
+      assertEquals(PetDaemon.OK, answer.get());
+      changes = answer.getShort();
+      assertTrue((changes & PetStateDelta.needBit(Need.HUNGER)) != 0);
+      assertEquals(0, changes & (PetStateDelta.NAME | PetStateDelta.LIFE_STAGE
+          | PetStateDelta.needBit(Need.SOCIAL) | PetStateDelta.needBit(Need.HYGIENE)
+          | PetStateDelta.needBit(Need.ENERGY)));
+    }
+  }
+
+  /**
+   * Tests that a name too long for a snapshot is cut between characters, so that what is sent is
+   * still valid UTF-8.
+   */
+  @Test
+  public void testLongNonAsciiName() throws IOException {
+    StringBuilder name = new StringBuilder("R");
+    while (name.length() < PetDaemon.MAX_NAME) {
+      name.append('\u00eb'); // two bytes in UTF-8
+    }
+    int id = registry.add(name.toString());
+    try (PetDaemon daemon = new PetDaemon(registry,
+        new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        SocketChannel channel = PetDaemon.connect(daemon.getAddress())) {
+      channel.write(ByteBuffer.allocate(5).put(PetDaemon.SNAPSHOT).putInt(id).flip());
+      assertEquals(PetDaemon.OK, read(channel, 13 + Need.values().length).get());
+      read(channel, read(channel, 2).getShort());
+      byte[] answered = new byte[read(channel, 2).getShort()];
+      read(channel, answered.length).get(answered);
+      assertEquals(PetDaemon.MAX_NAME - 1, answered.length);
+      assertTrue(name.toString().startsWith(new String(answered, StandardCharsets.UTF_8)));
+    }
+  }
+
+  /**
+   * Reads a number of bytes of answers.
+   *
+   * @param channel  the channel to read from.
+   * @param bytes    the number of bytes.
+   * @return the answers, ready to be read.
+   */
+  private static ByteBuffer read(SocketChannel channel, int bytes) throws IOException {
+    ByteBuffer answers = ByteBuffer.allocate(bytes);
+    while (answers.hasRemaining()) {
+      if (channel.read(answers) < 0) {
+        throw new IOException("Connection closed.");
+      }
+    }
+    return answers.flip();
+  }
+}
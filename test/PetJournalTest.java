@@ -0,0 +1,241 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import virtualpet.Need;
+import virtualpet.PetJournal;
+import virtualpet.PetLifeStage;
+import virtualpet.PetPopulation;
+import virtualpet.PopulationFile;
+import virtualpet.VirtualGameTimer;
+
+/**
+ * JUnit test class for PetJournal.
+ */
+public class PetJournalTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Path snapshotPath;
+  private Path journalPath;
+  private long lastSequence; // of the journal written by runWithSaves()
+
+  /**
+   * Sets up the paths of the snapshot and the journal.
+   */
+  @Before
+  public void setUp() {
+    snapshotPath = folder.getRoot().toPath().resolve("pets.bin");
+    journalPath = folder.getRoot().toPath().resolve("pets.journal");
+  }
+
+  /**
+   * Runs a population with a journal: adds pets, interacts with them, pauses one and renames
+   * another, and lets time pass so that they grow up and one of them dies. The population is
+   * saved to the snapshot part of the way through if asked to.
+   *
+   * @param parallelism  the number of threads that tick the population.
+   * @param save         whether to save a snapshot part of the way through.
+   * @return the population.
+   */
+  private PetPopulation run(int parallelism, boolean save) throws IOException {
+    VirtualGameTimer timer = new VirtualGameTimer();
+    PetPopulation population = new PetPopulation(20, timer, parallelism);
+    try (PetJournal journal = new PetJournal(journalPath);
+        PopulationFile snapshot = new PopulationFile(snapshotPath)) {
+      population.setJournal(journal);
+      population.start();
+      for (int pet = 0; pet < 12; pet++) {
+        population.add("Pet " + pet);
+      }
+      for (int interval = 0; interval < 30; interval++) {
+        timer.advance(PetLifeStage.INTERVAL);
+        for (int slot = 1; slot < population.size(); slot++) {
+          for (Need need : Need.values()) {
+            if (population.getNeedLevel(slot, need) < 100) {
+              population.interact(slot, need);
+            }
+          }
+        }
+        if (interval == 10) {
+          population.get(2).pauseTimer();
+          population.get(3).setName("Renamed");
+          population.add("Late");
+          if (save) {
+            snapshot.save(population);
+          }
+        }
+      }
+      population.stop();
+    }
+    return population;
+  }
+
+  /**
+   * Runs a population with a journal, caring for its pets and saving it to the snapshot after
+   * every interval, and then renames a pet after the last save.
+   *
+   * @return the population.
+   */
+  private PetPopulation runWithSaves() throws IOException {
+    VirtualGameTimer timer = new VirtualGameTimer();
+    PetPopulation population = new PetPopulation(20, timer, 1);
+    try (PetJournal journal = new PetJournal(journalPath);
+        PopulationFile snapshot = new PopulationFile(snapshotPath)) {
+      population.setJournal(journal);
+      population.start();
+      for (int pet = 0; pet < 12; pet++) {
+        population.add("Pet " + pet);
+      }
+      for (int interval = 0; interval < 10; interval++) {
+        timer.advance(PetLifeStage.INTERVAL);
+        for (int slot = 0; slot < population.size(); slot++) {
+          for (Need need : Need.values()) {
+            if (population.getNeedLevel(slot, need) < 100) {
+              population.interact(slot, need);
+            }
+          }
+        }
+        snapshot.save(population);
+      }
+      population.get(3).setName("Renamed");
+      timer.advance(PetLifeStage.INTERVAL);
+      population.stop();
+      lastSequence = journal.getLastSequence();
+    }
+    return population;
+  }
+
+  /**
+   * Asserts that a recovered population has the same pets as the original.
+   *
+   * @param expected   the original population.
+   * @param recovered  the recovered population.
+   */
+  private void assertSamePets(PetPopulation expected, PetPopulation recovered) {
+    assertEquals(expected.size(), recovered.size());
+    for (int slot = 0; slot < expected.size(); slot++) {
+      assertEquals(expected.get(slot).toString(), recovered.get(slot).toString());
+    }
+  }
+
+  /**
+   * Tests that a population is recovered from a snapshot and the journal entries after it.
+   */
+  @Test
+  public void testRecover() throws IOException {
+    PetPopulation population = run(1, true);
+    try (PopulationFile snapshot = new PopulationFile(snapshotPath)) {
+      assertTrue(snapshot.size() > 0);
+      assertSamePets(population,
+          PetJournal.recover(snapshot, journalPath, new VirtualGameTimer(), 20, 1));
+    }
+  }
+
+  /**
+   * Tests that a population is recovered from the journal alone, replayed in parallel
+   * partitions.
+   */
+  @Test
+  public void testRecoverInParallel() throws IOException {
+    PetPopulation population = run(4, false);
+    try (PopulationFile snapshot = new PopulationFile(snapshotPath)) {
+      assertSamePets(population,
+          PetJournal.recover(snapshot, journalPath, new VirtualGameTimer(), 20, 4));
+    }
+  }
+
+  /**
+   * Tests that saving the population compacts the journal, so that only the entries after the
+   * last saves are kept, and that the population is still recovered and the sequence numbers
+   * carry on.
+   */
+  @Test
+  public void testCompaction() throws IOException {
+    PetPopulation population = runWithSaves();
+    int files = 0;
+    long bytes = 0;
+    try (DirectoryStream<Path> segments =
+        Files.newDirectoryStream(folder.getRoot().toPath(), "pets.journal*")) {
+      for (Path segment : segments) {
+        files++;
+        bytes += Files.size(segment);
+      }
+    }
+    assertTrue(files <= 2);
+    // every entry takes more than 25 bytes, so most of the entries are gone
+    assertTrue(bytes < lastSequence * 25);
+    try (PopulationFile snapshot = new PopulationFile(snapshotPath)) {
+      assertSamePets(population,
+          PetJournal.recover(snapshot, journalPath, new VirtualGameTimer(), 20, 1));
+    }
+    try (PetJournal journal = new PetJournal(journalPath)) {
+      assertEquals(lastSequence, journal.getLastSequence());
+    }
+  }
+
+  /**
+   * Tests that a population is not recovered from a snapshot whose last save did not finish once
+   * the journal entries before that save have been compacted away.
+   */
+  @Test(expected = IOException.class)
+  public void testIncompleteSnapshotAfterCompaction() throws IOException {
+    runWithSaves();
+    try (FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.WRITE)) {
+      channel.write(ByteBuffer.allocate(8).putLong(0, -1), 32); // the journal sequence
+    }
+    try (PopulationFile snapshot = new PopulationFile(snapshotPath)) {
+      PetJournal.recover(snapshot, journalPath, new VirtualGameTimer(), 20, 1);
+    }
+  }
+
+  /**
+   * Tests that entries appended without waiting are written in fewer batches than entries.
+   */
+  @Test
+  public void testGroupCommit() throws IOException {
+    VirtualGameTimer timer = new VirtualGameTimer();
+    PetPopulation population = new PetPopulation(1, timer, 1);
+    try (PetJournal journal = new PetJournal(journalPath)) {
+      population.setJournal(journal);
+      population.add("Test");
+      for (int tick = 0; tick < 1000; tick++) {
+        population.tick();
+      }
+      journal.flush();
+      assertEquals(journal.getLastSequence(), journal.getDurableSequence());
+      assertTrue(journal.getCommitCount() < 1000);
+    }
+  }
+
+  /**
+   * Tests that an entry that was only partly written is dropped when the journal is opened
+   * again, and that new entries follow the last complete one.
+   */
+  @Test
+  public void testTornEntry() throws IOException {
+    long last;
+    try (PetJournal journal = new PetJournal(journalPath)) {
+      PetPopulation population = new PetPopulation(1, new VirtualGameTimer(), 1);
+      population.setJournal(journal);
+      population.add("Test");
+      population.get(0).pauseTimer();
+      last = journal.getLastSequence();
+    }
+    Files.write(journalPath, new byte[] {0, 0, 0, 40, 1, 2}, StandardOpenOption.APPEND);
+    try (PetJournal journal = new PetJournal(journalPath)) {
+      assertEquals(last, journal.getLastSequence());
+    }
+  }
+}
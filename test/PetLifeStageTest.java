@@ -1,5 +1,10 @@
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
 import org.junit.Test;
 import virtualpet.AbstractLifeStage;
 import virtualpet.Adult;
@@ -18,7 +23,7 @@ public class PetLifeStageTest {
    */
   @Test
   public void testGetIntervalChild() {
-    PetLifeStage child = new Child();
+    PetLifeStage child = Child.INSTANCE;
     assertEquals(5000, child.getInterval());
   }
 
@@ -27,7 +32,7 @@ public class PetLifeStageTest {
    */
   @Test
   public void testGetIntervalAdult() {
-    PetLifeStage adult = new Adult();
+    PetLifeStage adult = Adult.INSTANCE;
     assertEquals(5000, adult.getInterval());
   }
 
@@ -36,7 +41,7 @@ public class PetLifeStageTest {
    */
   @Test
   public void testGetIntervalSenior() {
-    PetLifeStage senior = new Senior();
+    PetLifeStage senior = Senior.INSTANCE;
     assertEquals(5000, senior.getInterval());
   }
 
@@ -46,7 +51,7 @@ public class PetLifeStageTest {
   @Test
   public void testIncreaseNeedChild() {
     int currentLevel = 50;
-    PetLifeStage child = new Child();
+    PetLifeStage child = Child.INSTANCE;
     assertEquals(60, child.increaseNeed(Need.HUNGER, currentLevel));
     assertEquals(65, child.increaseNeed(Need.SOCIAL, currentLevel));
     assertEquals(58, child.increaseNeed(Need.HYGIENE, currentLevel));
@@ -59,7 +64,7 @@ public class PetLifeStageTest {
   @Test
   public void testIncreaseNeedAdult() {
     int currentLevel = 50;
-    PetLifeStage adult = new Adult();
+    PetLifeStage adult = Adult.INSTANCE;
     assertEquals(58, adult.increaseNeed(Need.HUNGER, currentLevel));
     assertEquals(55, adult.increaseNeed(Need.SOCIAL, currentLevel));
     assertEquals(60, adult.increaseNeed(Need.HYGIENE, currentLevel));
@@ -72,7 +77,7 @@ public class PetLifeStageTest {
   @Test
   public void testIncreaseNeedSenior() {
     int currentLevel = 50;
-    PetLifeStage senior = new Senior();
+    PetLifeStage senior = Senior.INSTANCE;
     assertEquals(56, senior.increaseNeed(Need.HUNGER, currentLevel));
     assertEquals(60, senior.increaseNeed(Need.SOCIAL, currentLevel));
     assertEquals(58, senior.increaseNeed(Need.HYGIENE, currentLevel));
@@ -85,7 +90,7 @@ public class PetLifeStageTest {
   @Test
   public void testDecreaseNeedChild() {
     int currentLevel = 50;
-    PetLifeStage child = new Child();
+    PetLifeStage child = Child.INSTANCE;
     assertEquals(42, child.decreaseNeed(Need.HUNGER, currentLevel));
     assertEquals(38, child.decreaseNeed(Need.SOCIAL, currentLevel));
     assertEquals(45, child.decreaseNeed(Need.HYGIENE, currentLevel));
@@ -98,7 +103,7 @@ public class PetLifeStageTest {
   @Test
   public void testDecreaseNeedAdult() {
     int currentLevel = 50;
-    PetLifeStage adult = new Adult();
+    PetLifeStage adult = Adult.INSTANCE;
     assertEquals(46, adult.decreaseNeed(Need.HUNGER, currentLevel));
     assertEquals(47, adult.decreaseNeed(Need.SOCIAL, currentLevel));
     assertEquals(45, adult.decreaseNeed(Need.HYGIENE, currentLevel));
@@ -111,7 +116,7 @@ public class PetLifeStageTest {
   @Test
   public void testDecreaseNeedSenior() {
     int currentLevel = 50;
-    PetLifeStage senior = new Senior();
+    PetLifeStage senior = Senior.INSTANCE;
     assertEquals(49, senior.decreaseNeed(Need.HUNGER, currentLevel));
     assertEquals(48, senior.decreaseNeed(Need.SOCIAL, currentLevel));
     assertEquals(45, senior.decreaseNeed(Need.HYGIENE, currentLevel));
@@ -124,7 +129,7 @@ public class PetLifeStageTest {
   @Test
   public void testIncreaseNeedMax() {
     int currentLevel = 97;
-    PetLifeStage child = new Child();
+    PetLifeStage child = Child.INSTANCE;
     assertEquals(100, child.increaseNeed(Need.HUNGER, currentLevel));
   }
 
@@ -134,7 +139,7 @@ public class PetLifeStageTest {
   @Test
   public void testDecreaseNeed() {
     int currentLevel = 3;
-    PetLifeStage senior = new Senior();
+    PetLifeStage senior = Senior.INSTANCE;
     assertEquals(0, senior.decreaseNeed(Need.ENERGY, currentLevel));
   }
 
@@ -143,7 +148,7 @@ public class PetLifeStageTest {
    */
   @Test
   public void testToStringPuppy() {
-    PetLifeStage child = new Child();
+    PetLifeStage child = Child.INSTANCE;
     assertEquals("Child", child.toString());
   }
 
@@ -152,7 +157,7 @@ public class PetLifeStageTest {
    */
   @Test
   public void testToStringAdult() {
-    PetLifeStage adult = new Adult();
+    PetLifeStage adult = Adult.INSTANCE;
     assertEquals("Adult", adult.toString());
   }
 
@@ -161,17 +166,88 @@ public class PetLifeStageTest {
    */
   @Test
   public void testToStringSenior() {
-    PetLifeStage senior = new Senior();
+    PetLifeStage senior = Senior.INSTANCE;
     assertEquals("Senior", senior.toString());
   }
 
+  /**
+   * Tests that changing need levels of the shared life stages by ordinal gives the same results as
+   * changing them by need, and that the shared life stages cannot be created again.
+   */
+  @Test
+  public void testSharedLifeStagesByOrdinal() {
+    PetLifeStage[] shared = {Child.INSTANCE, Adult.INSTANCE, Senior.INSTANCE};
+    for (PetLifeStage stage : shared) {
+      for (Need need : Need.values()) {
+        int i = need.ordinal();
+        assertEquals(stage.getIncreaseRate(need), stage.increaseNeed(i, 50) - 50);
+        assertEquals(stage.increaseNeed(need, 50), stage.increaseNeed(i, 50));
+        assertEquals(stage.decreaseNeed(need, 50), stage.decreaseNeed(i, 50));
+      }
+      for (Constructor<?> constructor : stage.getClass().getDeclaredConstructors()) {
+        assertTrue(Modifier.isPrivate(constructor.getModifiers()));
+      }
+    }
+  }
+
+  /**
+   * Tests that the bulk methods apply a life stage's rates to every need at once, clamping the
+   * levels to between 0 and 100, and that the range method only changes the given pets.
+   */
+  @Test
+  public void testBulkNeedChanges() {
+    PetLifeStage child = Child.INSTANCE;
+    int[] levels = {50, 5, 95, 0};
+    child.decreaseNeeds(levels);
+    assertArrayEquals(new int[] {42, 0, 90, 0}, levels);
+    child.increaseNeeds(levels);
+    assertArrayEquals(new int[] {52, 15, 98, 15}, levels);
+    levels[0] = 100;
+    child.increaseNeeds(levels);
+    assertArrayEquals(new int[] {100, 30, 100, 30}, levels);
+
+    byte[][] columns = {{50, 50, 50}, {50, 50, 50}, {50, 50, 3}, {50, 50, 50}};
+    child.decreaseNeeds(columns, 1, 3);
+    assertArrayEquals(new byte[] {50, 42, 42}, columns[0]);
+    assertArrayEquals(new byte[] {50, 38, 38}, columns[1]);
+    assertArrayEquals(new byte[] {50, 45, 0}, columns[2]);
+    assertArrayEquals(new byte[] {50, 40, 40}, columns[3]);
+  }
+
+  /**
+   * Tests that the bulk methods throw IllegalArgumentException if there is not one level for each
+   * need.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testBulkNeedChangesWrongLength() {
+    Child.INSTANCE.decreaseNeeds(new int[] {50, 50, 50});
+  }
+
+  /**
+   * Tests that decreasing the needs of a range of pets throws IllegalArgumentException if the
+   * range does not fit in every column, before any level is changed.
+   */
+  @Test
+  public void testBulkNeedChangesBadRange() {
+    byte[][] columns = {{50, 50, 50}, {50, 50, 50}, {50, 50}, {50, 50, 50}};
+    int[][] ranges = {{-1, 2}, {2, 1}, {0, 3}};
+    for (int[] range : ranges) {
+      try {
+        Child.INSTANCE.decreaseNeeds(columns, range[0], range[1]);
+        fail("Range " + range[0] + " to " + range[1] + " was accepted.");
+      } catch (IllegalArgumentException e) {
+        assertArrayEquals(new byte[] {50, 50, 50}, columns[0]);
+      }
+    }
+  }
+
   /**
    * Tests increaseNeed throws IllegalArgumentException if currentLevel is above 100.
    */
   @Test(expected = IllegalArgumentException.class)
   public void increaseNeedException() {
     int currentLevel = 101;
-    PetLifeStage child = new Child();
+    PetLifeStage child = Child.INSTANCE;
     child.increaseNeed(Need.HUNGER, currentLevel);
   }
 
@@ -181,7 +257,7 @@ public class PetLifeStageTest {
   @Test(expected = IllegalArgumentException.class)
   public void decreaseNeedException() {
     int currentLevel = -5;
-    PetLifeStage child = new Child();
+    PetLifeStage child = Child.INSTANCE;
     child.decreaseNeed(Need.HUNGER, currentLevel);
   }
 
@@ -0,0 +1,212 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+import virtualpet.Health;
+import virtualpet.Mood;
+import virtualpet.InteractionResult;
+import virtualpet.Need;
+import virtualpet.PetLifeStage;
+import virtualpet.PetPopulation;
+import virtualpet.VirtualGameTimer;
+import virtualpet.VirtualPet;
+import virtualpet.VirtualPetImpl;
+import virtualpet.VirtualPetListener;
+
+/**
+ * JUnit test class for PetPopulation.
+ */
+public class PetPopulationTest {
+
+  private VirtualGameTimer timer;
+  private PetPopulation population;
+
+  /**
+   * Sets up a population of up to 10 pets on a virtual timer for testing.
+   */
+  @Before
+  public void setUp() {
+    timer = new VirtualGameTimer();
+    population = new PetPopulation(10, timer);
+    population.start();
+  }
+
+  /**
+   * Tests that a new pet in the population is initialized correctly.
+   */
+  @Test
+  public void testAdd() {
+    int slot = population.add("Test");
+    assertEquals(0, slot);
+    assertEquals(1, population.size());
+    VirtualPet pet = population.get(slot);
+    assertEquals("Name: Test\nAge: 0\nMood: Happy\nHealth: Healthy\nLife Stage: Child\n"
+        + "Need Levels:\n"
+        + "Hunger: 100\n"
+        + "Social: 100\n"
+        + "Hygiene: 100\n"
+        + "Energy: 100\n", pet.toString());
+  }
+
+  /**
+   * Tests that pets in the population behave the same as a VirtualPetImpl given the same
+   * interactions, through growing up and dying.
+   */
+  @Test
+  public void testMatchesVirtualPetImpl() {
+    VirtualPet single = new VirtualPetImpl("Test", timer);
+    VirtualPet pet = population.get(population.add("Test"));
+    for (int interval = 0; interval < 100; interval++) {
+      timer.advance(PetLifeStage.INTERVAL);
+      if (interval < 70) {
+        for (Need need : Need.values()) {
+          if (single.getNeedLevels().get(need) < 100) {
+            single.interact(need);
+            pet.interact(need);
+          }
+        }
+      }
+      assertEquals(single.toString(), pet.toString());
+      assertEquals(single.getHealth(), pet.getHealth());
+    }
+    assertEquals("Senior", pet.getLifeStage().toString());
+    assertFalse(pet.isAlive());
+  }
+
+  /**
+   * Tests that paused pets do not decrease over time.
+   */
+  @Test
+  public void testPauseTimer() {
+    VirtualPet paused = population.get(population.add("Paused"));
+    VirtualPet running = population.get(population.add("Running"));
+    paused.pauseTimer();
+    timer.advance(PetLifeStage.INTERVAL);
+    assertEquals(100, paused.getNeedLevels().get(Need.HUNGER).intValue());
+    assertEquals(92, running.getNeedLevels().get(Need.HUNGER).intValue());
+  }
+
+  /**
+   * Tests that listeners are notified when a pet in the population changes and dies.
+   */
+  @Test
+  public void testListeners() {
+    VirtualPet pet = population.get(population.add("Test"));
+    StringBuilder events = new StringBuilder();
+    pet.addListener(new VirtualPetListener() {
+      @Override
+      public void stateChanged(VirtualPet pet) {
+        events.append("changed;");
+      }
+
+      @Override
+      public void died(VirtualPet pet) {
+        events.append("died;");
+      }
+    });
+    timer.advance(PetLifeStage.INTERVAL);
+    assertEquals("changed;", events.toString());
+    timer.advanceUntil(() -> !pet.isAlive(), 60 * 60 * 1000);
+    assertTrue(events.toString().endsWith("changed;died;"));
+    assertEquals(Mood.SAD, pet.getMoodState());
+    assertEquals(Health.DEAD, pet.getHealthState());
+  }
+
+  /**
+   * Tests that ticking a large population in parallel gives the same result as ticking it on a
+   * single thread.
+   */
+  @Test
+  public void testParallelTick() {
+    int pets = 200000;
+    VirtualGameTimer sequentialTimer = new VirtualGameTimer();
+    VirtualGameTimer parallelTimer = new VirtualGameTimer();
+    PetPopulation sequential = new PetPopulation(pets, sequentialTimer, 1);
+    PetPopulation parallel = new PetPopulation(pets, parallelTimer, 4);
+    sequential.start();
+    parallel.start();
+    for (int i = 0; i < pets; i++) {
+      sequential.add("Pet " + i);
+      parallel.add("Pet " + i);
+    }
+    for (int interval = 0; interval < 12; interval++) {
+      sequentialTimer.advance(PetLifeStage.INTERVAL);
+      parallelTimer.advance(PetLifeStage.INTERVAL);
+      // feed some of the pets so they do not all end up in the same state
+      for (int slot = interval; slot < pets; slot += 7) {
+        if (sequential.getHealthState(slot) != Health.DEAD) {
+          sequential.interact(slot, Need.values()[slot % 4]);
+          parallel.interact(slot, Need.values()[slot % 4]);
+        }
+      }
+    }
+    for (int slot = 0; slot < pets; slot++) {
+      assertEquals(sequential.getMoodState(slot), parallel.getMoodState(slot));
+      assertEquals(sequential.getHealth(slot), parallel.getHealth(slot));
+      for (Need need : Need.values()) {
+        assertEquals(sequential.getNeedLevel(slot, need), parallel.getNeedLevel(slot, need));
+      }
+    }
+    assertTrue(parallel.getLastTickDuration() > 0);
+    assertEquals(0, parallel.getOverruns());
+  }
+
+  /**
+   * Tests that interacting with a batch of needs gives the same levels as interacting with them
+   * one by one, and that a full need is skipped.
+   */
+  @Test
+  public void testInteractAll() {
+    int batched = population.add("Batched");
+    int single = population.add("Single");
+    timer.advance(PetLifeStage.INTERVAL * 3);
+    population.interact(single, Need.HUNGER);
+    population.interact(single, Need.SOCIAL);
+    InteractionResult[] results = population.get(batched).interactAll(Need.HUNGER, Need.SOCIAL);
+    assertEquals(InteractionResult.APPLIED, results[0]);
+    assertEquals(InteractionResult.APPLIED, results[1]);
+    for (Need need : Need.values()) {
+      assertEquals(population.getNeedLevel(single, need), population.getNeedLevel(batched, need));
+    }
+    int full = population.add("Full");
+    assertEquals(InteractionResult.NEED_FULL, population.interactAll(full, Need.HUNGER)[0]);
+  }
+
+  /**
+   * Tests that interacting with a dead pet throws an IllegalStateException.
+   */
+  @Test(expected = IllegalStateException.class)
+  public void testInteractWhenDead() {
+    int slot = population.add("Test");
+    timer.advance(60 * 60 * 1000);
+    population.interact(slot, Need.HUNGER);
+  }
+
+  /**
+   * Tests that interacting with a full need throws an IllegalArgumentException.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testInteractWhenNeedFull() {
+    population.interact(population.add("Test"), Need.HUNGER);
+  }
+
+  /**
+   * Tests that adding a pet to a full population throws an IllegalStateException.
+   */
+  @Test(expected = IllegalStateException.class)
+  public void testAddWhenFull() {
+    for (int i = 0; i <= population.getCapacity(); i++) {
+      population.add("Test");
+    }
+  }
+
+  /**
+   * Tests that getting an empty slot throws an IllegalArgumentException.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testGetEmptySlot() {
+    population.get(0);
+  }
+}
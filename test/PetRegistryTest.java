@@ -0,0 +1,261 @@
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TimerTask;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import virtualpet.DecayMode;
+import virtualpet.GameScheduler;
+import virtualpet.GameTimer;
+import virtualpet.InteractionResult;
+import virtualpet.Need;
+import virtualpet.PetChange;
+import virtualpet.PetLifeStage;
+import virtualpet.PetPopulation;
+import virtualpet.PetRegistry;
+import virtualpet.PopulationFile;
+import virtualpet.VirtualGameTimer;
+import virtualpet.VirtualPet;
+
+/**
+ * JUnit test class for PetRegistry.
+ */
+public class PetRegistryTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private VirtualGameTimer timer;
+  private PetPopulation population;
+  private Path path;
+  private VirtualScheduler scheduler;
+
+  /**
+   * Sets up a saved population of three pets, each cared for differently, and a scheduler whose
+   * timers all follow one virtual timer.
+   */
+  @Before
+  public void setUp() throws IOException {
+    timer = new VirtualGameTimer();
+    population = new PetPopulation(10, timer, 1);
+    population.start();
+    population.add("Rex");
+    population.add("Zo\u00eb");
+    population.add("Fido");
+    timer.advance(PetLifeStage.INTERVAL * 3);
+    population.interact(0, Need.HUNGER);
+    population.interact(1, Need.SOCIAL);
+    population.get(2).pauseTimer();
+    timer.advance(PetLifeStage.INTERVAL * 2);
+    path = folder.getRoot().toPath().resolve("pets.bin");
+    try (PopulationFile file = new PopulationFile(path)) {
+      file.save(population);
+    }
+    scheduler = new VirtualScheduler();
+  }
+
+  /**
+   * Tests that a saved pet is only hydrated when it is first asked for, with the state and age it
+   * was saved with.
+   */
+  @Test
+  public void testHydrateOnFirstAccess() throws IOException {
+    try (PopulationFile file = new PopulationFile(path)) {
+      PetRegistry registry = new PetRegistry(file, scheduler, DecayMode.LAZY);
+      assertEquals(3, registry.size());
+      assertEquals(0, registry.getHydratedCount());
+      VirtualPet pet = registry.get(1);
+      assertEquals(1, registry.getHydratedCount());
+      assertSame(pet, registry.get(1));
+      assertEquals(1, registry.getHydratedCount());
+      assertEquals(population.get(1).toString(), pet.toString());
+      assertEquals(population.get(1).getAge(), pet.getAge());
+    }
+  }
+
+  /**
+   * Tests that a pet hydrated some time after the registry was opened has caught up on the
+   * decreases of that time, and that a paused pet has not.
+   */
+  @Test
+  public void testCatchUpOnHydration() throws IOException {
+    try (PopulationFile file = new PopulationFile(path)) {
+      PetRegistry registry = new PetRegistry(file, scheduler, DecayMode.PREDICTIVE);
+      scheduler.timer.advance(PetLifeStage.INTERVAL * 4);
+      timer.advance(PetLifeStage.INTERVAL * 4);
+      for (int id = 0; id < 3; id++) {
+        assertEquals(population.get(id).toString(), registry.get(id).toString());
+      }
+    }
+  }
+
+  /**
+   * Tests that a new pet is added after the saved ones, and that asking for a pet that does not
+   * exist throws an IllegalArgumentException.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testAdd() throws IOException {
+    try (PopulationFile file = new PopulationFile(path)) {
+      PetRegistry registry = new PetRegistry(file, scheduler, DecayMode.LAZY);
+      assertEquals(3, registry.add("Max"));
+      assertEquals(4, registry.size());
+      assertEquals("Max", registry.get(3).getName());
+      assertEquals(0, registry.getHydratedCount());
+      registry.get(4);
+    }
+  }
+
+  /**
+   * Tests that a batch of interactions with several pets gives each interaction's result in the
+   * order they were asked for.
+   */
+  @Test
+  public void testInteractAll() throws IOException {
+    try (PopulationFile file = new PopulationFile(path)) {
+      PetRegistry registry = new PetRegistry(file, scheduler, DecayMode.LAZY);
+      int added = registry.add("Max");
+      InteractionResult[] results = registry.interactAll(new int[] {0, added, 7, 0},
+          new Need[] {Need.SOCIAL, Need.HUNGER, Need.HUNGER, null});
+      assertArrayEquals(new InteractionResult[] {InteractionResult.APPLIED,
+          InteractionResult.NEED_FULL, InteractionResult.NO_SUCH_PET,
+          InteractionResult.INVALID_NEED}, results);
+      assertEquals(1, registry.getHydratedCount());
+    }
+  }
+
+  /**
+   * Tests that pets are split into shards by id, and that a pet's timer is run by its own shard's
+   * scheduler only.
+   */
+  @Test
+  public void testShards() throws IOException {
+    VirtualScheduler[] shards = {scheduler, new VirtualScheduler(), new VirtualScheduler()};
+    String first = population.get(0).toString();
+    try (PopulationFile file = new PopulationFile(path)) {
+      PetRegistry registry = new PetRegistry(file, shards, DecayMode.LAZY);
+      assertEquals(3, registry.getShardCount());
+      assertEquals(3, registry.add("Max"));
+      timer.advance(PetLifeStage.INTERVAL * 4);
+      shards[1].timer.advance(PetLifeStage.INTERVAL * 4);
+      assertEquals(first, registry.get(0).toString());
+      assertEquals(population.get(1).toString(), registry.get(1).toString());
+      assertEquals(100, registry.get(3).getNeedLevels().get(Need.HUNGER).intValue());
+      assertEquals(2, registry.getHydratedCount());
+    }
+  }
+
+  /**
+   * Tests that pets added and read from several threads at once, spread over several shards,
+   * each get their own id, and that every pet is found afterwards.
+   */
+  @Test
+  public void testConcurrentAdd() throws IOException, InterruptedException {
+    VirtualScheduler[] shards = {scheduler, new VirtualScheduler(), new VirtualScheduler()};
+    try (PopulationFile file = new PopulationFile(path)) {
+      PetRegistry registry = new PetRegistry(file, shards, DecayMode.LAZY);
+      int saved = registry.size();
+      Thread[] threads = new Thread[4];
+      for (int t = 0; t < threads.length; t++) {
+        String prefix = "Thread " + t + " pet ";
+        threads[t] = new Thread(() -> {
+          for (int pet = 0; pet < 250; pet++) {
+            registry.get(registry.add(prefix + pet));
+            registry.get(pet % saved);
+          }
+        });
+        threads[t].start();
+      }
+      for (Thread thread : threads) {
+        thread.join();
+      }
+      assertEquals(saved + 1000, registry.size());
+      Set<String> names = new HashSet<>();
+      for (int id = saved; id < registry.size(); id++) {
+        names.add(registry.get(id).getName());
+      }
+      assertEquals(1000, names.size());
+      assertEquals(saved, registry.getHydratedCount());
+    }
+  }
+
+  /**
+   * Tests that a subscriber of the registry's changes receives the changes of hydrated and added
+   * pets.
+   */
+  @Test
+  public void testChanges() throws IOException, InterruptedException {
+    try (PopulationFile file = new PopulationFile(path)) {
+      PetRegistry registry = new PetRegistry(file, scheduler, DecayMode.LAZY);
+      BlockingQueue<PetChange> changes = new LinkedBlockingQueue<>();
+      registry.getChanges().subscribe(new Flow.Subscriber<PetChange>() {
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+          subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(PetChange change) {
+          changes.add(change);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+      });
+      registry.get(0).interact(Need.SOCIAL);
+      PetChange change = changes.poll(10, TimeUnit.SECONDS);
+      assertEquals(0, change.getId());
+      assertEquals(registry.get(0).getSnapshot().getNeedLevel(Need.SOCIAL),
+          change.getSnapshot().getNeedLevel(Need.SOCIAL));
+      int added = registry.add("Max");
+      registry.get(added).update();
+      assertEquals(added, changes.poll(10, TimeUnit.SECONDS).getId());
+    }
+  }
+
+  /**
+   * A scheduler whose timers all follow one virtual timer, each starting from 0 when created.
+   */
+  private static class VirtualScheduler implements GameScheduler {
+    private final VirtualGameTimer timer = new VirtualGameTimer();
+
+    @Override
+    public GameTimer newTimer() {
+      long start = timer.getElapsedTime();
+      return new GameTimer() {
+        @Override
+        public void scheduleTask(TimerTask task, long interval) {
+          timer.scheduleTask(task, interval);
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public long getElapsedTime() {
+          return timer.getElapsedTime() - start;
+        }
+      };
+    }
+
+    @Override
+    public void shutdown() {
+    }
+  }
+}
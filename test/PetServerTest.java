@@ -0,0 +1,160 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import virtualpet.DecayMode;
+import virtualpet.PetLifeStage;
+import virtualpet.PetPopulation;
+import virtualpet.PetRegistry;
+import virtualpet.PetServer;
+import virtualpet.PopulationFile;
+import virtualpet.SharedGameScheduler;
+import virtualpet.VirtualGameTimer;
+
+/**
+ * JUnit test class for PetServer.
+ */
+public class PetServerTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private PopulationFile file;
+  private SharedGameScheduler scheduler;
+  private PetServer server;
+
+  /**
+   * Sets up a server for a registry holding one saved pet whose needs have decreased.
+   */
+  @Before
+  public void setUp() throws IOException {
+    VirtualGameTimer timer = new VirtualGameTimer();
+    PetPopulation population = new PetPopulation(4, timer, 1);
+    population.start();
+    population.add("Rex");
+    timer.advance(PetLifeStage.INTERVAL * 3);
+    Path path = folder.getRoot().toPath().resolve("pets.bin");
+    file = new PopulationFile(path);
+    file.save(population);
+    scheduler = new SharedGameScheduler(1);
+    PetRegistry registry = new PetRegistry(file, scheduler, DecayMode.LAZY);
+    server = new PetServer(registry, new InetSocketAddress("127.0.0.1", 0), 2);
+  }
+
+  /**
+   * Stops the server.
+   */
+  @After
+  public void tearDown() throws IOException {
+    server.close();
+    scheduler.shutdown();
+    file.close();
+  }
+
+  /**
+   * Tests creating a pet and getting it back.
+   */
+  @Test
+  public void testCreateAndGet() throws IOException {
+    Response created = request("POST", "/pets?name=Max%20%22M%22");
+    assertEquals(201, created.status);
+    assertTrue(created.body, created.body.startsWith("{\"id\":1,\"name\":\"Max \\\"M\\\"\""));
+    Response saved = request("GET", "/pets/0");
+    assertEquals(200, saved.status);
+    assertTrue(saved.body, saved.body.contains("\"name\":\"Rex\""));
+    assertTrue(saved.body, saved.body.contains("\"alive\":true"));
+    assertEquals(404, request("GET", "/pets/7").status);
+    assertEquals(404, request("GET", "/pets/x").status);
+    assertEquals(400, request("POST", "/pets").status);
+  }
+
+  /**
+   * Tests that interacting with a pet raises its need, and that an interaction that is not
+   * possible is refused.
+   */
+  @Test
+  public void testInteract() throws IOException {
+    String before = request("GET", "/pets/0").body;
+    Response fed = request("POST", "/pets/0/hunger");
+    assertEquals(200, fed.status);
+    assertTrue(!before.equals(fed.body));
+    assertEquals(400, request("POST", "/pets/0/dance").status);
+    request("POST", "/pets?name=Max");
+    assertEquals(409, request("POST", "/pets/1/HUNGER").status);
+    assertEquals(405, request("GET", "/pets/0/HUNGER").status);
+  }
+
+  /**
+   * Tests that a request that fails is answered with 500 and counted as an error.
+   */
+  @Test
+  public void testFailedRequest() throws IOException {
+    scheduler.shutdown(); // so creating a pet fails
+    Response failed = request("POST", "/pets?name=Max");
+    assertEquals(500, failed.status);
+    assertEquals("Internal server error.", failed.body);
+    assertTrue(request("GET", "/metrics").body.contains("\nerrors 1\n"));
+  }
+
+  /**
+   * Tests that the metrics count the requests answered before them.
+   */
+  @Test
+  public void testMetrics() throws IOException {
+    for (int i = 0; i < 5; i++) {
+      request("GET", "/pets/0");
+    }
+    Response metrics = request("GET", "/metrics");
+    assertEquals(200, metrics.status);
+    assertTrue(metrics.body, metrics.body.startsWith("requests 5\nerrors 0\n"));
+    assertTrue(metrics.body, metrics.body.contains("\nlatency_p99_us "));
+    assertTrue(metrics.body, metrics.body.contains("\nhydrated_pets 1\n"));
+    assertTrue(server.getRequestCount() >= 5);
+  }
+
+  /**
+   * Sends a request to the server.
+   *
+   * @param method  the method of the request.
+   * @param path    the path and query of the request.
+   * @return the response.
+   */
+  private Response request(String method, String path) throws IOException {
+    URL url = new URL("http://127.0.0.1:" + server.getPort() + path);
+    HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+    connection.setRequestMethod(method);
+    int status = connection.getResponseCode();
+    InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    if (in != null) {
+      in.transferTo(body);
+      in.close();
+    }
+    return new Response(status, new String(body.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  /**
+   * The status and body of a response.
+   */
+  private static class Response {
+    private final int status;
+    private final String body;
+
+    Response(int status, String body) {
+      this.status = status;
+      this.body = body;
+    }
+  }
+}
@@ -0,0 +1,137 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.junit.Before;
+import org.junit.Test;
+import virtualpet.Need;
+import virtualpet.PetLifeStage;
+import virtualpet.PetSnapshot;
+import virtualpet.PetStateDelta;
+import virtualpet.VirtualGameTimer;
+import virtualpet.VirtualPet;
+import virtualpet.VirtualPetImpl;
+
+/**
+ * JUnit test class for PetStateDelta.
+ */
+public class PetStateDeltaTest {
+
+  private VirtualGameTimer timer;
+  private VirtualPet pet;
+
+  /**
+   * Sets up a pet whose needs have decreased.
+   */
+  @Before
+  public void setUp() {
+    timer = new VirtualGameTimer();
+    pet = new VirtualPetImpl("Rex", timer);
+    timer.advance(PetLifeStage.INTERVAL * 3);
+  }
+
+  /**
+   * Tests that a delta from no earlier state has every field changed.
+   */
+  @Test
+  public void testFirstDeltaIsFull() {
+    PetStateDelta delta = PetStateDelta.between(null, 0, pet.getSnapshot(), pet.getAge());
+    assertTrue(delta.isChanged(PetStateDelta.NAME));
+    assertTrue(delta.isChanged(PetStateDelta.AGE));
+    assertTrue(delta.isChanged(PetStateDelta.LIFE_STAGE));
+    assertTrue(delta.isChanged(PetStateDelta.MOOD));
+    assertTrue(delta.isChanged(PetStateDelta.HEALTH_STATE));
+    assertTrue(delta.isChanged(PetStateDelta.HEALTH));
+    for (Need need : Need.values()) {
+      assertTrue(delta.isNeedChanged(need));
+    }
+  }
+
+  /**
+   * Tests that after an interaction only the interacted need is changed, and that nothing is
+   * changed between two reads of the same state.
+   */
+  @Test
+  public void testOnlyChangedFields() {
+    PetSnapshot before = pet.getSnapshot();
+    long age = pet.getAge();
+    assertTrue(PetStateDelta.between(before, age, pet.getSnapshot(), pet.getAge()).isEmpty());
+
+    pet.interact(Need.SOCIAL);
+    PetStateDelta delta = PetStateDelta.between(before, age, pet.getSnapshot(), pet.getAge());
+    assertTrue(delta.isNeedChanged(Need.SOCIAL));
+    assertFalse(delta.isNeedChanged(Need.HUNGER));
+    assertFalse(delta.isNeedChanged(Need.HYGIENE));
+    assertFalse(delta.isNeedChanged(Need.ENERGY));
+    assertFalse(delta.isChanged(PetStateDelta.NAME));
+    assertFalse(delta.isChanged(PetStateDelta.AGE));
+    assertFalse(delta.isChanged(PetStateDelta.LIFE_STAGE));
+    assertEquals(pet.getSnapshot().getNeedLevel(Need.SOCIAL),
+        delta.getSnapshot().getNeedLevel(Need.SOCIAL));
+  }
+
+  /**
+   * Tests that a delta is encoded in its encoded size, with only the changed fields.
+   */
+  @Test
+  public void testWriteTo() {
+    PetStateDelta full = PetStateDelta.between(null, 0, pet.getSnapshot(), pet.getAge());
+    ByteBuffer out = ByteBuffer.allocate(full.getEncodedSize());
+    full.writeTo(out);
+    assertFalse(out.hasRemaining());
+    out.flip();
+    assertEquals(full.getChanges(), out.getShort());
+    byte[] name = new byte[out.getShort()];
+    out.get(name);
+    assertEquals("Rex", new String(name, StandardCharsets.UTF_8));
+    assertEquals(pet.getAge(), out.getLong());
+
+    PetSnapshot before = pet.getSnapshot();
+    pet.interact(Need.HUNGER);
+    PetStateDelta delta = PetStateDelta.between(before, pet.getAge(), pet.getSnapshot(),
+        pet.getAge());
+    out = ByteBuffer.allocate(delta.getEncodedSize());
+    delta.writeTo(out);
+    assertFalse(out.hasRemaining());
+    out.flip();
+    short changes = out.getShort();
+    assertEquals(delta.getChanges(), changes);
+    if (delta.isChanged(PetStateDelta.MOOD)) {
+      assertEquals(pet.getMoodState().ordinal(), out.get());
+    }
+    if (delta.isChanged(PetStateDelta.HEALTH_STATE)) {
+      assertEquals(pet.getHealthState().ordinal(), out.get());
+    }
+    if (delta.isChanged(PetStateDelta.HEALTH)) {
+      assertEquals(pet.getHealth(), out.get());
+    }
+    assertEquals(pet.getSnapshot().getNeedLevel(Need.HUNGER), out.get());
+    assertFalse(out.hasRemaining());
+  }
+
+  /**
+   * Tests that a name too long for a delta is cut between characters, so that what is sent is
+   * still valid UTF-8.
+   */
+  @Test
+  public void testLongNonAsciiName() {
+    StringBuilder name = new StringBuilder("R");
+    while (name.length() < 20000) {
+      name.append("\u00eb\u20ac"); // two and three bytes in UTF-8
+    }
+    pet.setName(name.toString());
+    PetStateDelta delta = PetStateDelta.between(null, 0, pet.getSnapshot(), pet.getAge());
+    ByteBuffer out = ByteBuffer.allocate(delta.getEncodedSize());
+    delta.writeTo(out);
+    out.flip();
+    out.getShort();
+    byte[] bytes = new byte[out.getShort()];
+    out.get(bytes);
+    assertTrue(bytes.length <= Short.MAX_VALUE);
+    String sent = new String(bytes, StandardCharsets.UTF_8);
+    assertTrue(name.toString().startsWith(sent));
+    assertTrue(bytes.length > Short.MAX_VALUE - 3);
+  }
+}
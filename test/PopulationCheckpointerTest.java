@@ -0,0 +1,180 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import virtualpet.Need;
+import virtualpet.PetJournal;
+import virtualpet.PetLifeStage;
+import virtualpet.PetPopulation;
+import virtualpet.PopulationCheckpointer;
+import virtualpet.PopulationFile;
+import virtualpet.VirtualGameTimer;
+
+/**
+ * JUnit test class for PopulationCheckpointer.
+ */
+public class PopulationCheckpointerTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private VirtualGameTimer timer;
+  private PetPopulation population;
+  private Path path;
+
+  /**
+   * Sets up a population of 200 pets and a file to checkpoint it to.
+   */
+  @Before
+  public void setUp() {
+    timer = new VirtualGameTimer();
+    population = new PetPopulation(200, timer, 1);
+    for (int pet = 0; pet < 200; pet++) {
+      population.add("Pet " + pet);
+    }
+    path = folder.getRoot().toPath().resolve("pets.bin");
+  }
+
+  /**
+   * Asserts that the population saved in the file has the same pets as the population.
+   *
+   * @param file  the file to load.
+   */
+  private void assertSaved(PopulationFile file) {
+    PetPopulation loaded = file.load(new VirtualGameTimer(), 1);
+    assertEquals(population.size(), loaded.size());
+    for (int slot = 0; slot < population.size(); slot++) {
+      assertEquals(population.get(slot).toString(), loaded.get(slot).toString());
+    }
+  }
+
+  /**
+   * Tests that the first checkpoint writes every pet, and later ones only the pets that changed.
+   */
+  @Test
+  public void testOnlyChangedPets() throws IOException {
+    try (PopulationFile file = new PopulationFile(path);
+        PopulationCheckpointer checkpointer = new PopulationCheckpointer(population, file,
+            60000)) {
+      checkpointer.checkpoint();
+      assertEquals(200, checkpointer.getLastPetsWritten());
+
+      population.get(7).pauseTimer();
+      population.tick();
+      checkpointer.checkpoint();
+      assertEquals(200, checkpointer.getLastPetsWritten());
+
+      population.interact(3, Need.HUNGER);
+      population.interact(150, Need.SOCIAL);
+      checkpointer.checkpoint();
+      assertEquals(2, checkpointer.getLastPetsWritten());
+      assertTrue(checkpointer.getLastBytesWritten() > 0);
+      assertTrue(checkpointer.getLastBytesWritten() < 2 * 20); // less than two records
+      assertEquals(3, checkpointer.getCheckpointCount());
+      assertSaved(file);
+
+      checkpointer.checkpoint();
+      assertEquals(0, checkpointer.getLastPetsWritten());
+      assertEquals(0, checkpointer.getLastBytesWritten());
+    }
+  }
+
+  /**
+   * Tests that checkpoints are taken in the background while the population keeps ticking, and
+   * that a last one is taken when the checkpointer is closed.
+   */
+  @Test
+  public void testBackgroundCheckpoints() throws IOException, InterruptedException {
+    population.start();
+    try (PopulationFile file = new PopulationFile(path)) {
+      PopulationCheckpointer checkpointer = new PopulationCheckpointer(population, file, 5);
+      for (int interval = 0; interval < 20; interval++) {
+        timer.advance(PetLifeStage.INTERVAL);
+        Thread.sleep(5);
+      }
+      checkpointer.close();
+      assertTrue(checkpointer.getCheckpointCount() > 1);
+      assertTrue(checkpointer.getBytesWritten() > 0);
+      assertSaved(file);
+    }
+  }
+
+  /**
+   * Tests that a population is recovered from an incremental checkpoint and the journal entries
+   * written after it.
+   */
+  @Test
+  public void testRecoverFromCheckpoint() throws IOException {
+    Path journalPath = folder.getRoot().toPath().resolve("pets.journal");
+    population.start();
+    try (PetJournal journal = new PetJournal(journalPath);
+        PopulationFile file = new PopulationFile(path)) {
+      // the checkpointer is never closed, as if the process stopped
+      PopulationCheckpointer checkpointer = new PopulationCheckpointer(population, file, 60000);
+      population.setJournal(journal);
+      timer.advance(PetLifeStage.INTERVAL * 2);
+      checkpointer.checkpoint();
+      population.interact(5, Need.ENERGY);
+      checkpointer.checkpoint();
+      population.interact(6, Need.HYGIENE);
+      timer.advance(PetLifeStage.INTERVAL);
+      journal.flush();
+      population.stop();
+    }
+    try (PopulationFile file = new PopulationFile(path)) {
+      PetPopulation recovered =
+          PetJournal.recover(file, journalPath, new VirtualGameTimer(), 200, 1);
+      for (int slot = 0; slot < population.size(); slot++) {
+        assertEquals(population.get(slot).toString(), recovered.get(slot).toString());
+      }
+    }
+  }
+
+  /**
+   * Tests that the pets of a checkpoint that fails are written by the next one, so that the
+   * population is still recovered from the file and the journal.
+   */
+  @Test
+  public void testFailedCheckpoint() throws IOException {
+    Path journalPath = folder.getRoot().toPath().resolve("pets.journal");
+    population.start();
+    try (PetJournal journal = new PetJournal(journalPath);
+        PopulationFile file = new PopulationFile(path)) {
+      PopulationCheckpointer checkpointer = new PopulationCheckpointer(population, file, 60000);
+      population.setJournal(journal);
+      timer.advance(PetLifeStage.INTERVAL * 2);
+      checkpointer.checkpoint();
+      population.interact(5, Need.ENERGY);
+      StringBuilder name = new StringBuilder();
+      while (name.length() <= 0xFFFF) {
+        name.append("Pet 3 ");
+      }
+      population.get(3).setName(name.toString()); // too long to save
+      try {
+        checkpointer.checkpoint();
+        fail();
+      } catch (IOException e) {
+        // expected
+      }
+      population.get(3).setName("Pet 3");
+      checkpointer.checkpoint();
+      assertEquals(2, checkpointer.getLastPetsWritten());
+      assertSaved(file);
+      journal.flush();
+      population.stop();
+    }
+    try (PopulationFile file = new PopulationFile(path)) {
+      PetPopulation recovered =
+          PetJournal.recover(file, journalPath, new VirtualGameTimer(), 200, 1);
+      for (int slot = 0; slot < population.size(); slot++) {
+        assertEquals(population.get(slot).toString(), recovered.get(slot).toString());
+      }
+    }
+  }
+}
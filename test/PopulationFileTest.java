@@ -0,0 +1,256 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import virtualpet.Need;
+import virtualpet.PetLifeStage;
+import virtualpet.PetPopulation;
+import virtualpet.PopulationFile;
+import virtualpet.VirtualGameTimer;
+
+/**
+ * JUnit test class for PopulationFile.
+ */
+public class PopulationFileTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private VirtualGameTimer timer;
+  private PetPopulation population;
+  private Path path;
+
+  /**
+   * Sets up a population of three pets, each cared for differently, and a file to save it to.
+   */
+  @Before
+  public void setUp() throws IOException {
+    timer = new VirtualGameTimer();
+    population = new PetPopulation(10, timer, 1);
+    population.start();
+    population.add("Rex");
+    population.add("Zo\u00eb");
+    population.add("Fido");
+    timer.advance(PetLifeStage.INTERVAL * 3);
+    population.interact(0, Need.HUNGER);
+    population.interact(1, Need.SOCIAL);
+    population.get(2).pauseTimer();
+    timer.advance(PetLifeStage.INTERVAL * 2);
+    path = folder.getRoot().toPath().resolve("pets.bin");
+  }
+
+  /**
+   * Tests that a loaded population has the pets that were saved, with the same state and age.
+   */
+  @Test
+  public void testSaveAndLoad() throws IOException {
+    try (PopulationFile file = new PopulationFile(path)) {
+      file.save(population);
+    }
+    VirtualGameTimer later = new VirtualGameTimer();
+    later.advance(PetLifeStage.INTERVAL * 100);
+    PetPopulation loaded;
+    try (PopulationFile file = new PopulationFile(path)) {
+      assertEquals(3, file.size());
+      loaded = file.load(later, 1);
+    }
+    assertEquals(3, loaded.size());
+    assertEquals(10, loaded.getCapacity());
+    for (int slot = 0; slot < 3; slot++) {
+      assertEquals(population.get(slot).toString(), loaded.get(slot).toString());
+    }
+    // the paused pet stays paused
+    loaded.start();
+    later.advance(PetLifeStage.INTERVAL);
+    assertEquals(population.getNeedLevel(2, Need.HUNGER), loaded.getNeedLevel(2, Need.HUNGER));
+  }
+
+  /**
+   * Tests that saving again after one pet changed only rewrites that pet's record, and that an
+   * unchanged name is not added to the file again.
+   */
+  @Test
+  public void testSaveOnlyChanges() throws IOException {
+    try (PopulationFile file = new PopulationFile(path)) {
+      file.save(population);
+      file.force();
+      byte[] before = Files.readAllBytes(path);
+      population.interact(1, Need.HUNGER);
+      file.save(population);
+      file.force();
+      byte[] after = Files.readAllBytes(path);
+      assertEquals(before.length, after.length);
+      int changed = 0;
+      for (int i = 0; i < before.length; i++) {
+        changed += before[i] != after[i] ? 1 : 0;
+      }
+      assertTrue(changed > 0 && changed <= 2);
+    }
+  }
+
+  /**
+   * Tests that a pet that was renamed is loaded with its new name.
+   */
+  @Test
+  public void testRename() throws IOException {
+    try (PopulationFile file = new PopulationFile(path)) {
+      file.save(population);
+      population.get(0).setName("Max");
+      file.save(population);
+      assertEquals("Max", file.load(new VirtualGameTimer(), 1).getName(0));
+    }
+  }
+
+  /**
+   * Tests that opening a file whose header counts more pets than it has room for throws an
+   * IllegalArgumentException.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testCountLargerThanCapacity() throws IOException {
+    try (PopulationFile file = new PopulationFile(path)) {
+      file.save(population);
+    }
+    overwrite(12, ByteBuffer.allocate(4).putInt(0, 11)); // the number of pets
+    new PopulationFile(path).close();
+  }
+
+  /**
+   * Tests that loading a pet whose name lies outside the name heap throws an
+   * IllegalArgumentException.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testNameOutsideHeap() throws IOException {
+    try (PopulationFile file = new PopulationFile(path)) {
+      file.save(population);
+    }
+    overwrite(64, ByteBuffer.allocate(4).putInt(0, 1 << 20)); // the first pet's name offset
+    try (PopulationFile file = new PopulationFile(path)) {
+      file.load(new VirtualGameTimer(), 1);
+    }
+  }
+
+  /**
+   * Tests that loading a pet with a need level above 100 throws an IllegalArgumentException.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testNeedLevelOutOfRange() throws IOException {
+    try (PopulationFile file = new PopulationFile(path)) {
+      file.save(population);
+    }
+    overwrite(64 + 4, ByteBuffer.allocate(1).put(0, (byte) 101)); // the first pet's first need
+    try (PopulationFile file = new PopulationFile(path)) {
+      file.load(new VirtualGameTimer(), 1);
+    }
+  }
+
+  /**
+   * Tests that loading a pet with a negative life stage throws an IllegalArgumentException.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeLifeStage() throws IOException {
+    try (PopulationFile file = new PopulationFile(path)) {
+      file.save(population);
+    }
+    overwrite(64 + 10, ByteBuffer.allocate(1).put(0, (byte) -1)); // the first pet's life stage
+    try (PopulationFile file = new PopulationFile(path)) {
+      file.load(new VirtualGameTimer(), 1);
+    }
+  }
+
+  /**
+   * Tests that a file whose last save did not finish cannot be loaded.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testIncompleteSave() throws IOException {
+    try (PopulationFile file = new PopulationFile(path)) {
+      file.save(population);
+    }
+    overwrite(32, ByteBuffer.allocate(8).putLong(0, -1)); // the journal sequence
+    try (PopulationFile file = new PopulationFile(path)) {
+      file.load(new VirtualGameTimer(), 1);
+    }
+  }
+
+  /**
+   * Tests that a save that was cut short after its pets were copied to the redo file is finished
+   * when the file is opened again.
+   */
+  @Test
+  public void testFinishSaveFromRedo() throws IOException {
+    PetPopulation small = new PetPopulation(5, new VirtualGameTimer(), 1);
+    small.add("Small");
+    PopulationFile file = new PopulationFile(path);
+    file.save(small);
+    file.close();
+    try {
+      // the file is closed, so the save copies the pets to the redo file and then fails
+      file.save(population);
+      fail();
+    } catch (IOException e) {
+      // expected
+    }
+    Path redo = folder.getRoot().toPath().resolve("pets.bin.redo");
+    assertTrue(Files.exists(redo));
+    overwrite(32, ByteBuffer.allocate(8).putLong(0, -1)); // as if the process stopped mid-save
+    try (PopulationFile reopened = new PopulationFile(path)) {
+      PetPopulation loaded = reopened.load(new VirtualGameTimer(), 1);
+      assertEquals(population.size(), loaded.size());
+      for (int slot = 0; slot < population.size(); slot++) {
+        assertEquals(population.get(slot).toString(), loaded.get(slot).toString());
+      }
+    }
+    assertFalse(Files.exists(redo));
+  }
+
+  /**
+   * Tests that a redo file that was only partly written is removed without changing the records,
+   * leaving the unfinished save to the journal.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testDamagedRedo() throws IOException {
+    try (PopulationFile file = new PopulationFile(path)) {
+      file.save(population);
+    }
+    overwrite(32, ByteBuffer.allocate(8).putLong(0, -1)); // the journal sequence
+    Path redo = folder.getRoot().toPath().resolve("pets.bin.redo");
+    Files.write(redo, new byte[] {0x56, 0x50, 0x52, 0x44, 0, 0, 0});
+    try (PopulationFile file = new PopulationFile(path)) {
+      assertFalse(Files.exists(redo));
+      assertEquals(population.size(), file.size());
+      file.load(new VirtualGameTimer(), 1);
+    }
+  }
+
+  /**
+   * Tests that opening a file that is not a population file throws an IllegalArgumentException.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testNotAPopulationFile() throws IOException {
+    Files.write(path, "Not a population".getBytes(StandardCharsets.UTF_8));
+    new PopulationFile(path).close();
+  }
+
+  /**
+   * Overwrites bytes of the saved file, as a damaged disk or an interrupted save might.
+   *
+   * @param position  the position of the bytes in the file.
+   * @param bytes     the bytes to write.
+   */
+  private void overwrite(long position, ByteBuffer bytes) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+      channel.write(bytes, position);
+    }
+  }
+}
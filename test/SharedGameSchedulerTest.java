@@ -0,0 +1,169 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import virtualpet.GameScheduler;
+import virtualpet.GameTimer;
+import virtualpet.SharedGameScheduler;
+import virtualpet.VirtualPet;
+import virtualpet.VirtualPetImpl;
+
+/**
+ * JUnit test class for SharedGameScheduler.
+ */
+public class SharedGameSchedulerTest {
+
+  private GameScheduler scheduler;
+
+  /**
+   * Sets up a scheduler with two threads for testing.
+   */
+  @Before
+  public void setUp() {
+    scheduler = new SharedGameScheduler(2);
+  }
+
+  /**
+   * Shuts down the scheduler after each test.
+   */
+  @After
+  public void tearDown() {
+    scheduler.shutdown();
+  }
+
+  /**
+   * Helper method to stop execution for a given number of milliseconds.
+   *
+   * @param millis the number of milliseconds to sleep for.
+   */
+  private void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Creates a task that counts how many times it has run.
+   *
+   * @param count the counter to increment.
+   * @return the counting task.
+   */
+  private TimerTask countingTask(AtomicInteger count) {
+    return new TimerTask() {
+      @Override
+      public void run() {
+        count.incrementAndGet();
+      }
+    };
+  }
+
+  /**
+   * Tests that many timers can share the scheduler's threads.
+   */
+  @Test
+  public void testManyTimers() {
+    AtomicInteger count = new AtomicInteger();
+    for (int i = 0; i < 1000; i++) {
+      scheduler.newTimer().scheduleTask(countingTask(count), 100);
+    }
+    sleep(350);
+    assertTrue(count.get() >= 2000);
+  }
+
+  /**
+   * Tests that stopping one timer does not stop the tasks of another.
+   */
+  @Test
+  public void testStopOnlyAffectsOneTimer() {
+    AtomicInteger stoppedCount = new AtomicInteger();
+    AtomicInteger runningCount = new AtomicInteger();
+    GameTimer stopped = scheduler.newTimer();
+    GameTimer running = scheduler.newTimer();
+    stopped.scheduleTask(countingTask(stoppedCount), 100);
+    running.scheduleTask(countingTask(runningCount), 100);
+    sleep(150);
+    stopped.stop();
+    int countWhenStopped = stoppedCount.get();
+    int runningWhenStopped = runningCount.get();
+    sleep(250);
+    assertEquals(countWhenStopped, stoppedCount.get());
+    assertTrue(runningCount.get() > runningWhenStopped);
+  }
+
+  /**
+   * Tests that a task cancelled through its timer does not run, and is removed from the queue
+   * rather than waiting there until it would have run.
+   */
+  @Test
+  public void testCancelRemovesTask() {
+    SharedGameScheduler shared = new SharedGameScheduler(1);
+    GameTimer timer = shared.newTimer();
+    AtomicInteger count = new AtomicInteger();
+    for (int i = 0; i < 100; i++) {
+      TimerTask task = countingTask(count);
+      timer.scheduleOnce(task, 60000);
+      timer.cancel(task);
+    }
+    TimerTask soon = countingTask(count);
+    timer.scheduleOnce(soon, 20);
+    timer.cancel(soon);
+    assertEquals(0, shared.getQueuedTaskCount());
+    sleep(100);
+    assertEquals(0, count.get());
+    shared.shutdown();
+  }
+
+  /**
+   * Tests that a task that cancels itself through its timer while it runs does not run again.
+   */
+  @Test
+  public void testCancelFromTask() {
+    SharedGameScheduler shared = new SharedGameScheduler(1);
+    GameTimer timer = shared.newTimer();
+    AtomicInteger count = new AtomicInteger();
+    timer.scheduleTask(new TimerTask() {
+      @Override
+      public void run() {
+        count.incrementAndGet();
+        timer.cancel(this);
+      }
+    }, 20);
+    sleep(200);
+    assertEquals(1, count.get());
+    assertEquals(0, shared.getQueuedTaskCount());
+    shared.shutdown();
+  }
+
+  /**
+   * Tests that pets can be created with timers from the scheduler.
+   */
+  @Test
+  public void testPetWithSharedTimer() {
+    VirtualPet pet = new VirtualPetImpl("Test", scheduler.newTimer());
+    assertEquals(0, pet.getAge());
+    assertTrue(pet.isAlive());
+  }
+
+  /**
+   * Tests that a timer cannot be created after the scheduler is shut down.
+   */
+  @Test(expected = IllegalStateException.class)
+  public void testNewTimerAfterShutdown() {
+    scheduler.shutdown();
+    scheduler.newTimer();
+  }
+
+  /**
+   * Tests that the scheduler cannot be created without any threads.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testNoThreads() {
+    new SharedGameScheduler(0);
+  }
+}
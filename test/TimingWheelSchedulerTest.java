@@ -0,0 +1,174 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import virtualpet.GameTimer;
+import virtualpet.TimingWheelScheduler;
+
+/**
+ * JUnit test class for TimingWheelScheduler.
+ */
+public class TimingWheelSchedulerTest {
+
+  private TimingWheelScheduler scheduler;
+
+  /**
+   * Sets up a wheel of 8 buckets with 10 millisecond ticks for testing.
+   */
+  @Before
+  public void setUp() {
+    scheduler = new TimingWheelScheduler(10, 8);
+  }
+
+  /**
+   * Shuts down the scheduler after each test.
+   */
+  @After
+  public void tearDown() {
+    scheduler.shutdown();
+  }
+
+  /**
+   * Helper method to stop execution for a given number of milliseconds.
+   *
+   * @param millis the number of milliseconds to sleep for.
+   */
+  private void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Creates a task that counts how many times it has run.
+   *
+   * @param count the counter to increment.
+   * @return the counting task.
+   */
+  private TimerTask countingTask(AtomicInteger count) {
+    return new TimerTask() {
+      @Override
+      public void run() {
+        count.incrementAndGet();
+      }
+    };
+  }
+
+  /**
+   * Tests that the number of buckets is rounded up to a power of two, and that the default wheel
+   * covers a whole pet interval.
+   */
+  @Test
+  public void testWheelSize() {
+    assertEquals(8, scheduler.getWheelSize());
+    assertEquals(16, new TimingWheelScheduler(10, 9).getWheelSize());
+    TimingWheelScheduler defaultScheduler = new TimingWheelScheduler();
+    assertTrue(defaultScheduler.getWheelSize() * TimingWheelScheduler.DEFAULT_TICK >= 5000);
+    defaultScheduler.shutdown();
+  }
+
+  /**
+   * Tests that a task with an interval longer than a turn of the wheel waits for its interval.
+   */
+  @Test
+  public void testIntervalLongerThanWheel() {
+    AtomicInteger count = new AtomicInteger();
+    scheduler.newTimer().scheduleTask(countingTask(count), 200); // wheel turns every 80 ms
+    sleep(120);
+    assertEquals(0, count.get());
+    sleep(200);
+    assertTrue(count.get() >= 1);
+  }
+
+  /**
+   * Tests that stopping one timer does not stop the tasks of another.
+   */
+  @Test
+  public void testStopOnlyAffectsOneTimer() {
+    AtomicInteger stoppedCount = new AtomicInteger();
+    AtomicInteger runningCount = new AtomicInteger();
+    GameTimer stopped = scheduler.newTimer();
+    GameTimer running = scheduler.newTimer();
+    stopped.scheduleTask(countingTask(stoppedCount), 20);
+    running.scheduleTask(countingTask(runningCount), 20);
+    sleep(100);
+    stopped.stop();
+    int countWhenStopped = stoppedCount.get();
+    int runningWhenStopped = runningCount.get();
+    sleep(100);
+    assertEquals(countWhenStopped, stoppedCount.get());
+    assertTrue(runningCount.get() > runningWhenStopped);
+  }
+
+  /**
+   * Tests that a task cancelled through its timer does not run, while the timer's other tasks
+   * still do.
+   */
+  @Test
+  public void testCancelledTaskDoesNotRun() {
+    AtomicInteger cancelledCount = new AtomicInteger();
+    AtomicInteger runningCount = new AtomicInteger();
+    GameTimer timer = scheduler.newTimer();
+    TimerTask cancelled = countingTask(cancelledCount);
+    timer.scheduleOnce(cancelled, 30);
+    timer.scheduleOnce(countingTask(runningCount), 30);
+    timer.cancel(cancelled);
+    sleep(150);
+    assertEquals(0, cancelledCount.get());
+    assertEquals(1, runningCount.get());
+  }
+
+  /**
+   * Tests that a task that cancels itself through its timer while it runs does not run again.
+   */
+  @Test
+  public void testCancelFromTask() {
+    AtomicInteger count = new AtomicInteger();
+    GameTimer timer = scheduler.newTimer();
+    timer.scheduleTask(new TimerTask() {
+      @Override
+      public void run() {
+        count.incrementAndGet();
+        timer.cancel(this);
+      }
+    }, 20);
+    sleep(150);
+    assertEquals(1, count.get());
+  }
+
+  /**
+   * Tests that a task that fails, even with an Error, is not run again, and does not stop the
+   * tasks in its bucket or the wheel.
+   */
+  @Test
+  public void testFailingTask() {
+    AtomicInteger failedCount = new AtomicInteger();
+    AtomicInteger runningCount = new AtomicInteger();
+    GameTimer timer = scheduler.newTimer();
+    timer.scheduleTask(new TimerTask() {
+      @Override
+      public void run() {
+        failedCount.incrementAndGet();
+        throw new AssertionError("failed on purpose");
+      }
+    }, 20);
+    timer.scheduleTask(countingTask(runningCount), 20);
+    sleep(150);
+    assertEquals(1, failedCount.get());
+    assertTrue(runningCount.get() >= 2);
+  }
+
+  /**
+   * Tests that the scheduler cannot be created with ticks shorter than a millisecond.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidTick() {
+    new TimingWheelScheduler(0, 8);
+  }
+}
@@ -0,0 +1,174 @@
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.TimerTask;
+import org.junit.Before;
+import org.junit.Test;
+import virtualpet.Health;
+import virtualpet.Need;
+import virtualpet.PetLifeStage;
+import virtualpet.VirtualGameTimer;
+import virtualpet.VirtualPet;
+import virtualpet.VirtualPetImpl;
+
+/**
+ * JUnit test class for VirtualGameTimer.
+ */
+public class VirtualGameTimerTest {
+
+  StringBuilder str;
+  TimerTask task;
+
+  /**
+   * Setting up a TimerTask to append "Test" to a StringBuilder every time it runs.
+   */
+  @Before
+  public void setUp() {
+    str = new StringBuilder();
+    task = new TimerTask() {
+      @Override
+      public void run() {
+        str.append("Test");
+      }
+    };
+  }
+
+  /**
+   * Tests getElapsedTime method only tracks virtual time.
+   */
+  @Test
+  public void testGetElapsedTime() {
+    VirtualGameTimer timer = new VirtualGameTimer();
+    assertEquals(0, timer.getElapsedTime());
+    timer.advance(3000);
+    assertEquals(3, timer.getElapsedTime());
+    timer.advance(3500);
+    assertEquals(6, timer.getElapsedTime());
+  }
+
+  /**
+   * Tests scheduleTask method runs a task after every interval.
+   */
+  @Test
+  public void testScheduleTask() {
+    VirtualGameTimer timer = new VirtualGameTimer();
+    timer.scheduleTask(task, 1000);
+    timer.advance(999);
+    assertEquals("", str.toString());
+    timer.advance(1);
+    assertEquals("Test", str.toString());
+    timer.advance(2000);
+    assertEquals("TestTestTest", str.toString());
+  }
+
+  /**
+   * Tests scheduleOnce method runs a task a single time, after the delay.
+   */
+  @Test
+  public void testScheduleOnce() {
+    VirtualGameTimer timer = new VirtualGameTimer();
+    timer.scheduleOnce(task, 1500);
+    timer.advance(1499);
+    assertEquals("", str.toString());
+    timer.advance(5000);
+    assertEquals("Test", str.toString());
+  }
+
+  /**
+   * Tests stop method prevents tasks from running again.
+   */
+  @Test
+  public void testStop() {
+    VirtualGameTimer timer = new VirtualGameTimer();
+    timer.scheduleTask(task, 1000);
+    timer.advance(1000);
+    assertEquals("Test", str.toString());
+    timer.stop();
+    timer.advance(2000);
+    assertEquals("Test", str.toString());
+    assertEquals(3, timer.getElapsedTime());
+  }
+
+  /**
+   * Tests that a task that cancels itself through the timer while it runs does not run again.
+   */
+  @Test
+  public void testCancelFromTask() {
+    VirtualGameTimer timer = new VirtualGameTimer();
+    timer.scheduleTask(new TimerTask() {
+      @Override
+      public void run() {
+        str.append("Test");
+        timer.cancel(this);
+      }
+    }, 1000);
+    timer.advance(5000);
+    assertEquals("Test", str.toString());
+  }
+
+  /**
+   * Tests that tasks run without the timer's lock held.
+   */
+  @Test
+  public void testTaskRunsOutsideLock() {
+    VirtualGameTimer timer = new VirtualGameTimer();
+    timer.scheduleOnce(new TimerTask() {
+      @Override
+      public void run() {
+        str.append(Thread.holdsLock(timer));
+      }
+    }, 1000);
+    timer.advance(1000);
+    timer.scheduleOnce(task, 1000);
+    assertTrue(timer.advanceUntil(() -> str.length() > 5, 1000));
+    assertEquals("falseTest", str.toString());
+  }
+
+  /**
+   * Tests advanceUntil method stops as soon as the condition holds, or when time runs out.
+   */
+  @Test
+  public void testAdvanceUntil() {
+    VirtualGameTimer timer = new VirtualGameTimer();
+    timer.scheduleTask(task, 1000);
+    assertTrue(timer.advanceUntil(() -> str.length() == 8, 60000));
+    assertEquals(2, timer.getElapsedTime());
+    assertFalse(timer.advanceUntil(() -> false, 500));
+    assertEquals("TestTest", str.toString());
+  }
+
+  /**
+   * Tests advance method throws an IllegalArgumentException for negative amounts of time.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void testAdvanceNegative() {
+    new VirtualGameTimer().advance(-1);
+  }
+
+  /**
+   * Tests that a pet's whole life, from child to senior to death, can be simulated without
+   * waiting in real time.
+   */
+  @Test
+  public void testSimulateLifecycle() {
+    VirtualGameTimer timer = new VirtualGameTimer();
+    VirtualPet pet = new VirtualPetImpl("Test", timer);
+
+    // care for the pet after every decrease until it becomes a senior
+    while (!"Senior".equals(pet.getLifeStage().toString())) {
+      timer.advance(PetLifeStage.INTERVAL);
+      for (Need need : Need.values()) {
+        while (pet.getNeedLevels().get(need) < 100) {
+          pet.interact(need);
+        }
+      }
+    }
+    assertEquals(5, pet.getAge());
+
+    // neglect the pet until it dies
+    assertTrue(timer.advanceUntil(() -> !pet.isAlive(), 60 * 60 * 1000));
+    assertEquals(Health.DEAD, pet.getHealthState());
+    assertEquals(0, pet.getHealth());
+  }
+}
@@ -1,6 +1,8 @@
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.time.Duration;
 import java.time.Instant;
@@ -13,13 +15,20 @@ import org.junit.Test;
 import org.junit.experimental.ParallelComputer;
 import org.junit.runner.JUnitCore;
 import org.junit.runner.RunWith;
+import virtualpet.DecayMode;
 import virtualpet.GameTimer;
 import virtualpet.GameTimerImpl;
 import virtualpet.Health;
+import virtualpet.InteractionResult;
 import virtualpet.Mood;
 import virtualpet.Need;
+import virtualpet.PetForecast;
+import virtualpet.PetLifeStage;
+import virtualpet.PetSnapshot;
+import virtualpet.VirtualGameTimer;
 import virtualpet.VirtualPet;
 import virtualpet.VirtualPetImpl;
+import virtualpet.VirtualPetListener;
 
   /**
    * JUnit test class for VirtualPet.
@@ -163,6 +172,35 @@ import virtualpet.VirtualPetImpl;
           pet.getNeedLevels().get(Need.HUNGER).intValue()); // unchanged after mutating
     }
 
+    /**
+     * Tests copyNeedLevels method fills the given array with each need's level at its ordinal.
+     */
+    @Test
+    public void testCopyNeedLevels() {
+      VirtualGameTimer timer = new VirtualGameTimer();
+      VirtualPet pet = new VirtualPetImpl("Test", timer);
+      timer.advance(PetLifeStage.INTERVAL);
+      pet.interact(Need.HUNGER);
+      int[] levels = new int[Need.values().length];
+      pet.copyNeedLevels(levels);
+      HashMap<Need, Integer> needMap = pet.getNeedLevels();
+      for (Need need : Need.values()) {
+        assertEquals(needMap.get(need).intValue(), levels[need.ordinal()]);
+      }
+      assertEquals(100, levels[Need.HUNGER.ordinal()]);
+      assertTrue(levels[Need.ENERGY.ordinal()] < 100);
+    }
+
+    /**
+     * Tests copyNeedLevels method throws an IllegalArgumentException for an array too short to
+     * hold every need.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testCopyNeedLevelsWrongLength() {
+      VirtualPet pet = new VirtualPetImpl("Test", new VirtualGameTimer());
+      pet.copyNeedLevels(new int[Need.values().length - 1]);
+    }
+
     /**
      * Tests the interact method of the virtual pet game by feeding the pet.
      */
@@ -429,6 +467,247 @@ import virtualpet.VirtualPetImpl;
         assertEquals(92, pet.getNeedLevels().get(Need.HUNGER).intValue());
     }
 
+    /**
+     * Tests that listeners are notified when the pet updates and grows, and are no longer notified
+     * once removed.
+     */
+    @Test
+    public void testListeners() {
+      GameTimer testingTimer = new TestingTimer();
+      VirtualPet pet = new VirtualPetImpl("Test", testingTimer);
+      StringBuilder events = new StringBuilder();
+      VirtualPetListener listener = new VirtualPetListener() {
+        @Override
+        public void stateChanged(VirtualPet pet) {
+          events.append("changed;");
+        }
+
+        @Override
+        public void lifeStageChanged(VirtualPet pet, PetLifeStage lifeStage) {
+          events.append(lifeStage).append(";");
+        }
+      };
+      pet.addListener(listener);
+      pet.update();
+      assertEquals("changed;", events.toString());
+      pet.update();
+      assertEquals("changed;changed;Adult;", events.toString());
+      pet.removeListener(listener);
+      pet.update();
+      assertEquals("changed;changed;Adult;", events.toString());
+      testingTimer.stop();
+    }
+
+    /**
+     * Tests that adding a null listener throws an IllegalArgumentException.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddNullListener() {
+      VirtualPet pet = new VirtualPetImpl("Test", new TestingTimer());
+      pet.addListener(null);
+    }
+
+    /**
+     * Tests that a pet in the lazy decay mode ends up in the same state as a pet whose needs are
+     * decreased by a scheduled task, including growing up and dying while nobody is looking.
+     */
+    @Test
+    public void testLazyDecayMatchesScheduled() {
+      VirtualGameTimer timer = new VirtualGameTimer();
+      VirtualPet scheduled = new VirtualPetImpl("Test", timer);
+      VirtualPet lazy = new VirtualPetImpl("Test", timer, DecayMode.LAZY);
+      // care for both pets until just before they are old enough to grow up
+      for (int interval = 1; interval < 24; interval++) {
+        timer.advance(PetLifeStage.INTERVAL);
+        assertEquals(scheduled.toString(), lazy.toString());
+        for (Need need : Need.values()) {
+          if (scheduled.getNeedLevels().get(need) < 100) {
+            scheduled.interact(need);
+            lazy.interact(need);
+          }
+        }
+      }
+      // leave them alone, so they grow up and then die without being read
+      timer.advance(PetLifeStage.INTERVAL * 5);
+      assertEquals("Adult", lazy.getLifeStage().toString());
+      timer.advance(PetLifeStage.INTERVAL * 200);
+      assertEquals(scheduled.toString(), lazy.toString());
+      assertEquals(Health.DEAD, lazy.getHealthState());
+    }
+
+    /**
+     * Tests that intervals that pass while a pet in the lazy decay mode is paused are skipped.
+     */
+    @Test
+    public void testLazyDecayPaused() {
+      VirtualGameTimer timer = new VirtualGameTimer();
+      VirtualPet pet = new VirtualPetImpl("Test", timer, DecayMode.LAZY);
+      timer.advance(PetLifeStage.INTERVAL);
+      assertEquals(92, pet.getNeedLevels().get(Need.HUNGER).intValue());
+      pet.pauseTimer();
+      timer.advance(PetLifeStage.INTERVAL * 3);
+      assertEquals(92, pet.getNeedLevels().get(Need.HUNGER).intValue());
+      pet.pauseTimer();
+      timer.advance(PetLifeStage.INTERVAL);
+      assertEquals(84, pet.getNeedLevels().get(Need.HUNGER).intValue());
+    }
+
+    /**
+     * Tests that a pet in the lazy decay mode that dies while nobody is looking is reported dead,
+     * and its listeners told, by the interaction that is refused because of it.
+     */
+    @Test
+    public void testLazyDeathDuringInteract() {
+      VirtualGameTimer timer = new VirtualGameTimer();
+      VirtualPet pet = new VirtualPetImpl("Test", timer, DecayMode.LAZY);
+      StringBuilder events = new StringBuilder();
+      pet.addListener(new VirtualPetListener() {
+        @Override
+        public void stateChanged(VirtualPet pet) {
+          events.append("changed;");
+        }
+
+        @Override
+        public void died(VirtualPet pet) {
+          events.append("died;");
+        }
+      });
+      timer.advance(10 * 60 * 1000);
+      try {
+        pet.interact(Need.HUNGER);
+        fail("Interacting with a dead pet should throw an IllegalStateException.");
+      } catch (IllegalStateException e) {
+        assertEquals("changed;died;", events.toString());
+      }
+      assertFalse(pet.isAlive());
+      assertEquals(Health.DEAD, pet.getHealthState());
+      assertEquals(0, pet.getHealth());
+    }
+
+    /**
+     * Tests that a snapshot keeps the state the pet had when it was taken, and that a new snapshot
+     * reflects later changes consistently.
+     */
+    @Test
+    public void testSnapshot() {
+      VirtualGameTimer timer = new VirtualGameTimer();
+      VirtualPet pet = new VirtualPetImpl("Test", timer);
+      timer.advance(PetLifeStage.INTERVAL);
+      PetSnapshot before = pet.getSnapshot();
+      pet.interact(Need.HUNGER);
+      PetSnapshot after = pet.getSnapshot();
+      assertEquals(92, before.getNeedLevel(Need.HUNGER));
+      assertEquals(100, after.getNeedLevel(Need.HUNGER));
+      assertEquals(pet.getNeedLevels(), after.getNeedLevels());
+      assertEquals(pet.getHealth(), after.getHealth());
+      assertEquals("Test", after.getName());
+      assertTrue(after.isAlive());
+    }
+
+    /**
+     * Tests that interacting with a batch of needs leaves the pet as interacting with them one by
+     * one does, with one notification, and that the interactions that are not possible are
+     * skipped with the reason.
+     */
+    @Test
+    public void testInteractAll() {
+      VirtualGameTimer timer = new VirtualGameTimer();
+      VirtualPetImpl batched = new VirtualPetImpl("Test", timer, DecayMode.LAZY);
+      VirtualPetImpl single = new VirtualPetImpl("Test", timer, DecayMode.LAZY);
+      timer.advance(PetLifeStage.INTERVAL * 3);
+      Need[] needs = {Need.HUNGER, Need.HUNGER, Need.SOCIAL, Need.ENERGY, null};
+      InteractionResult[] expected = new InteractionResult[needs.length];
+      for (int i = 0; i < needs.length; i++) {
+        try {
+          single.interact(needs[i]);
+          expected[i] = InteractionResult.APPLIED;
+        } catch (IllegalArgumentException e) {
+          expected[i] = needs[i] == null ? InteractionResult.INVALID_NEED
+              : InteractionResult.NEED_FULL;
+        }
+      }
+      int[] notifications = new int[1];
+      batched.addListener(pet -> notifications[0]++);
+      assertArrayEquals(expected, batched.interactAll(needs));
+      assertEquals(1, notifications[0]);
+      assertEquals(single.toString(), batched.toString());
+
+      timer.advanceUntil(() -> !batched.isAlive(), 60 * 60 * 1000);
+      assertArrayEquals(new InteractionResult[] {InteractionResult.PET_DEAD},
+          batched.interactAll(Need.HUNGER));
+    }
+
+    /**
+     * Tests that a forecast predicts the intervals at which a pet that is left alone changes mood,
+     * gets sick, and dies.
+     */
+    @Test
+    public void testForecast() {
+      VirtualGameTimer timer = new VirtualGameTimer();
+      VirtualPetImpl pet = new VirtualPetImpl("Test", timer);
+      timer.advance(PetLifeStage.INTERVAL * 3);
+      pet.interact(Need.HUNGER);
+      pet.interact(Need.HUNGER);
+      PetForecast forecast = pet.getForecast();
+      Mood mood = pet.getMoodState();
+      long moodChange = Long.MAX_VALUE;
+      long sick = Long.MAX_VALUE;
+      long death = Long.MAX_VALUE;
+      for (long interval = 1; death == Long.MAX_VALUE; interval++) {
+        timer.advance(PetLifeStage.INTERVAL);
+        if (moodChange == Long.MAX_VALUE && pet.getMoodState() != mood) {
+          moodChange = interval;
+        }
+        if (sick == Long.MAX_VALUE && pet.getHealthState() == Health.SICK) {
+          sick = interval;
+        }
+        if (pet.getHealthState() == Health.DEAD) {
+          death = interval;
+        }
+      }
+      assertEquals(moodChange, forecast.getIntervalsUntilMoodChange());
+      assertEquals(sick, forecast.getIntervalsUntilSick());
+      assertEquals(death, forecast.getIntervalsUntilDeath());
+      assertEquals(Math.min(moodChange, sick), forecast.getIntervalsUntilNextChange());
+      assertEquals(Long.MAX_VALUE, pet.getForecast().getIntervalsUntilNextChange());
+    }
+
+    /**
+     * Tests that a pet in the predictive decay mode notifies its listeners only when its mood,
+     * health, or life stage changes, and goes through the same changes as a pet in the scheduled
+     * decay mode.
+     */
+    @Test
+    public void testPredictiveDecay() {
+      VirtualGameTimer scheduledTimer = new VirtualGameTimer();
+      VirtualGameTimer predictiveTimer = new VirtualGameTimer();
+      VirtualPet scheduled = new VirtualPetImpl("Test", scheduledTimer);
+      VirtualPet predictive = new VirtualPetImpl("Test", predictiveTimer, DecayMode.PREDICTIVE);
+      StringBuilder scheduledChanges = new StringBuilder("Happy/Healthy;");
+      StringBuilder predictiveChanges = new StringBuilder("Happy/Healthy;");
+      int[] notifications = new int[2];
+      scheduled.addListener(pet -> {
+        notifications[0]++;
+        String state = pet.getMoodState() + "/" + pet.getHealthState() + ";";
+        if (scheduledChanges.lastIndexOf(state) != scheduledChanges.length() - state.length()) {
+          scheduledChanges.append(state);
+        }
+      });
+      predictive.addListener(pet -> {
+        notifications[1]++;
+        predictiveChanges.append(pet.getMoodState()).append("/").append(pet.getHealthState())
+            .append(";");
+      });
+      for (int interval = 0; interval < 100; interval++) {
+        scheduledTimer.advance(PetLifeStage.INTERVAL);
+        predictiveTimer.advance(PetLifeStage.INTERVAL);
+      }
+      assertEquals(Health.DEAD, scheduled.getHealthState());
+      assertEquals(scheduled.toString(), predictive.toString());
+      assertEquals(scheduledChanges.toString(), predictiveChanges.toString());
+      assertTrue(notifications[1] < notifications[0]);
+    }
+
     /**
      * Different implementation of GameTimer for testing purposes. Increments the elapsed time by 60
      * seconds every time getElapsedTime() is called (in update method of VirtualPet) to allow for